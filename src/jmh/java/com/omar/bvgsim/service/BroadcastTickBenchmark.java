@@ -0,0 +1,122 @@
+package com.omar.bvgsim.service;
+
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.omar.bvgsim.model.LineSummary;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * One full broadcast tick of {@link SimulationService} against a 5k vehicle snapshot: optional interpolation,
+ * frame encoding per line and fan-out to {@code subscribers} emitters spread over the lines, measured until the
+ * writer pool has drained every queue. The emitters discard what they are sent.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class BroadcastTickBenchmark {
+    @Param({ "100", "1000", "5000" })
+    public int subscribers;
+
+    @Param({ "false", "true" })
+    public boolean interpolate;
+
+    private final LongAdder sentBytes = new LongAdder();
+    private SimulationService simulation;
+    private SseFanout fanout;
+
+    @Setup
+    public void setUp() throws ReflectiveOperationException {
+        ObjectMapper objectMapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        MeterRegistry meters = new SimpleMeterRegistry();
+        UpstreamClient upstream = new UpstreamClient("http://127.0.0.1:9", 1000, 1000, 1000, 1000, 1000, meters);
+        BvgRadarClient radarClient = new BvgRadarClient(
+            upstream, objectMapper, 512, 60000, 15000, 30000, new VirtualThreads(false, 20, meters), meters);
+        VehicleSnapshotService snapshots = new VehicleSnapshotService();
+        VehicleFrameEncoder frames = new VehicleFrameEncoder(objectMapper);
+        fanout = new SseFanout(4, 64, 8, 15000, meters);
+
+        simulation = new SimulationService();
+        inject("snapshots", snapshots);
+        inject("interpolator", new VehicleInterpolator(snapshots, radarClient, interpolate, 10000, 3000, 40, 150));
+        inject("frames", frames);
+        inject("deltaTracker", new VehicleDeltaTracker(frames, 60000, 10));
+        inject("fanout", fanout);
+        inject("viewports", new ViewportIndex(0.2));
+        inject("binaryStreams", new BinaryStreamHub(1, 64, 10000, 65536, meters));
+        inject("meters", meters);
+
+        List<LineSummary> lines = snapshots.publish(RadarPayloads.movements(5000)).lines();
+        simulation.init();
+        SubscriptionIndex<StreamSubscriber> emitters = field("emitters");
+        for (int i = 0; i < subscribers; i++) {
+            String lineId = lines.get(i % lines.size()).id();
+            emitters.add(lineId, fanout.register(new DiscardingEmitter(sentBytes)));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        fanout.shutdown();
+    }
+
+    @Benchmark
+    public long tick() {
+        simulation.fetchRealDataAndBroadcast();
+        while (fanout.stats().queuedFrames() > 0 || fanout.stats().activeWriters() > 0) {
+            Thread.onSpinWait();
+        }
+        return sentBytes.sum();
+    }
+
+    private void inject(String name, Object value) throws ReflectiveOperationException {
+        Field field = SimulationService.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(simulation, value);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T field(String name) throws ReflectiveOperationException {
+        Field field = SimulationService.class.getDeclaredField(name);
+        field.setAccessible(true);
+        return (T) field.get(simulation);
+    }
+
+    private static final class DiscardingEmitter extends SseEmitter {
+        private final LongAdder sentBytes;
+
+        private DiscardingEmitter(LongAdder sentBytes) {
+            super(0L);
+            this.sentBytes = sentBytes;
+        }
+
+        @Override
+        public void send(SseEventBuilder builder) {
+            builder.build().forEach(part -> {
+                if (part.getData() instanceof byte[] bytes) {
+                    sentBytes.add(bytes.length);
+                }
+            });
+        }
+    }
+}
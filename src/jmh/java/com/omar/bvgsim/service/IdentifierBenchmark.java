@@ -0,0 +1,67 @@
+package com.omar.bvgsim.service;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.omar.bvgsim.model.RadarMovement;
+
+/**
+ * Per-vehicle identifier work: vehicle id formatting and line id comparison over a realistic line mix. Each
+ * invocation covers every movement of a 1k payload. Ids are formatted the way the snapshot service does it, from
+ * the interned line looked up for each movement.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class IdentifierBenchmark {
+    private List<RadarMovement> movements;
+
+    @Setup
+    public void setUp() {
+        movements = RadarPayloads.movements(1000);
+    }
+
+    @Benchmark
+    public void formatVehicleIds(Blackhole blackhole) {
+        int sequence = 0;
+        for (RadarMovement movement : movements) {
+            LineCatalog.Line line = line(movement);
+            if (line != null) {
+                blackhole.consume(VehicleIdFormatter.format(line, movement.tripId(), sequence++));
+            }
+        }
+    }
+
+    @Benchmark
+    public void formatVehicleIdsWithoutTrip(Blackhole blackhole) {
+        int sequence = 0;
+        for (RadarMovement movement : movements) {
+            LineCatalog.Line line = line(movement);
+            if (line != null) {
+                blackhole.consume(VehicleIdFormatter.format(line, null, sequence++));
+            }
+        }
+    }
+
+    @Benchmark
+    public void compareLineIds(Blackhole blackhole) {
+        String previous = movements.get(movements.size() - 1).lineName();
+        for (RadarMovement movement : movements) {
+            blackhole.consume(LineCatalog.NAME_ORDER.compare(previous, movement.lineName()));
+            previous = movement.lineName();
+        }
+    }
+
+    private static LineCatalog.Line line(RadarMovement movement) {
+        return LineCatalog.line(movement.lineName(), movement.lineProduct(), movement.lineMode());
+    }
+}
@@ -0,0 +1,52 @@
+package com.omar.bvgsim.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.omar.bvgsim.model.RadarMovement;
+
+/**
+ * Radar response decoding: the streaming parser against a generic map decode of the same body, which is what the
+ * client did before the parser existed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RadarDecodingBenchmark {
+    private static final TypeReference<Map<String, Object>> MAP_TYPE = new TypeReference<>() { };
+
+    @Param({ "1000", "5000", "10000" })
+    public int movements;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private byte[] body;
+
+    @Setup
+    public void setUp() {
+        body = RadarPayloads.radarJson(movements);
+    }
+
+    @Benchmark
+    public List<RadarMovement> streamingParser() throws IOException {
+        return RadarMovementParser.parse(new ByteArrayInputStream(body));
+    }
+
+    @Benchmark
+    public Map<String, Object> mapDecode() throws IOException {
+        return objectMapper.readValue(body, MAP_TYPE);
+    }
+}
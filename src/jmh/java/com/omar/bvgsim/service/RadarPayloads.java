@@ -0,0 +1,159 @@
+package com.omar.bvgsim.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.omar.bvgsim.model.RadarMovement;
+
+/**
+ * Radar payloads for the benchmarks. With {@code -Dbench.radar.file=<recorded radar response>} the recorded
+ * payload is used, cut to the first {@code movements} entries (a shorter recording is used whole); otherwise a seeded payload in the v6 radar shape is generated, with the Berlin line mix,
+ * HAFAS-style trip ids and the stopover and frame objects the parser has to skip.
+ */
+final class RadarPayloads {
+    private static final String[] BUS_LINES = { "100", "106", "142", "200", "245", "M41", "M46", "M48", "X7", "X10" };
+    private static final String[] TRAM_LINES = { "M1", "M2", "M4", "M5", "M10", "M13", "12", "16", "21", "68" };
+    private static final String[] SUBWAY_LINES = { "U1", "U2", "U3", "U5", "U6", "U7", "U8", "U9" };
+    private static final String[] SUBURBAN_LINES = { "S1", "S2", "S3", "S5", "S7", "S9", "S41", "S42", "S75" };
+    private static final String[] REGIONAL_LINES = { "RE1", "RE2", "RB14", "FEX" };
+
+    private RadarPayloads() {
+    }
+
+    static byte[] radarJson(int movements) {
+        String recorded = System.getProperty("bench.radar.file");
+        if (recorded != null && !recorded.isBlank()) {
+            return recorded(Path.of(recorded), movements);
+        }
+
+        try {
+            return new ObjectMapper().writeValueAsBytes(Map.of("movements", generate(movements)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static List<RadarMovement> movements(int movements) {
+        try {
+            return RadarMovementParser.parse(new ByteArrayInputStream(radarJson(movements)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] recorded(Path file, int movements) {
+        try {
+            ObjectMapper mapper = new ObjectMapper();
+            JsonNode payload = mapper.readTree(Files.readAllBytes(file));
+            JsonNode recorded = payload.isArray() ? payload : payload.path("movements");
+            ArrayNode truncated = mapper.createArrayNode();
+            for (int i = 0; i < Math.min(movements, recorded.size()); i++) {
+                truncated.add(recorded.get(i));
+            }
+            return mapper.writeValueAsBytes(Map.of("movements", truncated));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static List<Map<String, Object>> generate(int count) {
+        SplittableRandom random = new SplittableRandom(20241017L);
+        List<Map<String, Object>> movements = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            double roll = random.nextDouble();
+            String[] lines;
+            String product;
+            String mode;
+            if (roll < 0.5) {
+                lines = BUS_LINES;
+                product = "bus";
+                mode = "bus";
+            } else if (roll < 0.7) {
+                lines = TRAM_LINES;
+                product = "tram";
+                mode = "train";
+            } else if (roll < 0.82) {
+                lines = SUBWAY_LINES;
+                product = "subway";
+                mode = "train";
+            } else if (roll < 0.95) {
+                lines = SUBURBAN_LINES;
+                product = "suburban";
+                mode = "train";
+            } else {
+                lines = REGIONAL_LINES;
+                product = "regional";
+                mode = "train";
+            }
+
+            String lineName = lines[random.nextInt(lines.length)];
+            double latitude = 52.34 + random.nextDouble() * 0.33;
+            double longitude = 13.09 + random.nextDouble() * 0.67;
+
+            Map<String, Object> line = new LinkedHashMap<>();
+            line.put("type", "line");
+            line.put("id", lineName.toLowerCase());
+            line.put("fahrtNr", String.valueOf(10000 + random.nextInt(90000)));
+            line.put("name", lineName);
+            line.put("public", true);
+            line.put("adminCode", "BVB");
+            line.put("productName", product);
+            line.put("mode", mode);
+            line.put("product", product);
+            line.put("operator", Map.of("type", "operator", "id", "berliner-verkehrsbetriebe", "name", "BVG"));
+
+            Map<String, Object> movement = new LinkedHashMap<>();
+            movement.put("direction", lineName + " Endhaltestelle " + random.nextInt(4));
+            movement.put("tripId", "1|" + (100000 + i) + "|" + random.nextInt(40) + "|86|17102026");
+            movement.put("line", line);
+            movement.put("location", Map.of("type", "location", "latitude", latitude, "longitude", longitude));
+            movement.put("nextStopovers", stopovers(random, latitude, longitude, 3));
+            movement.put("frames", List.of(Map.of(
+                "origin", stop(random, latitude, longitude),
+                "destination", stop(random, latitude, longitude),
+                "t", 0
+            )));
+            movements.add(movement);
+        }
+        return movements;
+    }
+
+    private static List<Map<String, Object>> stopovers(SplittableRandom random, double lat, double lon, int count) {
+        List<Map<String, Object>> stopovers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Map<String, Object> stopover = new LinkedHashMap<>();
+            stopover.put("stop", stop(random, lat, lon));
+            stopover.put("arrival", "2026-10-17T08:0" + i + ":00+02:00");
+            stopover.put("plannedArrival", "2026-10-17T08:0" + i + ":00+02:00");
+            stopover.put("arrivalDelay", random.nextInt(5) * 60);
+            stopover.put("departure", "2026-10-17T08:0" + i + ":30+02:00");
+            stopover.put("plannedDeparture", "2026-10-17T08:0" + i + ":30+02:00");
+            stopovers.add(stopover);
+        }
+        return stopovers;
+    }
+
+    private static Map<String, Object> stop(SplittableRandom random, double lat, double lon) {
+        Map<String, Object> stop = new LinkedHashMap<>();
+        stop.put("type", "stop");
+        stop.put("id", String.valueOf(900000000 + random.nextInt(200000)));
+        stop.put("name", "S+U Haltestelle " + random.nextInt(1000));
+        stop.put("location", Map.of(
+            "type", "location",
+            "latitude", lat + (random.nextDouble() - 0.5) * 0.01,
+            "longitude", lon + (random.nextDouble() - 0.5) * 0.01
+        ));
+        return stop;
+    }
+}
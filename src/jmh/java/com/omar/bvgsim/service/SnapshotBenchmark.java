@@ -0,0 +1,60 @@
+package com.omar.bvgsim.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.omar.bvgsim.model.RadarMovement;
+import com.omar.bvgsim.model.VehicleLocation;
+import com.omar.bvgsim.model.VehicleSnapshot;
+
+/**
+ * Snapshot building per radar poll (line and mode extraction, vehicle conversion, indexing and sorting), and the
+ * vehicle sort on its own.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SnapshotBenchmark {
+    private static final Comparator<VehicleLocation> VEHICLE_ORDER = Comparator
+        .comparing(VehicleLocation::routeId, LineCatalog.NAME_ORDER)
+        .thenComparing(VehicleLocation::vehicleId);
+
+    @Param({ "1000", "5000", "10000" })
+    public int movements;
+
+    private final VehicleSnapshotService snapshots = new VehicleSnapshotService();
+    private List<RadarMovement> radar;
+    private List<VehicleLocation> shuffled;
+
+    @Setup
+    public void setUp() {
+        radar = RadarPayloads.movements(movements);
+        shuffled = new ArrayList<>(snapshots.publish(radar).vehicles());
+        Collections.shuffle(shuffled, new Random(1L));
+    }
+
+    @Benchmark
+    public VehicleSnapshot publish() {
+        return snapshots.publish(radar);
+    }
+
+    @Benchmark
+    public List<VehicleLocation> sortVehicles() {
+        List<VehicleLocation> vehicles = new ArrayList<>(shuffled);
+        vehicles.sort(VEHICLE_ORDER);
+        return vehicles;
+    }
+}
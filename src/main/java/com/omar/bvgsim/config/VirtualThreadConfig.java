@@ -0,0 +1,40 @@
+package com.omar.bvgsim.config;
+
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import com.omar.bvgsim.service.VirtualThreads;
+
+/**
+ * Hands Tomcat's request processing and Spring MVC's async dispatches to virtual threads when
+ * {@link VirtualThreads} is enabled; leaves both on their default platform pools otherwise.
+ */
+@Configuration
+public class VirtualThreadConfig implements WebMvcConfigurer {
+    private final VirtualThreads threads;
+
+    public VirtualThreadConfig(VirtualThreads threads) {
+        this.threads = threads;
+    }
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandler() {
+        return protocolHandler -> {
+            if (threads.enabled()) {
+                protocolHandler.setExecutor(threads.executor());
+                System.out.println("Serving requests on virtual threads.");
+            }
+        };
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        if (threads.enabled()) {
+            configurer.setTaskExecutor(new TaskExecutorAdapter(threads.executor()));
+        }
+    }
+}
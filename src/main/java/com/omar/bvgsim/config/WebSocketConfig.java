@@ -0,0 +1,24 @@
+package com.omar.bvgsim.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+
+import com.omar.bvgsim.controller.BinaryStreamHandler;
+
+@Configuration
+@EnableWebSocket
+public class WebSocketConfig implements WebSocketConfigurer {
+    private final BinaryStreamHandler binaryStreamHandler;
+
+    public WebSocketConfig(BinaryStreamHandler binaryStreamHandler) {
+        this.binaryStreamHandler = binaryStreamHandler;
+    }
+
+    @Override
+    public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+        registry.addHandler(binaryStreamHandler, "/api/sim/binary-stream")
+                .setAllowedOrigins("*");
+    }
+}
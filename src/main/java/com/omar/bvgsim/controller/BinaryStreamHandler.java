@@ -0,0 +1,62 @@
+package com.omar.bvgsim.controller;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.BinaryWebSocketHandler;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import com.omar.bvgsim.service.BinaryStreamHub;
+
+/**
+ * WebSocket endpoint of the binary vehicle stream, {@code /api/sim/binary-stream?routes=M10,U8} or
+ * {@code ?routes=all}. The server only sends; frames are described in the README.
+ */
+@Component
+public class BinaryStreamHandler extends BinaryWebSocketHandler {
+    private final BinaryStreamHub hub;
+
+    public BinaryStreamHandler(BinaryStreamHub hub) {
+        this.hub = hub;
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+        Set<String> routeIds = routeIds(session.getUri());
+        if (routeIds.isEmpty()) {
+            session.close(CloseStatus.BAD_DATA.withReason("routes parameter is required"));
+            return;
+        }
+        hub.register(session, routeIds);
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        hub.unregister(session);
+    }
+
+    @Override
+    public void handleTransportError(WebSocketSession session, Throwable exception) {
+        hub.unregister(session);
+    }
+
+    private static Set<String> routeIds(URI uri) {
+        if (uri == null) {
+            return Set.of();
+        }
+
+        String routes = UriComponentsBuilder.fromUri(uri).build().getQueryParams().getFirst("routes");
+        if (routes == null) {
+            return Set.of();
+        }
+        return Arrays.stream(routes.split(","))
+            .map(String::trim)
+            .filter(routeId -> !routeId.isBlank())
+            .collect(Collectors.toSet());
+    }
+}
@@ -0,0 +1,42 @@
+package com.omar.bvgsim.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.omar.bvgsim.service.GtfsRealtimeFeed;
+
+/**
+ * GTFS-Realtime feeds for downstream consumers. Responses carry a strong ETag per snapshot version, so polling
+ * clients that send {@code If-None-Match} get a {@code 304} until the next radar poll.
+ */
+@RestController
+@RequestMapping("/gtfs-rt")
+public class GtfsRealtimeController {
+    private static final MediaType PROTOBUF = MediaType.parseMediaType("application/x-protobuf");
+
+    @Autowired
+    private GtfsRealtimeFeed feed;
+
+    @GetMapping("/vehicle-positions")
+    public ResponseEntity<byte[]> vehiclePositions(
+        @RequestParam(defaultValue = "full") String incrementality
+    ) {
+        boolean differential = "differential".equalsIgnoreCase(incrementality);
+        if (!differential && !"full".equalsIgnoreCase(incrementality)) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        GtfsRealtimeFeed.Encoded encoded = feed.vehiclePositions(differential);
+        return ResponseEntity.ok()
+            .contentType(PROTOBUF)
+            .eTag(encoded.etag())
+            .cacheControl(CacheControl.noCache())
+            .body(encoded.bytes());
+    }
+}
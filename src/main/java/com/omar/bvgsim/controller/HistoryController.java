@@ -0,0 +1,78 @@
+package com.omar.bvgsim.controller;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.omar.bvgsim.model.HistorySnapshot;
+import com.omar.bvgsim.model.VehicleTrack;
+import com.omar.bvgsim.service.TrajectoryStore;
+
+/**
+ * Time-range queries over the recorded radar history. Times are ISO-8601 instants; {@code to} defaults to now and
+ * {@code from} to fifteen minutes before {@code to}.
+ */
+@RestController
+@RequestMapping("/api/history")
+public class HistoryController {
+    private static final Duration DEFAULT_RANGE = Duration.ofMinutes(15);
+
+    @Autowired
+    private TrajectoryStore history;
+
+    @GetMapping("/vehicles/{vehicleId}/track")
+    public List<VehicleTrack> vehicleTrack(
+        @PathVariable String vehicleId,
+        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to
+    ) {
+        Instant end = to != null ? to : Instant.now();
+        return history.vehicleTracks(vehicleId, from != null ? from : end.minus(DEFAULT_RANGE), end);
+    }
+
+    @GetMapping("/trips/{tripId}/track")
+    public ResponseEntity<VehicleTrack> tripTrack(
+        @PathVariable String tripId,
+        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to
+    ) {
+        Instant end = to != null ? to : Instant.now();
+        VehicleTrack track = history.tripTrack(tripId, from != null ? from : end.minus(DEFAULT_RANGE), end);
+        return track != null ? ResponseEntity.ok(track) : ResponseEntity.notFound().build();
+    }
+
+    @GetMapping("/lines/{lineId}")
+    public List<VehicleTrack> lineTracks(
+        @PathVariable String lineId,
+        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to
+    ) {
+        Instant end = to != null ? to : Instant.now();
+        return history.lineTracks(lineId, from != null ? from : end.minus(DEFAULT_RANGE), end);
+    }
+
+    @GetMapping("/snapshot")
+    public ResponseEntity<HistorySnapshot> snapshot(
+        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant at
+    ) {
+        HistorySnapshot snapshot = history.snapshotAt(at != null ? at : Instant.now());
+        return snapshot != null ? ResponseEntity.ok(snapshot) : ResponseEntity.notFound().build();
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<Map<String, Object>> badRange(IllegalArgumentException e) {
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("error", true, "msg", e.getMessage()));
+    }
+}
@@ -1,39 +1,48 @@
 package com.omar.bvgsim.controller;
 
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.Objects;
-import java.util.Set;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.omar.bvgsim.model.LineSummary;
+import com.omar.bvgsim.model.NearbyVehicle;
 import com.omar.bvgsim.model.Route;
+import com.omar.bvgsim.model.VehicleInfo;
+import com.omar.bvgsim.model.VehicleLocation;
+import com.omar.bvgsim.model.VehicleSnapshot;
 import com.omar.bvgsim.service.BvgRadarClient;
+import com.omar.bvgsim.service.LineCatalog;
+import com.omar.bvgsim.service.RadarRefresher;
 import com.omar.bvgsim.service.RouteLoader;
-import com.omar.bvgsim.service.VehicleIdFormatter;
+import com.omar.bvgsim.service.ScheduleStore;
+import com.omar.bvgsim.service.SnapshotResponseCache;
+import com.omar.bvgsim.service.VehicleSnapshotService;
+import com.omar.bvgsim.service.VehicleSpatialIndex;
 
 @RestController
 @RequestMapping("/api/routes")
 public class RouteController {
-    private static final Set<String> SUPPORTED_MODES = Set.of(
-        "bus",
-        "subway",
-        "suburban",
-        "tram",
-        "ferry",
-        "regional",
-        "express"
-    );
+    private static final int MAX_NEAREST_RESULTS = 100;
 
     @Autowired
     private RouteLoader loader;
@@ -41,81 +50,84 @@ public class RouteController {
     @Autowired
     private BvgRadarClient radarClient;
 
+    @Autowired
+    private VehicleSnapshotService snapshots;
+
+    @Autowired
+    private VehicleSpatialIndex spatialIndex;
+
+    @Autowired
+    private SnapshotResponseCache responses;
+
+    @Autowired
+    private RadarRefresher refresher;
+
+    @Autowired
+    private ScheduleStore schedule;
+
+    @Value("${bvg.trips.realtime-wait-ms:300}")
+    private long realtimeWaitMs;
+
     @GetMapping
     public List<Route> list() {
         return loader.getAll();
     }
     
     @GetMapping({"/lines", "/top-lines"})
-    public List<Map<String, Object>> getLines() {
-        List<Map<String, Object>> movements = radarClient.fetchBerlinMovements();
-
-        Map<LineRef, Long> lineCounts = movements.stream()
-            .map(this::extractLineRef)
-            .filter(Objects::nonNull)
-            .collect(Collectors.groupingBy(
-                lineRef -> lineRef,
-                Collectors.counting()
-            ));
-
-        if (!lineCounts.isEmpty()) {
-            return lineCounts.entrySet().stream()
-                .sorted((left, right) -> compareLineIds(left.getKey().name(), right.getKey().name()))
-                .map(entry -> {
-                    LineRef lineRef = entry.getKey();
-                    Map<String, Object> lineInfo = new HashMap<>();
-                    lineInfo.put("id", lineRef.name());
-                    lineInfo.put("name", displayModeName(lineRef.mode()) + " " + lineRef.name());
-                    lineInfo.put("mode", lineRef.mode());
-                    lineInfo.put("vehicleCount", entry.getValue());
-                    return lineInfo;
-                })
-                .collect(Collectors.toList());
-        }
-
-        return fallbackLines();
+    public ResponseEntity<byte[]> getLines(
+        @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding
+    ) {
+        VehicleSnapshot snapshot = snapshots.current();
+        return cached(snapshot, "lines", acceptEncoding, () -> {
+            List<LineSummary> lines = snapshot.lines();
+            return lines.isEmpty() ? fallbackLines() : lines;
+        });
     }
     
     @GetMapping("/vehicles/{lineId}")
-    public List<Map<String, Object>> getVehiclesForLine(@PathVariable String lineId) {
-        AtomicInteger vehicleCounter = new AtomicInteger(1);
-
-        return radarClient.fetchBerlinMovements().stream()
-            .filter(movement -> {
-                LineRef lineRef = extractLineRef(movement);
-                return lineRef != null && lineId.equals(lineRef.name());
-            })
-            .map(movement -> {
-                LineRef lineRef = extractLineRef(movement);
-                return lineRef == null
-                    ? null
-                    : toVehicleInfo(lineRef, movement, vehicleCounter.getAndIncrement());
-            })
-            .filter(Objects::nonNull)
-            .collect(Collectors.toList());
+    public ResponseEntity<byte[]> getVehiclesForLine(
+        @PathVariable String lineId,
+        @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding
+    ) {
+        VehicleSnapshot snapshot = snapshots.current();
+        if (!snapshot.byLine().containsKey(lineId)) {
+            return cached(snapshot, "vehicles:none", acceptEncoding, List::of);
+        }
+        return cached(snapshot, "vehicles:" + lineId, acceptEncoding, () ->
+            toVehicleInfos(snapshot.vehiclesForLine(lineId))
+        );
     }
 
     @GetMapping("/vehicles")
-    public List<Map<String, Object>> getAllVehicles() {
-        Map<String, AtomicInteger> vehicleCounters = new HashMap<>();
+    public ResponseEntity<byte[]> getAllVehicles(
+        @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding
+    ) {
+        VehicleSnapshot snapshot = snapshots.current();
+        return cached(snapshot, "vehicles", acceptEncoding, () -> toVehicleInfos(snapshot.vehicles()));
+    }
 
-        return radarClient.fetchBerlinMovements().stream()
-            .map(movement -> {
-                LineRef lineRef = extractLineRef(movement);
-                if (lineRef == null) {
-                    return null;
-                }
+    @GetMapping("/vehicles/nearest")
+    public List<NearbyVehicle> getNearestVehicles(
+        @RequestParam double lat,
+        @RequestParam double lon,
+        @RequestParam(defaultValue = "10") int limit,
+        @RequestParam(required = false) String lineId,
+        @RequestParam(required = false) String mode
+    ) {
+        int boundedLimit = Math.max(1, Math.min(MAX_NEAREST_RESULTS, limit));
+        return spatialIndex.nearest(lat, lon, boundedLimit, vehicleFilter(lineId, mode));
+    }
 
-                int sequenceNumber = vehicleCounters
-                    .computeIfAbsent(lineRef.name(), key -> new AtomicInteger(1))
-                    .getAndIncrement();
-                return toVehicleInfo(lineRef, movement, sequenceNumber);
-            })
-            .filter(Objects::nonNull)
-            .sorted(Comparator
-                .comparing((Map<String, Object> vehicle) -> vehicle.get("lineId").toString(), this::compareLineIds)
-                .thenComparing(vehicle -> vehicle.get("id").toString()))
-            .collect(Collectors.toList());
+    @GetMapping("/vehicles/within")
+    public List<VehicleInfo> getVehiclesWithin(
+        @RequestParam double north,
+        @RequestParam double west,
+        @RequestParam double south,
+        @RequestParam double east,
+        @RequestParam(required = false) String lineId,
+        @RequestParam(required = false) String mode
+    ) {
+        return toVehicleInfos(spatialIndex.within(north, west, south, east, vehicleFilter(lineId, mode)));
     }
 
     @GetMapping("/trips/{tripId}")
@@ -124,176 +136,70 @@ public class RouteController {
         @RequestParam(required = false) String lineId,
         @RequestParam(required = false) String direction
     ) {
-        return radarClient.fetchTrip(tripId, lineId, direction);
-    }
-
-    private LineRef extractLineRef(Map<String, Object> movement) {
-        Map<String, Object> line = extractMap(movement.get("line"));
-        if (line == null) {
-            return null;
+        Map<String, Object> scheduled = schedule.trip(tripId, lineId, direction, Instant.now());
+        if (scheduled == null) {
+            return radarClient.fetchTrip(tripId, lineId, direction);
         }
 
-        Object lineName = line.get("name");
-        Object lineMode = line.get("mode");
-        Object lineProduct = line.get("product");
-
-        if (lineName instanceof String) {
-            String normalizedMode = normalizeMode((String) lineName, lineProduct, lineMode);
-            if (normalizedMode != null) {
-                return new LineRef((String) lineName, normalizedMode);
-            }
-        }
-
-        return null;
+        Map<String, Object> live = radarClient.fetchTripWithin(tripId, lineId, direction, realtimeWaitMs);
+        return live.isEmpty() ? scheduled : schedule.supplement(live, scheduled);
     }
 
-    private String normalizeMode(String lineName, Object product, Object mode) {
-        if (product instanceof String productValue && SUPPORTED_MODES.contains(productValue)) {
-            return productValue;
-        }
-
-        if (mode instanceof String modeValue && SUPPORTED_MODES.contains(modeValue)) {
-            return modeValue;
-        }
-
-        String normalizedLineName = lineName == null ? "" : lineName.toUpperCase();
-        if (normalizedLineName.startsWith("U")) {
-            return "subway";
-        }
-        if (normalizedLineName.startsWith("S")) {
-            return "suburban";
-        }
-        if (normalizedLineName.startsWith("RB") || normalizedLineName.startsWith("RE")) {
-            return "regional";
-        }
-        if (normalizedLineName.startsWith("F")) {
-            return "ferry";
-        }
-
-        return null;
-    }
-
-    private Map<String, Object> toVehicleInfo(LineRef lineRef, Map<String, Object> movement, int sequenceNumber) {
-        Map<String, Object> location = extractMap(movement.get("location"));
-        if (location == null) {
-            return null;
-        }
-
-        Object latitude = location.get("latitude");
-        Object longitude = location.get("longitude");
-        if (!(latitude instanceof Number) || !(longitude instanceof Number)) {
-            return null;
-        }
-
-        String tripId = movement.get("tripId") instanceof String ? (String) movement.get("tripId") : null;
-        String destination = movement.get("direction") instanceof String ? (String) movement.get("direction") : null;
-
-        Map<String, Object> vehicleInfo = new HashMap<>();
-        vehicleInfo.put("id", VehicleIdFormatter.format(lineRef.name(), tripId, sequenceNumber, lineRef.mode()));
-        vehicleInfo.put("lineId", lineRef.name());
-        vehicleInfo.put("mode", lineRef.mode());
-        vehicleInfo.put("tripId", tripId);
-        vehicleInfo.put("destination", destination != null && !destination.isBlank() ? destination : "Unknown destination");
-        vehicleInfo.put("latitude", ((Number) latitude).doubleValue());
-        vehicleInfo.put("longitude", ((Number) longitude).doubleValue());
-        return vehicleInfo;
-    }
-
-    @SuppressWarnings("unchecked")
-    private Map<String, Object> extractMap(Object value) {
-        return value instanceof Map ? (Map<String, Object>) value : null;
-    }
-
-    private int compareLineIds(String left, String right) {
-        int categoryComparison = Integer.compare(lineCategory(left), lineCategory(right));
-        if (categoryComparison != 0) {
-            return categoryComparison;
-        }
-
-        int numberComparison = Integer.compare(lineNumber(left), lineNumber(right));
-        if (numberComparison != 0) {
-            return numberComparison;
-        }
-
-        return String.CASE_INSENSITIVE_ORDER.compare(left, right);
+    /**
+     * Serves the response stored for this snapshot version, gzip-compressed when the client accepts it. Clients may
+     * cache it until the next radar poll is due; after that a conditional request usually ends in a 304.
+     */
+    private ResponseEntity<byte[]> cached(
+        VehicleSnapshot snapshot,
+        String key,
+        String acceptEncoding,
+        Supplier<Object> body
+    ) {
+        SnapshotResponseCache.CachedResponse response = responses.get(snapshot, key, body);
+        boolean gzip = acceptEncoding != null && acceptEncoding.toLowerCase(Locale.ROOT).contains("gzip");
+        long maxAgeSeconds = refresher.nextPollInMs() / 1000L;
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+            .contentType(MediaType.APPLICATION_JSON)
+            .eTag(gzip ? response.gzipEtag() : response.etag())
+            .cacheControl(maxAgeSeconds > 0L
+                ? CacheControl.maxAge(maxAgeSeconds, TimeUnit.SECONDS)
+                : CacheControl.noCache())
+            .varyBy(HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            builder.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return builder.body(gzip ? response.gzip() : response.identity());
     }
 
-    private int lineCategory(String line) {
-        if (line == null || line.isBlank()) {
-            return 5;
-        }
-
-        char first = Character.toUpperCase(line.charAt(0));
-        if (first == 'U') {
-            return 0;
-        }
-        if (first == 'S') {
-            return 1;
-        }
-        if (Character.isDigit(first)) {
-            return 2;
-        }
-        if (first == 'M') {
-            return 3;
-        }
-        if (first == 'X') {
-            return 4;
-        }
-        if (first == 'N') {
-            return 5;
-        }
-        return 6;
+    private Predicate<VehicleLocation> vehicleFilter(String lineId, String mode) {
+        boolean anyLine = lineId == null || lineId.isBlank();
+        boolean anyMode = mode == null || mode.isBlank();
+        return vehicle -> (anyLine || lineId.equals(vehicle.routeId())) && (anyMode || mode.equals(vehicle.mode()));
     }
 
-    private int lineNumber(String line) {
-        if (line == null) {
-            return Integer.MAX_VALUE;
-        }
-
-        String digits = line.replaceAll("\\D+", "");
-        if (digits.isBlank()) {
-            return Integer.MAX_VALUE;
-        }
-
-        try {
-            return Integer.parseInt(digits);
-        } catch (NumberFormatException e) {
-            return Integer.MAX_VALUE;
+    private List<VehicleInfo> toVehicleInfos(List<VehicleLocation> locations) {
+        List<VehicleInfo> vehicles = new ArrayList<>(locations.size());
+        for (VehicleLocation location : locations) {
+            vehicles.add(VehicleInfo.from(location));
         }
+        return vehicles;
     }
 
-    private List<Map<String, Object>> fallbackLines() {
+    private List<LineSummary> fallbackLines() {
         List<Route> routes = loader.getAll();
         if (routes != null && !routes.isEmpty()) {
             return routes.stream()
-                .map(route -> {
-                    Map<String, Object> lineInfo = new HashMap<>();
-                    lineInfo.put("id", route.getId());
-                    lineInfo.put("name", route.getName());
-                    lineInfo.put("mode", "bus");
-                    lineInfo.put("vehicleCount", 0L);
-                    return lineInfo;
-                })
-                .sorted(Comparator.comparing(line -> line.get("id").toString(), this::compareLineIds))
+                .map(route -> new LineSummary(
+                    route.getId(),
+                    route.getName(),
+                    "bus",
+                    0L,
+                    LineCatalog.color(route.getId())
+                ))
+                .sorted(Comparator.comparing(LineSummary::id, LineCatalog.NAME_ORDER))
                 .collect(Collectors.toList());
         }
 
         return new ArrayList<>();
     }
-
-    private String displayModeName(String mode) {
-        return switch (mode) {
-            case "subway" -> "U-Bahn";
-            case "suburban" -> "S-Bahn";
-            case "tram" -> "Tram";
-            case "ferry" -> "Ferry";
-            case "regional" -> "Regional";
-            case "express" -> "Express";
-            case "bus" -> "Bus";
-            default -> "Line";
-        };
-    }
-
-    private record LineRef(String name, String mode) {
-    }
 }
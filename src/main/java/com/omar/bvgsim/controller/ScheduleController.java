@@ -0,0 +1,42 @@
+package com.omar.bvgsim.controller;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.omar.bvgsim.model.NearbyStop;
+import com.omar.bvgsim.model.ScheduleStatus;
+import com.omar.bvgsim.service.ScheduleStore;
+
+/**
+ * Lookups against the local GTFS schedule store. Trips are served through {@code /api/routes/trips/{tripId}}.
+ */
+@RestController
+@RequestMapping("/api/schedule")
+public class ScheduleController {
+    private static final int MAX_NEARBY_RESULTS = 100;
+    private static final double MAX_RADIUS_METERS = 5000.0;
+
+    @Autowired
+    private ScheduleStore schedule;
+
+    @GetMapping("/status")
+    public ScheduleStatus status() {
+        return schedule.status();
+    }
+
+    @GetMapping("/stops/nearby")
+    public List<NearbyStop> nearbyStops(
+        @RequestParam double lat,
+        @RequestParam double lon,
+        @RequestParam(defaultValue = "500") double radius,
+        @RequestParam(defaultValue = "10") int limit
+    ) {
+        double boundedRadius = Math.max(0.0, Math.min(radius, MAX_RADIUS_METERS));
+        return schedule.nearestStops(lat, lon, boundedRadius, Math.min(limit, MAX_NEARBY_RESULTS));
+    }
+}
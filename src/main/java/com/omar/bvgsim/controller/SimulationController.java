@@ -1,18 +1,29 @@
 package com.omar.bvgsim.controller;
 
 import java.util.Arrays;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import com.omar.bvgsim.model.FanoutStats;
+import com.omar.bvgsim.model.FeedStatus;
+import com.omar.bvgsim.model.SourceStatus;
+import com.omar.bvgsim.model.UpstreamStats;
+import com.omar.bvgsim.model.Viewport;
+import com.omar.bvgsim.service.MovementSource;
+import com.omar.bvgsim.service.RadarRefresher;
 import com.omar.bvgsim.service.SimulationService;
+import com.omar.bvgsim.service.UpstreamClient;
 
 @RestController
 @RequestMapping("/api/sim")
@@ -20,17 +31,78 @@ public class SimulationController {
     @Autowired
     private SimulationService sim;
 
+    @Autowired
+    private RadarRefresher refresher;
+
+    @Autowired
+    private UpstreamClient upstream;
+
+    @Autowired
+    private MovementSource source;
+
     @GetMapping("/stream/{routeId}")
-    public SseEmitter stream(@PathVariable String routeId) {
-        return sim.subscribe(routeId);
+    public SseEmitter stream(
+        @PathVariable String routeId,
+        @RequestParam(defaultValue = "false") boolean delta
+    ) {
+        return sim.subscribe(Set.of(routeId), delta);
     }
 
     @GetMapping("/stream")
-    public SseEmitter streamRoutes(@RequestParam String routes) {
+    public ResponseEntity<SseEmitter> streamRoutes(
+        @RequestParam String routes,
+        @RequestParam(defaultValue = "false") boolean delta,
+        @RequestParam(required = false) Double north,
+        @RequestParam(required = false) Double west,
+        @RequestParam(required = false) Double south,
+        @RequestParam(required = false) Double east
+    ) {
         Set<String> routeIds = Arrays.stream(routes.split(","))
             .map(String::trim)
             .filter(routeId -> !routeId.isBlank())
             .collect(Collectors.toSet());
-        return sim.subscribe(routeIds);
+
+        boolean anyBound = north != null || west != null || south != null || east != null;
+        boolean allBounds = north != null && west != null && south != null && east != null;
+        if (anyBound && (delta || !allBounds)) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        if (allBounds) {
+            return ResponseEntity.ok(sim.subscribe(routeIds, new Viewport(north, west, south, east)));
+        }
+        return ResponseEntity.ok(sim.subscribe(routeIds, delta));
+    }
+
+    @PutMapping("/stream/{subscriptionId}/viewport")
+    public ResponseEntity<Void> updateViewport(
+        @PathVariable String subscriptionId,
+        @RequestParam double north,
+        @RequestParam double west,
+        @RequestParam double south,
+        @RequestParam double east
+    ) {
+        boolean updated = sim.updateViewport(subscriptionId, new Viewport(north, west, south, east));
+        return updated ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build();
+    }
+
+    @GetMapping("/feed")
+    public FeedStatus feed() {
+        return refresher.status();
+    }
+
+    @GetMapping("/source")
+    public SourceStatus source() {
+        return source.status();
+    }
+
+    @GetMapping("/stats")
+    public FanoutStats stats() {
+        return sim.fanoutStats();
+    }
+
+    @GetMapping("/upstream")
+    public Map<String, UpstreamStats> upstream() {
+        return upstream.stats();
     }
 }
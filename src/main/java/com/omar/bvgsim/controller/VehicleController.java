@@ -4,36 +4,48 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.client.RestClientException;
-import org.springframework.web.client.RestTemplate;
 import org.springframework.web.util.UriComponentsBuilder;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.omar.bvgsim.service.UpstreamClient;
+
 @RestController
 @RequestMapping("/api/vehicle-positions")
 public class VehicleController {
-    private final RestTemplate rest = new RestTemplate();
+    private static final TypeReference<List<Map<String, Object>>> POSITIONS_TYPE = new TypeReference<>() { };
+
+    @Autowired
+    private UpstreamClient upstream;
+
+    @Autowired
+    private ObjectMapper objectMapper;
 
     @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
     public List<Map<String,Object>> getPositions(
         @RequestParam String line,
         @RequestParam(required = false) String type
     ) {
-        UriComponentsBuilder url = UriComponentsBuilder
-            .fromHttpUrl("https://v6.bvg.transport.rest/api/vehicle-positions")
+        UriComponentsBuilder url = upstream.uriBuilder()
+            .path("/api/vehicle-positions")
             .queryParam("line", line);
         if (type != null && !type.isBlank()) {
             url.queryParam("type", type);
         }
 
         try {
-            @SuppressWarnings("unchecked")
-            List<Map<String,Object>> data =
-              rest.getForObject(url.toUriString(), List.class);
+            List<Map<String,Object>> data = upstream.get(
+                UpstreamClient.VEHICLE_POSITIONS,
+                url.toUriString(),
+                body -> objectMapper.readValue(body, POSITIONS_TYPE)
+            );
             return data != null ? data : Collections.emptyList();
         } catch (RestClientException e) {
             return Collections.emptyList();
@@ -0,0 +1,195 @@
+package com.omar.bvgsim.fake;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+
+import com.omar.bvgsim.model.Viewport;
+import com.omar.bvgsim.service.BvgRadarClient;
+import com.omar.bvgsim.service.GeoDistance;
+
+/**
+ * Synthetic fleet behind the fake upstream. Every configured line gets a seeded, gently bending route inside the
+ * Berlin area and its vehicles shuttle along it at a speed typical for the product. Positions and trip ids are
+ * pure functions of the clock, so consecutive radar polls show coherent movement and trip lookups agree with
+ * the radar.
+ */
+@Service
+@Profile(FakeUpstreamController.PROFILE)
+public class FakeFleet {
+    private static final ZoneId BERLIN = ZoneId.of("Europe/Berlin");
+    private static final DateTimeFormatter TRIP_DATE = DateTimeFormatter.ofPattern("ddMMyyyy");
+    private static final int STOPS_PER_LINE = 14;
+    private static final double STOP_SPACING_METERS = 900.0;
+
+    private final List<FakeLine> lines = new ArrayList<>();
+    private final List<FakeVehicle> vehicles = new ArrayList<>();
+
+    public FakeFleet(
+        @Value("${bvg.fake.vehicles:2000}") int vehicleCount,
+        @Value("${bvg.fake.lines:M10:tram:3,M4:tram:2,U8:subway:2,U2:subway:2,S5:suburban:2,S7:suburban:2,"
+            + "100:bus:3,200:bus:2,M41:bus:3,X10:bus:2,RE1:regional:1,F10:ferry:1}") String lineMix,
+        @Value("${bvg.fake.seed:7}") long seed
+    ) {
+        SplittableRandom random = new SplittableRandom(seed);
+        Viewport area = BvgRadarClient.BERLIN_AREA.expand(-0.1);
+        double totalWeight = 0.0;
+        for (String spec : lineMix.split(",")) {
+            String[] parts = spec.trim().split(":");
+            if (parts.length < 2 || parts[0].isBlank()) {
+                continue;
+            }
+            double weight = parts.length > 2 ? Double.parseDouble(parts[2]) : 1.0;
+            FakeLine line = FakeLine.random(parts[0].trim(), parts[1].trim(), weight, area, random);
+            lines.add(line);
+            totalWeight += weight;
+        }
+
+        int index = 0;
+        for (FakeLine line : lines) {
+            int count = (int) Math.round(vehicleCount * line.weight() / totalWeight);
+            double cycle = 2.0 * line.length();
+            for (int i = 0; i < count; i++) {
+                vehicles.add(new FakeVehicle(index++, line, cycle * i / count));
+            }
+        }
+    }
+
+    public List<FakeLine> lines() {
+        return lines;
+    }
+
+    public List<FakeVehicle> vehicles() {
+        return vehicles;
+    }
+
+    public FakeVehicle vehicle(int index) {
+        return index >= 0 && index < vehicles.size() ? vehicles.get(index) : null;
+    }
+
+    /**
+     * Trip ids look like HAFAS ids, {@code 1|<vehicle>|<lap>|86|<ddMMyyyy>}: each run between the two termini is
+     * its own trip.
+     */
+    public String tripId(FakeVehicle vehicle, long lap, Instant at) {
+        return "1|" + vehicle.index() + "|" + lap + "|86|" + LocalDate.ofInstant(at, BERLIN).format(TRIP_DATE);
+    }
+
+    /**
+     * One vehicle of the fleet. {@code offset} is its starting distance into the out-and-back cycle of its line.
+     */
+    public record FakeVehicle(int index, FakeLine line, double offset) {
+        public long lap(long epochMillis) {
+            return (long) Math.floor(travelled(epochMillis) / line.length());
+        }
+
+        /**
+         * Distance from the first stop at {@code epochMillis}.
+         */
+        public double distance(long epochMillis) {
+            double inLap = travelled(epochMillis) - lap(epochMillis) * line.length();
+            return outbound(lap(epochMillis)) ? inLap : line.length() - inLap;
+        }
+
+        /**
+         * Epoch millis at which {@code lap} left its first stop.
+         */
+        public long lapStart(long lap) {
+            return Math.round((lap * line.length() - offset) / line.speedMps() * 1000.0);
+        }
+
+        public static boolean outbound(long lap) {
+            return Math.floorMod(lap, 2L) == 0L;
+        }
+
+        private double travelled(long epochMillis) {
+            return epochMillis / 1000.0 * line.speedMps() + offset;
+        }
+    }
+
+    /**
+     * A line with its stop sequence and cumulative distances.
+     */
+    public record FakeLine(
+        String name,
+        String product,
+        double weight,
+        double speedMps,
+        double[] lats,
+        double[] lons,
+        double[] distances
+    ) {
+        static FakeLine random(String name, String product, double weight, Viewport area, SplittableRandom random) {
+            double[] lats = new double[STOPS_PER_LINE];
+            double[] lons = new double[STOPS_PER_LINE];
+            double[] distances = new double[STOPS_PER_LINE];
+            lats[0] = area.south() + random.nextDouble() * (area.north() - area.south());
+            lons[0] = area.west() + random.nextDouble() * (area.east() - area.west());
+            double bearing = random.nextDouble() * 2.0 * Math.PI;
+            for (int i = 1; i < STOPS_PER_LINE; i++) {
+                bearing += (random.nextDouble() - 0.5) * Math.toRadians(50.0);
+                double[] next = GeoDistance.offset(lats[i - 1], lons[i - 1], bearing, STOP_SPACING_METERS);
+                if (!area.contains(next[0], next[1])) {
+                    bearing += Math.PI;
+                    next = GeoDistance.offset(lats[i - 1], lons[i - 1], bearing, STOP_SPACING_METERS);
+                }
+                lats[i] = next[0];
+                lons[i] = next[1];
+                distances[i] = distances[i - 1] + GeoDistance.meters(lats[i - 1], lons[i - 1], lats[i], lons[i]);
+            }
+            return new FakeLine(name, product, weight, speedFor(product), lats, lons, distances);
+        }
+
+        public double length() {
+            return distances[distances.length - 1];
+        }
+
+        public String mode() {
+            return switch (product) {
+                case "bus" -> "bus";
+                case "ferry" -> "watercraft";
+                default -> "train";
+            };
+        }
+
+        public String stopName(int index) {
+            return name + " Stop " + (index + 1);
+        }
+
+        public int stopCount() {
+            return lats.length;
+        }
+
+        public double[] pointAt(double distance) {
+            int segment = 1;
+            while (segment < distances.length - 1 && distances[segment] < distance) {
+                segment++;
+            }
+            double span = distances[segment] - distances[segment - 1];
+            double t = span == 0.0 ? 0.0 : Math.max(0.0, Math.min(1.0, (distance - distances[segment - 1]) / span));
+            return new double[] {
+                lats[segment - 1] + t * (lats[segment] - lats[segment - 1]),
+                lons[segment - 1] + t * (lons[segment] - lons[segment - 1])
+            };
+        }
+
+        private static double speedFor(String product) {
+            return switch (product) {
+                case "subway" -> 10.0;
+                case "suburban" -> 14.0;
+                case "regional", "express" -> 22.0;
+                case "tram" -> 6.5;
+                case "ferry" -> 4.0;
+                default -> 6.0;
+            };
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package com.omar.bvgsim.fake;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.omar.bvgsim.fake.FakeFleet.FakeLine;
+import com.omar.bvgsim.fake.FakeFleet.FakeVehicle;
+
+/**
+ * Stand-in for the BVG transport REST API, active only with the {@code fake-upstream} profile. Serves the radar,
+ * trip, line trips and vehicle position endpoints from {@link FakeFleet} under {@code /upstream-stub}, so
+ * {@code bvg.api.base-url} can point at it. Latency, error rate and radar truncation can be configured and changed
+ * at runtime through {@code PUT /upstream-stub/control} to reproduce slow or failing upstreams.
+ */
+@RestController
+@Profile(FakeUpstreamController.PROFILE)
+@RequestMapping("/upstream-stub")
+public class FakeUpstreamController {
+    public static final String PROFILE = "fake-upstream";
+
+    private final FakeFleet fleet;
+
+    private volatile long latencyMs;
+    private volatile long latencyJitterMs;
+    private volatile double errorRate;
+    private volatile int maxResults;
+
+    public FakeUpstreamController(
+        FakeFleet fleet,
+        @Value("${bvg.fake.latency-ms:50}") long latencyMs,
+        @Value("${bvg.fake.latency-jitter-ms:50}") long latencyJitterMs,
+        @Value("${bvg.fake.error-rate:0.0}") double errorRate,
+        @Value("${bvg.fake.max-results:0}") int maxResults
+    ) {
+        this.fleet = fleet;
+        this.latencyMs = latencyMs;
+        this.latencyJitterMs = latencyJitterMs;
+        this.errorRate = errorRate;
+        this.maxResults = maxResults;
+    }
+
+    @GetMapping("/radar")
+    public ResponseEntity<Object> radar(
+        @RequestParam double north,
+        @RequestParam double west,
+        @RequestParam double south,
+        @RequestParam double east,
+        @RequestParam(defaultValue = "256") int results
+    ) {
+        ResponseEntity<Object> failure = simulateUpstream();
+        if (failure != null) {
+            return failure;
+        }
+
+        long now = System.currentTimeMillis();
+        Instant at = Instant.ofEpochMilli(now);
+        int limit = maxResults > 0 ? Math.min(results, maxResults) : results;
+        double top = Math.max(north, south);
+        double bottom = Math.min(north, south);
+        double left = Math.min(west, east);
+        double right = Math.max(west, east);
+
+        List<Map<String, Object>> movements = new ArrayList<>();
+        for (FakeVehicle vehicle : fleet.vehicles()) {
+            if (movements.size() >= limit) {
+                break;
+            }
+
+            double[] point = vehicle.line().pointAt(vehicle.distance(now));
+            if (point[0] < bottom || point[0] > top || point[1] < left || point[1] > right) {
+                continue;
+            }
+
+            long lap = vehicle.lap(now);
+            Map<String, Object> movement = new LinkedHashMap<>();
+            movement.put("tripId", fleet.tripId(vehicle, lap, at));
+            movement.put("direction", direction(vehicle.line(), lap));
+            movement.put("line", line(vehicle.line()));
+            movement.put("location", location(point[0], point[1]));
+            movement.put("nextStopovers", List.of());
+            movements.add(movement);
+        }
+
+        return ResponseEntity.ok(Map.of("movements", movements, "realtimeDataUpdatedAt", now / 1000L));
+    }
+
+    @GetMapping("/trips/{tripId}")
+    public ResponseEntity<Object> trip(@PathVariable String tripId) {
+        ResponseEntity<Object> failure = simulateUpstream();
+        if (failure != null) {
+            return failure;
+        }
+
+        String[] parts = tripId.split("\\|");
+        FakeVehicle vehicle = null;
+        long lap = 0L;
+        try {
+            if (parts.length >= 3) {
+                vehicle = fleet.vehicle(Integer.parseInt(parts[1]));
+                lap = Long.parseLong(parts[2]);
+            }
+        } catch (NumberFormatException e) {
+            vehicle = null;
+        }
+
+        if (vehicle == null) {
+            return error(HttpStatus.NOT_FOUND, "trip not found");
+        }
+        return ResponseEntity.ok(Map.of("trip", trip(vehicle, lap, tripId)));
+    }
+
+    @GetMapping("/trips")
+    public ResponseEntity<Object> lineTrips(@RequestParam String lineName) {
+        ResponseEntity<Object> failure = simulateUpstream();
+        if (failure != null) {
+            return failure;
+        }
+
+        long now = System.currentTimeMillis();
+        Instant at = Instant.ofEpochMilli(now);
+        List<Map<String, Object>> trips = new ArrayList<>();
+        for (FakeVehicle vehicle : fleet.vehicles()) {
+            if (vehicle.line().name().equalsIgnoreCase(lineName)) {
+                long lap = vehicle.lap(now);
+                trips.add(trip(vehicle, lap, fleet.tripId(vehicle, lap, at)));
+            }
+        }
+        return ResponseEntity.ok(Map.of("trips", trips, "realtimeDataUpdatedAt", now / 1000L));
+    }
+
+    @GetMapping("/api/vehicle-positions")
+    public ResponseEntity<Object> vehiclePositions(
+        @RequestParam String line,
+        @RequestParam(required = false) String type
+    ) {
+        ResponseEntity<Object> failure = simulateUpstream();
+        if (failure != null) {
+            return failure;
+        }
+
+        long now = System.currentTimeMillis();
+        Instant at = Instant.ofEpochMilli(now);
+        List<Map<String, Object>> positions = new ArrayList<>();
+        for (FakeVehicle vehicle : fleet.vehicles()) {
+            FakeLine fakeLine = vehicle.line();
+            if (!fakeLine.name().equalsIgnoreCase(line) || (type != null && !type.equals(fakeLine.product()))) {
+                continue;
+            }
+
+            double[] point = fakeLine.pointAt(vehicle.distance(now));
+            long lap = vehicle.lap(now);
+            Map<String, Object> position = new LinkedHashMap<>();
+            position.put("vehicleId", fakeLine.name() + "-" + vehicle.index());
+            position.put("tripId", fleet.tripId(vehicle, lap, at));
+            position.put("line", fakeLine.name());
+            position.put("type", fakeLine.product());
+            position.put("direction", direction(fakeLine, lap));
+            position.put("latitude", point[0]);
+            position.put("longitude", point[1]);
+            position.put("timestamp", at.toString());
+            positions.add(position);
+        }
+        return ResponseEntity.ok(positions);
+    }
+
+    /**
+     * Changes the simulated upstream behaviour at runtime; omitted parameters keep their value.
+     */
+    @PutMapping("/control")
+    public Map<String, Object> control(
+        @RequestParam(required = false) Long latencyMs,
+        @RequestParam(required = false) Long latencyJitterMs,
+        @RequestParam(required = false) Double errorRate,
+        @RequestParam(required = false) Integer maxResults
+    ) {
+        if (latencyMs != null) {
+            this.latencyMs = Math.max(0L, latencyMs);
+        }
+        if (latencyJitterMs != null) {
+            this.latencyJitterMs = Math.max(0L, latencyJitterMs);
+        }
+        if (errorRate != null) {
+            this.errorRate = Math.max(0.0, Math.min(1.0, errorRate));
+        }
+        if (maxResults != null) {
+            this.maxResults = Math.max(0, maxResults);
+        }
+
+        Map<String, Object> settings = new LinkedHashMap<>();
+        settings.put("latencyMs", this.latencyMs);
+        settings.put("latencyJitterMs", this.latencyJitterMs);
+        settings.put("errorRate", this.errorRate);
+        settings.put("maxResults", this.maxResults);
+        settings.put("vehicles", fleet.vehicles().size());
+        settings.put("lines", fleet.lines().size());
+        return settings;
+    }
+
+    private ResponseEntity<Object> simulateUpstream() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long delay = latencyMs + (latencyJitterMs > 0L ? random.nextLong(latencyJitterMs + 1L) : 0L);
+        if (delay > 0L) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        return random.nextDouble() < errorRate
+            ? error(HttpStatus.SERVICE_UNAVAILABLE, "simulated upstream failure")
+            : null;
+    }
+
+    private ResponseEntity<Object> error(HttpStatus status, String message) {
+        return ResponseEntity.status(status).body(Map.of("error", true, "msg", message));
+    }
+
+    private Map<String, Object> trip(FakeVehicle vehicle, long lap, String tripId) {
+        FakeLine fakeLine = vehicle.line();
+        boolean outbound = FakeVehicle.outbound(lap);
+        long departure = vehicle.lapStart(lap);
+        int stops = fakeLine.stopCount();
+
+        List<Map<String, Object>> stopovers = new ArrayList<>(stops);
+        List<Map<String, Object>> features = new ArrayList<>(stops);
+        for (int i = 0; i < stops; i++) {
+            int stop = outbound ? i : stops - 1 - i;
+            double travelled = outbound
+                ? fakeLine.distances()[stop]
+                : fakeLine.length() - fakeLine.distances()[stop];
+            String when = Instant.ofEpochMilli(departure + Math.round(travelled / fakeLine.speedMps() * 1000.0))
+                .toString();
+
+            Map<String, Object> stopover = new LinkedHashMap<>();
+            stopover.put("stop", stop(fakeLine, stop));
+            stopover.put("arrival", when);
+            stopover.put("plannedArrival", when);
+            stopover.put("departure", when);
+            stopover.put("plannedDeparture", when);
+            stopovers.add(stopover);
+
+            features.add(Map.of(
+                "type", "Feature",
+                "properties", Map.of(),
+                "geometry", Map.of(
+                    "type", "Point",
+                    "coordinates", List.of(fakeLine.lons()[stop], fakeLine.lats()[stop])
+                )
+            ));
+        }
+
+        Map<String, Object> trip = new LinkedHashMap<>();
+        trip.put("id", tripId);
+        trip.put("direction", direction(fakeLine, lap));
+        trip.put("line", line(fakeLine));
+        trip.put("origin", stopovers.get(0).get("stop"));
+        trip.put("destination", stopovers.get(stops - 1).get("stop"));
+        trip.put("departure", stopovers.get(0).get("departure"));
+        trip.put("arrival", stopovers.get(stops - 1).get("arrival"));
+        trip.put("stopovers", stopovers);
+        trip.put("polyline", Map.of("type", "FeatureCollection", "features", features));
+        return trip;
+    }
+
+    private Map<String, Object> stop(FakeLine fakeLine, int index) {
+        Map<String, Object> stop = new LinkedHashMap<>();
+        stop.put("type", "stop");
+        stop.put("id", "fake-" + fakeLine.name() + "-" + index);
+        stop.put("name", fakeLine.stopName(index));
+        stop.put("location", location(fakeLine.lats()[index], fakeLine.lons()[index]));
+        return stop;
+    }
+
+    private Map<String, Object> line(FakeLine fakeLine) {
+        Map<String, Object> line = new LinkedHashMap<>();
+        line.put("type", "line");
+        line.put("id", fakeLine.name().toLowerCase());
+        line.put("name", fakeLine.name());
+        line.put("mode", fakeLine.mode());
+        line.put("product", fakeLine.product());
+        return line;
+    }
+
+    private Map<String, Object> location(double latitude, double longitude) {
+        return Map.of("type", "location", "latitude", latitude, "longitude", longitude);
+    }
+
+    private String direction(FakeLine fakeLine, long lap) {
+        return fakeLine.stopName(FakeVehicle.outbound(lap) ? fakeLine.stopCount() - 1 : 0);
+    }
+}
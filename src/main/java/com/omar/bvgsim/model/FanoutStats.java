@@ -0,0 +1,12 @@
+package com.omar.bvgsim.model;
+
+public record FanoutStats(
+    int subscribers,
+    int queuedFrames,
+    int maxQueueDepth,
+    long droppedFrames,
+    long coalescedFrames,
+    long sendFailures,
+    long evictions,
+    int activeWriters
+) { }
@@ -0,0 +1,13 @@
+package com.omar.bvgsim.model;
+
+import java.time.Instant;
+
+public record FeedStatus(
+    long version,
+    Instant createdAt,
+    long ageMs,
+    int vehicles,
+    long pollIntervalMs,
+    long nextPollInMs,
+    int consecutiveFailures
+) { }
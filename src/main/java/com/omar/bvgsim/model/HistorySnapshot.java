@@ -0,0 +1,13 @@
+package com.omar.bvgsim.model;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Vehicles as recorded by the radar poll closest to, but not after, {@code requestedAt}.
+ */
+public record HistorySnapshot(
+    Instant requestedAt,
+    Instant recordedAt,
+    List<VehicleInfo> vehicles
+) { }
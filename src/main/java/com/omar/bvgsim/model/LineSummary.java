@@ -0,0 +1,9 @@
+package com.omar.bvgsim.model;
+
+public record LineSummary(
+    String id,
+    String name,
+    String mode,
+    long vehicleCount,
+    String color
+) { }
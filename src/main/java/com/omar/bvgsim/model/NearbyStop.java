@@ -0,0 +1,6 @@
+package com.omar.bvgsim.model;
+
+public record NearbyStop(
+    TransitStop stop,
+    double distanceMeters
+) { }
@@ -0,0 +1,6 @@
+package com.omar.bvgsim.model;
+
+public record NearbyVehicle(
+    VehicleInfo vehicle,
+    double distanceMeters
+) { }
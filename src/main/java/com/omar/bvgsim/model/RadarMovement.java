@@ -0,0 +1,19 @@
+package com.omar.bvgsim.model;
+
+/**
+ * One vehicle movement from the BVG radar endpoint, reduced to the fields the app actually reads.
+ * Coordinates are {@link Double#NaN} when the radar did not report a usable location.
+ */
+public record RadarMovement(
+    String tripId,
+    String direction,
+    String lineName,
+    String lineMode,
+    String lineProduct,
+    double latitude,
+    double longitude
+) {
+    public boolean hasLocation() {
+        return !Double.isNaN(latitude) && !Double.isNaN(longitude);
+    }
+}
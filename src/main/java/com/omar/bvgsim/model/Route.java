@@ -10,6 +10,9 @@ public class Route {
     private String id;
     private String name;
     private List<Waypoint> waypoints;
+    private Integer headwaySeconds;
+    private Integer dwellSeconds;
+    private Double speedKmh;
 
     public String getId() { return id; }
     public void setId(String id) { this.id = id; }
@@ -19,4 +22,13 @@ public class Route {
 
     public List<Waypoint> getWaypoints() { return waypoints; }
     public void setWaypoints(List<Waypoint> waypoints) { this.waypoints = waypoints; }
+
+    public Integer getHeadwaySeconds() { return headwaySeconds; }
+    public void setHeadwaySeconds(Integer headwaySeconds) { this.headwaySeconds = headwaySeconds; }
+
+    public Integer getDwellSeconds() { return dwellSeconds; }
+    public void setDwellSeconds(Integer dwellSeconds) { this.dwellSeconds = dwellSeconds; }
+
+    public Double getSpeedKmh() { return speedKmh; }
+    public void setSpeedKmh(Double speedKmh) { this.speedKmh = speedKmh; }
 }
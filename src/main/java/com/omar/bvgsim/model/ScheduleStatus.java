@@ -0,0 +1,21 @@
+package com.omar.bvgsim.model;
+
+import java.time.Instant;
+
+/**
+ * @param available   whether a schedule store is mapped and answering lookups
+ * @param store       path of the column file
+ * @param importedAt  when the store was built from the GTFS feed, {@code null} when unavailable
+ * @param sizeBytes   size of the column file
+ */
+public record ScheduleStatus(
+    boolean available,
+    String store,
+    Instant importedAt,
+    int stops,
+    int routes,
+    int trips,
+    int stopTimes,
+    int shapes,
+    long sizeBytes
+) { }
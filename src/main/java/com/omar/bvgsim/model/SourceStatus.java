@@ -0,0 +1,18 @@
+package com.omar.bvgsim.model;
+
+import java.time.Instant;
+
+/**
+ * @param mode        {@code live}, {@code record} or {@code replay}
+ * @param capture     capture file being written or replayed, {@code null} when live
+ * @param frames      radar results written or replayed so far
+ * @param capturedAt  original capture time of the last replayed result, {@code null} unless replaying
+ * @param speed       replay speed factor, {@code 0} for as fast as possible, {@code 1} unless replaying
+ */
+public record SourceStatus(
+    String mode,
+    String capture,
+    long frames,
+    Instant capturedAt,
+    double speed
+) { }
@@ -0,0 +1,9 @@
+package com.omar.bvgsim.model;
+
+import java.time.Instant;
+
+public record TrackPoint(
+    Instant time,
+    double latitude,
+    double longitude
+) { }
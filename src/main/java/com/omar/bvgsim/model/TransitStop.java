@@ -0,0 +1,8 @@
+package com.omar.bvgsim.model;
+
+public record TransitStop(
+    String id,
+    String name,
+    double lat,
+    double lon
+) { }
@@ -0,0 +1,9 @@
+package com.omar.bvgsim.model;
+
+public record UpstreamStats(
+    long calls,
+    long failures,
+    double averageMillis,
+    long maxMillis,
+    long lastMillis
+) { }
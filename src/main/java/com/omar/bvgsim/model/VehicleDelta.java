@@ -0,0 +1,15 @@
+package com.omar.bvgsim.model;
+
+import java.util.List;
+
+/**
+ * Changes to one delta stream since {@code baseVersion}. A client whose last applied version is not
+ * {@code baseVersion} has missed a frame and should resubscribe to get a fresh keyframe.
+ */
+public record VehicleDelta(
+    String stream,
+    long baseVersion,
+    long version,
+    List<VehicleLocation> upserts,
+    List<String> removed
+) { }
@@ -0,0 +1,23 @@
+package com.omar.bvgsim.model;
+
+public record VehicleInfo(
+    String id,
+    String lineId,
+    String mode,
+    String tripId,
+    String destination,
+    double latitude,
+    double longitude
+) {
+    public static VehicleInfo from(VehicleLocation location) {
+        return new VehicleInfo(
+            location.vehicleId(),
+            location.routeId(),
+            location.mode(),
+            location.tripId(),
+            location.destination(),
+            location.lat(),
+            location.lon()
+        );
+    }
+}
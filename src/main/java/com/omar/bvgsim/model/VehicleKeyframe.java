@@ -0,0 +1,12 @@
+package com.omar.bvgsim.model;
+
+import java.util.List;
+
+/**
+ * Full state of one delta stream. Clients replace everything they hold for {@code stream} with {@code vehicles}.
+ */
+public record VehicleKeyframe(
+    String stream,
+    long version,
+    List<VehicleLocation> vehicles
+) { }
@@ -0,0 +1,57 @@
+package com.omar.bvgsim.model;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable view of every live vehicle, built once per radar refresh. The indexes are prebuilt so
+ * readers only pay for the slice they return.
+ *
+ * @param version   increases by one every time a new radar result is indexed; derived snapshots keep the version of
+ *                  the radar result they were derived from
+ * @param sequence  increases by one for every snapshot built, radar or derived, so it orders the per-tick
+ *                  snapshots the stream frames are built from
+ * @param vehicles  all vehicles, sorted by line order and then vehicle id
+ * @param byLine    vehicles per line name, in radar order
+ * @param byMode    vehicles per transit mode, in radar order
+ * @param byTripId  vehicle per radar trip id
+ * @param lines     active lines with their vehicle counts, sorted by line order
+ */
+public record VehicleSnapshot(
+    long version,
+    long sequence,
+    Instant createdAt,
+    List<VehicleLocation> vehicles,
+    Map<String, List<VehicleLocation>> byLine,
+    Map<String, List<VehicleLocation>> byMode,
+    Map<String, VehicleLocation> byTripId,
+    List<LineSummary> lines
+) {
+    public static final VehicleSnapshot EMPTY = new VehicleSnapshot(
+        0L,
+        0L,
+        Instant.EPOCH,
+        List.of(),
+        Map.of(),
+        Map.of(),
+        Map.of(),
+        List.of()
+    );
+
+    public List<VehicleLocation> vehiclesForLine(String lineId) {
+        return byLine.getOrDefault(lineId, List.of());
+    }
+
+    public List<VehicleLocation> vehiclesForMode(String mode) {
+        return byMode.getOrDefault(mode, List.of());
+    }
+
+    public VehicleLocation vehicleForTrip(String tripId) {
+        return tripId == null ? null : byTripId.get(tripId);
+    }
+
+    public boolean isEmpty() {
+        return vehicles.isEmpty();
+    }
+}
@@ -0,0 +1,12 @@
+package com.omar.bvgsim.model;
+
+import java.util.List;
+
+public record VehicleTrack(
+    String id,
+    String lineId,
+    String mode,
+    String tripId,
+    String destination,
+    List<TrackPoint> points
+) { }
@@ -0,0 +1,30 @@
+package com.omar.bvgsim.model;
+
+/**
+ * Geographic bounding box. The constructor normalises the edges, so callers may pass them in either order.
+ */
+public record Viewport(double north, double west, double south, double east) {
+    public Viewport {
+        double top = Math.max(north, south);
+        double bottom = Math.min(north, south);
+        double right = Math.max(west, east);
+        double left = Math.min(west, east);
+        north = top;
+        south = bottom;
+        east = right;
+        west = left;
+    }
+
+    public boolean contains(double lat, double lon) {
+        return lat >= south && lat <= north && lon >= west && lon <= east;
+    }
+
+    /**
+     * Grows the box by {@code fraction} of its height and width on every side.
+     */
+    public Viewport expand(double fraction) {
+        double latMargin = (north - south) * fraction;
+        double lonMargin = (east - west) * fraction;
+        return new Viewport(north + latMargin, west - lonMargin, south - latMargin, east + lonMargin);
+    }
+}
@@ -0,0 +1,235 @@
+package com.omar.bvgsim.service;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.adapter.NativeWebSocketSession;
+
+import com.omar.bvgsim.model.VehicleLocation;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Connections of the binary WebSocket stream. Each tick the broadcaster hands over one batch with the vehicles of
+ * every subscribed route; each connection encodes its own frame with {@link BinaryVehicleEncoder} on a writer
+ * thread. A connection that is still sending when the next tick arrives skips to the newest batch instead of
+ * queueing, which keeps its dictionary and position deltas consistent without dropping frames mid-stream.
+ *
+ * <p>Each connection has at most one send in flight, so the send time limit is enforced here rather than by a
+ * session decorator: the container's blocking send timeout is set to it, and a connection found still sending
+ * past it on a later tick is closed from a separate thread, since closing waits for that send. The writer pool
+ * grows up to {@code bvg.stream.binary.max-writer-threads} so stalled connections do not hold up the others.
+ */
+@Service
+public class BinaryStreamHub {
+    private static final String BLOCKING_SEND_TIMEOUT = "org.apache.tomcat.websocket.BLOCKING_SEND_TIMEOUT";
+
+    private final Map<String, Connection> connections = new ConcurrentHashMap<>();
+    private final ExecutorService writers;
+    private final ExecutorService closers;
+    private final int sendTimeLimitMs;
+    private final int maxStrings;
+    private final LongAdder sentBytes = new LongAdder();
+    private final LongAdder sentFrames = new LongAdder();
+    private final LongAdder skippedBatches = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public BinaryStreamHub(
+        @Value("${bvg.stream.binary.writer-threads:4}") int writerThreads,
+        @Value("${bvg.stream.binary.max-writer-threads:64}") int maxWriterThreads,
+        @Value("${bvg.stream.binary.send-time-limit-ms:10000}") int sendTimeLimitMs,
+        @Value("${bvg.stream.binary.max-strings:65536}") int maxStrings,
+        MeterRegistry meters
+    ) {
+        AtomicInteger writerIds = new AtomicInteger(1);
+        this.writers = new ThreadPoolExecutor(
+            Math.max(1, writerThreads),
+            Math.max(Math.max(1, writerThreads), maxWriterThreads),
+            30,
+            TimeUnit.SECONDS,
+            new SynchronousQueue<>(),
+            runnable -> {
+                Thread thread = new Thread(runnable, "binary-stream-writer-" + writerIds.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        );
+        AtomicInteger closerIds = new AtomicInteger(1);
+        this.closers = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "binary-stream-evict-" + closerIds.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.sendTimeLimitMs = sendTimeLimitMs;
+        this.maxStrings = maxStrings;
+
+        Gauge.builder("bvg.stream.binary.connections", connections, Map::size)
+            .description("Open binary stream connections")
+            .register(meters);
+        FunctionCounter.builder("bvg.stream.binary.sent", sentBytes, LongAdder::sum)
+            .description("Bytes sent on binary stream connections")
+            .baseUnit("bytes")
+            .register(meters);
+        FunctionCounter.builder("bvg.stream.binary.frames", sentFrames, LongAdder::sum)
+            .tag("outcome", "sent")
+            .register(meters);
+        FunctionCounter.builder("bvg.stream.binary.frames", skippedBatches, LongAdder::sum)
+            .tag("outcome", "skipped")
+            .description("Batches replaced by a newer one before a slow connection could send them")
+            .register(meters);
+        FunctionCounter.builder("bvg.stream.binary.evictions", evictions, LongAdder::sum)
+            .description("Connections closed for still sending past the send time limit")
+            .register(meters);
+    }
+
+    public void register(WebSocketSession session, Set<String> routeIds) {
+        if (session instanceof NativeWebSocketSession nativeSession) {
+            jakarta.websocket.Session container = nativeSession.getNativeSession(jakarta.websocket.Session.class);
+            if (container != null) {
+                container.getUserProperties().put(BLOCKING_SEND_TIMEOUT, (long) sendTimeLimitMs);
+            }
+        }
+        connections.put(session.getId(), new Connection(session, Set.copyOf(routeIds), maxStrings));
+    }
+
+    public void unregister(WebSocketSession session) {
+        connections.remove(session.getId());
+    }
+
+    public boolean hasSubscribers() {
+        return !connections.isEmpty();
+    }
+
+    /**
+     * Route ids subscribed by at least one connection.
+     */
+    public Set<String> routeIds() {
+        Set<String> routeIds = new HashSet<>();
+        connections.values().forEach(connection -> routeIds.addAll(connection.routeIds));
+        return routeIds;
+    }
+
+    /**
+     * Hands every connection the vehicles of its routes. {@code vehiclesByRoute} must contain every id returned by
+     * {@link #routeIds()}; routes without vehicles may map to an empty list.
+     */
+    public void publish(long version, long epochMillis, Map<String, List<VehicleLocation>> vehiclesByRoute) {
+        long now = System.currentTimeMillis();
+        connections.values().forEach(connection -> {
+            long sendingSince = connection.sendingSince;
+            if (sendingSince != 0L && now - sendingSince > sendTimeLimitMs) {
+                evictions.increment();
+                connections.remove(connection.session.getId());
+                closeLater(connection);
+                return;
+            }
+            Map<String, List<VehicleLocation>> routes = new LinkedHashMap<>();
+            for (String routeId : connection.routeIds) {
+                routes.put(routeId, vehiclesByRoute.getOrDefault(routeId, List.of()));
+            }
+            if (connection.pending.getAndSet(new Batch(version, epochMillis, routes)) != null) {
+                skippedBatches.increment();
+            }
+            schedule(connection);
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        writers.shutdownNow();
+        closers.shutdownNow();
+    }
+
+    private void schedule(Connection connection) {
+        if (!connection.draining.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            writers.execute(() -> drain(connection));
+        } catch (RejectedExecutionException e) {
+            connection.draining.set(false);
+        }
+    }
+
+    private void drain(Connection connection) {
+        try {
+            Batch batch;
+            while ((batch = connection.pending.getAndSet(null)) != null) {
+                byte[] frame = connection.encoder.encode(batch.version(), batch.epochMillis(), batch.routes());
+                connection.sendingSince = System.currentTimeMillis();
+                connection.session.sendMessage(new BinaryMessage(frame));
+                connection.sendingSince = 0L;
+                sentBytes.add(frame.length);
+                sentFrames.increment();
+            }
+        } catch (IOException | RuntimeException e) {
+            connections.remove(connection.session.getId());
+            close(connection);
+        } finally {
+            connection.sendingSince = 0L;
+            connection.draining.set(false);
+        }
+
+        if (connection.pending.get() != null && connections.containsKey(connection.session.getId())) {
+            schedule(connection);
+        }
+    }
+
+    private void closeLater(Connection connection) {
+        try {
+            closers.execute(() -> close(connection));
+        } catch (RejectedExecutionException e) {
+            // Shutting down; the container closes the session.
+        }
+    }
+
+    private static void close(Connection connection) {
+        try {
+            connection.session.close(CloseStatus.SESSION_NOT_RELIABLE);
+        } catch (IOException ignored) {
+            // Already gone.
+        }
+    }
+
+    private record Batch(long version, long epochMillis, Map<String, List<VehicleLocation>> routes) {
+    }
+
+    private static final class Connection {
+        private final WebSocketSession session;
+        private final Set<String> routeIds;
+        private final BinaryVehicleEncoder encoder;
+        private final AtomicReference<Batch> pending = new AtomicReference<>();
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private volatile long sendingSince = 0L;
+
+        private Connection(WebSocketSession session, Set<String> routeIds, int maxStrings) {
+            this.session = session;
+            this.routeIds = routeIds;
+            this.encoder = new BinaryVehicleEncoder(maxStrings);
+        }
+    }
+}
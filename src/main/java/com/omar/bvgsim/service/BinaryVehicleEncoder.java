@@ -0,0 +1,143 @@
+package com.omar.bvgsim.service;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.omar.bvgsim.model.VehicleLocation;
+
+/**
+ * Encoder state of one binary stream connection. Strings (vehicle ids, lines, modes, trip ids, destinations) are
+ * sent once and referenced by a connection-local id afterwards; a vehicle's line, mode, trip and destination are
+ * only repeated when they change; coordinates are fixed-point at 1e-5 degrees and sent as the zig-zag varint
+ * difference to the position last sent for that vehicle on this connection. Frame layout:
+ *
+ * <pre>
+ * u8     type (1 = vehicles)
+ * u8     flags (bit 0: reset; drop all strings and positions before applying this frame)
+ * varint snapshot version
+ * varint epoch millis
+ * varint new string count, then per string: varint UTF-8 length, bytes; ids continue from the last one, from 1
+ * varint route count, then per route:
+ *   varint route string id
+ *   varint vehicle count, then per vehicle:
+ *     varint vehicle string id &lt;&lt; 1 | 1 if metadata follows
+ *     [varint line, mode, trip, destination string ids; 0 = none]
+ *     zigzag varint latitude delta, zigzag varint longitude delta (from 0 for a vehicle not seen before)
+ * </pre>
+ *
+ * Every frame lists all current vehicles of each route, so vehicles missing from a route's list are gone. Not
+ * thread-safe; each connection encodes on one writer at a time.
+ */
+final class BinaryVehicleEncoder {
+    static final int FRAME_VEHICLES = 1;
+    static final int FLAG_RESET = 1;
+    private static final double SCALE = 1e5;
+
+    private final int maxStrings;
+    private final Map<String, Integer> strings = new HashMap<>();
+    private final List<String> added = new ArrayList<>();
+    private int[] lastLat = new int[0];
+    private int[] lastLon = new int[0];
+    private int[][] lastMeta = new int[0][];
+
+    BinaryVehicleEncoder(int maxStrings) {
+        this.maxStrings = maxStrings;
+    }
+
+    byte[] encode(long version, long epochMillis, Map<String, List<VehicleLocation>> routes) {
+        boolean reset = strings.size() > maxStrings;
+        if (reset) {
+            strings.clear();
+            lastLat = new int[0];
+            lastLon = new int[0];
+            lastMeta = new int[0][];
+        }
+        added.clear();
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream(64 + routes.size() * 16);
+        putVarint(body, routes.size());
+        routes.forEach((routeId, vehicles) -> {
+            putVarint(body, ref(routeId));
+            putVarint(body, vehicles.size());
+            for (VehicleLocation vehicle : vehicles) {
+                int id = ref(vehicle.vehicleId() != null ? vehicle.vehicleId() : vehicle.tripId());
+                ensureCapacity(id + 1);
+                int[] meta = {
+                    ref(vehicle.routeId()),
+                    ref(vehicle.mode()),
+                    ref(vehicle.tripId()),
+                    ref(vehicle.destination())
+                };
+                boolean metaChanged = !Arrays.equals(meta, lastMeta[id]);
+                putVarint(body, id << 1 | (metaChanged ? 1 : 0));
+                if (metaChanged) {
+                    for (int value : meta) {
+                        putVarint(body, value);
+                    }
+                    lastMeta[id] = meta;
+                }
+
+                int lat = (int) Math.round(vehicle.lat() * SCALE);
+                int lon = (int) Math.round(vehicle.lon() * SCALE);
+                putVarint(body, zigZag(lat - lastLat[id]));
+                putVarint(body, zigZag(lon - lastLon[id]));
+                lastLat[id] = lat;
+                lastLon[id] = lon;
+            }
+        });
+
+        ByteArrayOutputStream frame = new ByteArrayOutputStream(32 + added.size() * 24 + body.size());
+        frame.write(FRAME_VEHICLES);
+        frame.write(reset ? FLAG_RESET : 0);
+        putVarint(frame, version);
+        putVarint(frame, epochMillis);
+        putVarint(frame, added.size());
+        for (String value : added) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putVarint(frame, bytes.length);
+            frame.write(bytes, 0, bytes.length);
+        }
+        frame.writeBytes(body.toByteArray());
+        return frame.toByteArray();
+    }
+
+    private int ref(String value) {
+        if (value == null) {
+            return 0;
+        }
+
+        Integer id = strings.get(value);
+        if (id == null) {
+            id = strings.size() + 1;
+            strings.put(value, id);
+            added.add(value);
+        }
+        return id;
+    }
+
+    private void ensureCapacity(int size) {
+        if (size > lastLat.length) {
+            int capacity = Math.max(size, Math.max(256, lastLat.length * 2));
+            lastLat = Arrays.copyOf(lastLat, capacity);
+            lastLon = Arrays.copyOf(lastLon, capacity);
+            lastMeta = Arrays.copyOf(lastMeta, capacity);
+        }
+    }
+
+    private static long zigZag(int value) {
+        return Integer.toUnsignedLong((value << 1) ^ (value >> 31));
+    }
+
+    private static void putVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0L) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+}
@@ -1,98 +1,271 @@
 package com.omar.bvgsim.service;
 
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestClientException;
-import org.springframework.web.client.RestTemplate;
-import org.springframework.web.util.UriComponentsBuilder;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import com.omar.bvgsim.model.RadarMovement;
+import com.omar.bvgsim.model.Viewport;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import jakarta.annotation.PreDestroy;
 
 @Service
 public class BvgRadarClient {
-    private static final double BERLIN_NORTH = 52.6755;
-    private static final double BERLIN_WEST = 13.0883;
-    private static final double BERLIN_SOUTH = 52.3382;
-    private static final double BERLIN_EAST = 13.7611;
-    private static final int RADAR_RESULT_LIMIT = 1024;
-    private static final long RADAR_CACHE_TTL_MS = 5000;
-    private static final long RADAR_ERROR_BACKOFF_MS = 30000;
-    private static final long RADAR_STALE_CACHE_MS = 120000;
-    private static final long RADAR_ERROR_LOG_INTERVAL_MS = 60000;
-
-    private final RestTemplate restTemplate = new RestTemplate();
-    private final String apiBaseUrl;
-    private volatile List<Map<String, Object>> cachedMovements = Collections.emptyList();
-    private volatile long cachedMovementsAt = 0L;
-    private volatile long retryRadarAfter = 0L;
-    private volatile long lastRadarErrorLogAt = 0L;
-
-    public BvgRadarClient(@Value("${bvg.api.base-url:https://v6.bvg.transport.rest}") String apiBaseUrl) {
-        this.apiBaseUrl = apiBaseUrl;
-    }
-
-    public synchronized List<Map<String, Object>> fetchBerlinMovements() {
-        long now = System.currentTimeMillis();
-        if (!cachedMovements.isEmpty() && now - cachedMovementsAt < RADAR_CACHE_TTL_MS) {
-            return cachedMovements;
+    public static final Viewport BERLIN_AREA = new Viewport(52.6755, 13.0883, 52.3382, 13.7611);
+    public static final int RADAR_RESULT_LIMIT = 1024;
+    private static final int LINE_TRIPS_CACHE_ENTRIES = 128;
+
+    private static final TypeReference<Map<String, Object>> TRIP_TYPE = new TypeReference<>() { };
+
+    private final UpstreamClient upstream;
+    private final ObjectMapper objectMapper;
+    private final VirtualThreads threads;
+    private final TtlCache<String, Map<String, Object>> tripCache;
+    private final TtlCache<String, LineTrips> lineTripsCache;
+    private final ThreadPoolExecutor tripLookups;
+    private final long fallbackHedgeMs;
+    private final Timer primaryFound;
+    private final Timer primaryMissing;
+    private final Timer fallbackFound;
+    private final Timer fallbackMissing;
+
+    public BvgRadarClient(
+        UpstreamClient upstream,
+        ObjectMapper objectMapper,
+        @Value("${bvg.trips.cache.max-entries:512}") int tripCacheEntries,
+        @Value("${bvg.trips.cache.ttl-ms:60000}") long tripTtlMs,
+        @Value("${bvg.trips.cache.miss-ttl-ms:15000}") long tripMissTtlMs,
+        @Value("${bvg.trips.line-cache.ttl-ms:30000}") long lineTripsTtlMs,
+        @Value("${bvg.trips.lookup-threads:32}") int lookupThreads,
+        @Value("${bvg.trips.fallback-hedge-ms:300}") long fallbackHedgeMs,
+        VirtualThreads threads,
+        MeterRegistry meters
+    ) {
+        this.upstream = upstream;
+        this.objectMapper = objectMapper;
+        this.threads = threads;
+        this.fallbackHedgeMs = fallbackHedgeMs;
+        this.tripCache = new TtlCache<>(tripCacheEntries, trip -> trip.isEmpty() ? tripMissTtlMs : tripTtlMs);
+        this.lineTripsCache = new TtlCache<>(LINE_TRIPS_CACHE_ENTRIES, lineTrips -> lineTripsTtlMs);
+        AtomicInteger lookupIds = new AtomicInteger(1);
+        this.tripLookups = new ThreadPoolExecutor(
+            0,
+            Math.max(1, lookupThreads),
+            30,
+            TimeUnit.SECONDS,
+            new SynchronousQueue<>(),
+            runnable -> {
+                Thread thread = new Thread(runnable, "trip-lookup-" + lookupIds.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        );
+        this.primaryFound = tripTimer("primary", "found", meters);
+        this.primaryMissing = tripTimer("primary", "missing", meters);
+        this.fallbackFound = tripTimer("fallback", "found", meters);
+        this.fallbackMissing = tripTimer("fallback", "missing", meters);
+        bindCache("trip", tripCache, meters);
+        bindCache("line-trips", lineTripsCache, meters);
+    }
+
+    /**
+     * Performs one blocking radar call for {@code area}. Only {@link RadarTilePoller} calls this; everything else
+     * reads the published {@link VehicleSnapshotService} snapshot.
+     *
+     * @throws RestClientException when the call fails or the response carries no movement list
+     */
+    public List<RadarMovement> fetchRadarArea(Viewport area, int results) {
+        List<RadarMovement> movements = upstream.get(
+            UpstreamClient.RADAR,
+            buildRadarUrl(area, results),
+            RadarMovementParser::parse
+        );
+
+        if (movements == null) {
+            throw new RestClientException("BVG radar response did not contain movements");
         }
+        return movements;
+    }
 
-        if (now < retryRadarAfter) {
-            return usableCachedMovements(now);
+    /**
+     * Returns the trip with stopovers and polyline. Results are cached per trip id, and concurrent lookups of the
+     * same trip share one upstream call. When the trips endpoint rejects a radar trip id, the trip is resolved from
+     * the cached list of running trips of its line instead. On virtual threads, the thread that loads an uncached
+     * trip requests the line's trips if the trip has not answered within {@code bvg.trips.fallback-hedge-ms}, and
+     * cancels that request once the trip is found; lookups that waited on the load join the same line-trips call
+     * through its cache.
+     */
+    public Map<String, Object> fetchTrip(String tripId, String lineName, String direction) {
+        long startedAt = System.nanoTime();
+        AtomicReference<Future<Map<String, Object>>> fallbackLookup = new AtomicReference<>();
+        Map<String, Object> trip = tripCache.get(tripId, () -> loadTrip(tripId, lineName, direction, fallbackLookup));
+        boolean found = trip != null && !trip.isEmpty();
+        (found ? primaryFound : primaryMissing).record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+        if (found) {
+            return trip;
+        }
+
+        startedAt = System.nanoTime();
+        Map<String, Object> fallback = fallbackLookup.get() != null
+            ? await(fallbackLookup.get())
+            : fetchActiveLineTrip(tripId, lineName, direction);
+        (fallback.isEmpty() ? fallbackMissing : fallbackFound)
+            .record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+        return fallback;
+    }
+
+    /**
+     * Like {@link #fetchTrip}, but waits at most {@code waitMs} for an uncached trip and returns an empty map when
+     * it has not been resolved by then, or when all lookup threads are busy. A lookup that runs late keeps going
+     * and caches its result for the next request.
+     */
+    public Map<String, Object> fetchTripWithin(String tripId, String lineName, String direction, long waitMs) {
+        Map<String, Object> cached = tripCache.peek(tripId);
+        if (cached != null && !cached.isEmpty()) {
+            return fetchTrip(tripId, lineName, direction);
         }
 
+        Future<Map<String, Object>> lookup = threads.fork(() -> fetchTrip(tripId, lineName, direction));
         try {
-            @SuppressWarnings("unchecked")
-            Map<String, Object> radarResponse = restTemplate.getForObject(buildRadarUrl(), Map.class);
-
-            if (radarResponse != null && radarResponse.containsKey("movements")) {
-                @SuppressWarnings("unchecked")
-                List<Map<String, Object>> movements = (List<Map<String, Object>>) radarResponse.get("movements");
-                cachedMovements = movements != null ? movements : Collections.emptyList();
-                cachedMovementsAt = now;
-                retryRadarAfter = 0L;
-                return cachedMovements;
+            if (lookup == null) {
+                lookup = tripLookups.submit(() -> fetchTrip(tripId, lineName, direction));
             }
-        } catch (Exception e) {
-            retryRadarAfter = now + RADAR_ERROR_BACKOFF_MS;
-            logRadarError(e, now);
+            return lookup.get(waitMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException | TimeoutException e) {
+            return Collections.emptyMap();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Collections.emptyMap();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
         }
+    }
+
+    /**
+     * Returns the trip if it is already cached, without calling upstream. Used by background consumers that only
+     * want trip details someone else has paid for.
+     */
+    public Map<String, Object> cachedTrip(String tripId) {
+        Map<String, Object> trip = tripCache.peek(tripId);
+        return trip == null || trip.isEmpty() ? null : trip;
+    }
 
-        return usableCachedMovements(now);
+    @PreDestroy
+    public void shutdown() {
+        tripLookups.shutdownNow();
     }
 
-    private List<Map<String, Object>> usableCachedMovements(long now) {
-        if (!cachedMovements.isEmpty() && now - cachedMovementsAt <= RADAR_STALE_CACHE_MS) {
-            return cachedMovements;
+    /**
+     * Loads a trip by id for the trip cache. The hedged line-trips lookup is handed out through
+     * {@code fallbackLookup} only when the trip was not found; otherwise it is cancelled.
+     */
+    private Map<String, Object> loadTrip(
+        String tripId,
+        String lineName,
+        String direction,
+        AtomicReference<Future<Map<String, Object>>> fallbackLookup
+    ) {
+        Future<Map<String, Object>> hedge = lineName != null && !lineName.isBlank()
+            ? threads.fork(() -> hedgedLineTrip(tripId, lineName, direction))
+            : null;
+        Map<String, Object> trip = null;
+        try {
+            trip = fetchTripById(tripId);
+            return trip;
+        } finally {
+            if (hedge != null && trip != null && trip.isEmpty()) {
+                fallbackLookup.set(hedge);
+            } else if (hedge != null) {
+                hedge.cancel(true);
+            }
         }
+    }
 
-        return Collections.emptyList();
+    private Map<String, Object> hedgedLineTrip(String tripId, String lineName, String direction)
+        throws InterruptedException {
+        Thread.sleep(fallbackHedgeMs);
+        return fetchActiveLineTrip(tripId, lineName, direction);
     }
 
-    private void logRadarError(Exception e, long now) {
-        if (now - lastRadarErrorLogAt < RADAR_ERROR_LOG_INTERVAL_MS) {
-            return;
+    private static Map<String, Object> await(Future<Map<String, Object>> lookup) {
+        try {
+            return lookup.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Collections.emptyMap();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
         }
+    }
 
-        lastRadarErrorLogAt = now;
-        System.err.println("BVG radar temporarily unavailable; retrying in "
-            + (RADAR_ERROR_BACKOFF_MS / 1000)
-            + "s. "
-            + e.getMessage());
+    private static Timer tripTimer(String path, String outcome, MeterRegistry meters) {
+        return Timer.builder("bvg.trips.fetch")
+            .description("Trip lookup latency by resolution path; primary includes trip cache hits")
+            .tag("path", path)
+            .tag("outcome", outcome)
+            .publishPercentileHistogram()
+            .register(meters);
     }
 
-    public Map<String, Object> fetchTrip(String tripId, String lineName, String direction) {
+    private static void bindCache(String cache, TtlCache<?, ?> ttlCache, MeterRegistry meters) {
+        FunctionCounter.builder("bvg.cache.requests", ttlCache, TtlCache::hits)
+            .tag("cache", cache)
+            .tag("result", "hit")
+            .register(meters);
+        FunctionCounter.builder("bvg.cache.requests", ttlCache, TtlCache::misses)
+            .tag("cache", cache)
+            .tag("result", "miss")
+            .register(meters);
+        FunctionCounter.builder("bvg.cache.requests", ttlCache, TtlCache::coalescedLoads)
+            .tag("cache", cache)
+            .tag("result", "coalesced")
+            .register(meters);
+        Gauge.builder("bvg.cache.size", ttlCache, TtlCache::size)
+            .tag("cache", cache)
+            .register(meters);
+    }
+
+    private Map<String, Object> fetchTripById(String tripId) {
         try {
-            @SuppressWarnings("unchecked")
-            Map<String, Object> tripResponse = restTemplate.getForObject(buildTripUrl(tripId), Map.class);
+            Map<String, Object> tripResponse = upstream.get(
+                UpstreamClient.TRIP,
+                buildTripUrl(tripId),
+                body -> objectMapper.readValue(body, TRIP_TYPE)
+            );
             return tripResponse != null ? tripResponse : Collections.emptyMap();
         } catch (RestClientException e) {
             // Radar trip IDs are not always accepted by the trips endpoint, so fall back to active line trips.
+            return Collections.emptyMap();
         }
-
-        return fetchActiveLineTrip(tripId, lineName, direction);
     }
 
     private Map<String, Object> fetchActiveLineTrip(String tripId, String lineName, String direction) {
@@ -100,40 +273,39 @@ public class BvgRadarClient {
             return Collections.emptyMap();
         }
 
-        try {
-            @SuppressWarnings("unchecked")
-            Object tripsResponse = restTemplate.getForObject(buildTripsUrl(lineName), Object.class);
-            List<Map<String, Object>> trips = extractTrips(tripsResponse);
-            if (trips.isEmpty()) {
-                return Collections.emptyMap();
-            }
+        LineTrips lineTrips = lineTripsCache.get(lineName, () -> fetchLineTrips(lineName));
+        return lineTrips != null ? lineTrips.find(tripId, direction) : Collections.emptyMap();
+    }
 
-            return trips.stream()
-                .filter(trip -> matchesTrip(trip, tripId, direction))
-                .findFirst()
-                .orElse(trips.get(0));
+    private LineTrips fetchLineTrips(String lineName) {
+        try {
+            Object tripsResponse = upstream.get(
+                UpstreamClient.TRIPS,
+                buildTripsUrl(lineName),
+                body -> objectMapper.readValue(body, Object.class)
+            );
+            return LineTrips.index(extractTrips(tripsResponse));
         } catch (RestClientException e) {
             System.err.println("Active BVG trip fallback failed for line " + lineName + ".");
+            return null;
         }
-
-        return Collections.emptyMap();
     }
 
-    private String buildRadarUrl() {
-        return UriComponentsBuilder.fromHttpUrl(apiBaseUrl)
+    private String buildRadarUrl(Viewport area, int results) {
+        return upstream.uriBuilder()
             .path("/radar")
-            .queryParam("north", BERLIN_NORTH)
-            .queryParam("west", BERLIN_WEST)
-            .queryParam("south", BERLIN_SOUTH)
-            .queryParam("east", BERLIN_EAST)
-            .queryParam("results", RADAR_RESULT_LIMIT)
+            .queryParam("north", area.north())
+            .queryParam("west", area.west())
+            .queryParam("south", area.south())
+            .queryParam("east", area.east())
+            .queryParam("results", results)
             .queryParam("frames", 1)
             .queryParam("polylines", false)
             .toUriString();
     }
 
     private String buildTripUrl(String tripId) {
-        return UriComponentsBuilder.fromHttpUrl(apiBaseUrl)
+        return upstream.uriBuilder()
             .pathSegment("trips", tripId)
             .queryParam("stopovers", true)
             .queryParam("polyline", true)
@@ -141,7 +313,7 @@ public class BvgRadarClient {
     }
 
     private String buildTripsUrl(String lineName) {
-        return UriComponentsBuilder.fromHttpUrl(apiBaseUrl)
+        return upstream.uriBuilder()
             .path("/trips")
             .queryParam("lineName", lineName)
             .queryParam("query", lineName)
@@ -173,18 +345,40 @@ public class BvgRadarClient {
         return Collections.emptyList();
     }
 
-    private boolean matchesTrip(Map<String, Object> trip, String tripId, String direction) {
-        Object id = trip.get("id");
-        Object tripIdValue = trip.get("tripId");
-        if (tripId != null && (tripId.equals(id) || tripId.equals(tripIdValue))) {
-            return true;
+    /**
+     * Running trips of one line, indexed by trip id and by direction.
+     */
+    private record LineTrips(
+        Map<String, Map<String, Object>> byTripId,
+        Map<String, Map<String, Object>> byDirection
+    ) {
+        static LineTrips index(List<Map<String, Object>> trips) {
+            Map<String, Map<String, Object>> byTripId = new HashMap<>();
+            Map<String, Map<String, Object>> byDirection = new HashMap<>();
+            for (Map<String, Object> trip : trips) {
+                if (trip.get("id") instanceof String id) {
+                    byTripId.putIfAbsent(id, trip);
+                }
+                if (trip.get("tripId") instanceof String id) {
+                    byTripId.putIfAbsent(id, trip);
+                }
+                if (trip.get("direction") instanceof String tripDirection) {
+                    byDirection.putIfAbsent(tripDirection.toLowerCase(Locale.ROOT), trip);
+                }
+            }
+            return new LineTrips(byTripId, byDirection);
         }
 
-        Object tripDirection = trip.get("direction");
-        if (direction != null && !direction.isBlank() && tripDirection instanceof String) {
-            return ((String) tripDirection).equalsIgnoreCase(direction);
+        /**
+         * Returns the running trip with {@code tripId}, else one heading to {@code direction}, else an empty map;
+         * never some other trip of the line.
+         */
+        Map<String, Object> find(String tripId, String direction) {
+            Map<String, Object> trip = tripId != null ? byTripId.get(tripId) : null;
+            if (trip == null && direction != null && !direction.isBlank()) {
+                trip = byDirection.get(direction.toLowerCase(Locale.ROOT));
+            }
+            return trip != null ? trip : Collections.emptyMap();
         }
-
-        return false;
     }
 }
@@ -0,0 +1,39 @@
+package com.omar.bvgsim.service;
+
+/**
+ * Distance helpers for city-scale coordinates. Uses an equirectangular approximation, which is well under
+ * a metre off across Berlin and much cheaper than haversine on hot paths.
+ */
+public final class GeoDistance {
+    public static final double EARTH_RADIUS_METERS = 6_371_000.0;
+
+    private GeoDistance() {
+    }
+
+    public static double meters(double lat1, double lon1, double lat2, double lon2) {
+        double meanLat = Math.toRadians((lat1 + lat2) / 2.0);
+        double x = Math.toRadians(lon2 - lon1) * Math.cos(meanLat);
+        double y = Math.toRadians(lat2 - lat1);
+        return Math.sqrt(x * x + y * y) * EARTH_RADIUS_METERS;
+    }
+
+    /**
+     * Initial bearing from the first point to the second, in radians clockwise from north.
+     */
+    public static double bearing(double lat1, double lon1, double lat2, double lon2) {
+        double meanLat = Math.toRadians((lat1 + lat2) / 2.0);
+        double x = Math.toRadians(lon2 - lon1) * Math.cos(meanLat);
+        double y = Math.toRadians(lat2 - lat1);
+        return Math.atan2(x, y);
+    }
+
+    /**
+     * Moves a point {@code meters} along {@code bearing} and returns the new {@code {lat, lon}}.
+     */
+    public static double[] offset(double lat, double lon, double bearing, double meters) {
+        double angular = meters / EARTH_RADIUS_METERS;
+        double nextLat = lat + Math.toDegrees(angular * Math.cos(bearing));
+        double nextLon = lon + Math.toDegrees(angular * Math.sin(bearing) / Math.cos(Math.toRadians(lat)));
+        return new double[] { nextLat, nextLon };
+    }
+}
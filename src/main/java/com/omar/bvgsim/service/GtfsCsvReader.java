@@ -0,0 +1,111 @@
+package com.omar.bvgsim.service;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streaming reader for the comma-separated files of a GTFS feed. Handles quoted fields with embedded commas, quotes
+ * and line breaks, a UTF-8 byte order mark and blank lines. Columns are looked up by header name once; each
+ * {@link #next()} then refills the same row, so a whole file is read without allocating per row beyond the field
+ * strings.
+ */
+final class GtfsCsvReader implements Closeable {
+    private final BufferedReader reader;
+    private final Map<String, Integer> columns = new HashMap<>();
+    private final StringBuilder field = new StringBuilder(64);
+    private final List<String> row = new ArrayList<>();
+
+    GtfsCsvReader(InputStream in) throws IOException {
+        this.reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16);
+        reader.mark(1);
+        if (reader.read() != '\uFEFF') {
+            reader.reset();
+        }
+        if (readRow()) {
+            for (int i = 0; i < row.size(); i++) {
+                columns.putIfAbsent(row.get(i).trim(), i);
+            }
+        }
+    }
+
+    /**
+     * Returns the index of {@code name} in the header, or -1 when the file has no such column.
+     */
+    int column(String name) {
+        return columns.getOrDefault(name, -1);
+    }
+
+    boolean next() throws IOException {
+        while (readRow()) {
+            if (row.size() > 1 || !row.get(0).isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the field at {@code column} of the current row, or {@code null} when the column is missing or empty.
+     */
+    String get(int column) {
+        if (column < 0 || column >= row.size()) {
+            return null;
+        }
+        String value = row.get(column);
+        return value.isEmpty() ? null : value;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private boolean readRow() throws IOException {
+        row.clear();
+        field.setLength(0);
+        boolean quoted = false;
+        int c = reader.read();
+        if (c == -1) {
+            return false;
+        }
+
+        while (true) {
+            if (quoted) {
+                if (c == -1) {
+                    break;
+                }
+                if (c == '"') {
+                    reader.mark(1);
+                    if (reader.read() == '"') {
+                        field.append('"');
+                    } else {
+                        reader.reset();
+                        quoted = false;
+                    }
+                } else {
+                    field.append((char) c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                row.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n' || c == -1) {
+                break;
+            } else if (c != '\r') {
+                field.append((char) c);
+            }
+            c = reader.read();
+        }
+        row.add(field.toString());
+        return true;
+    }
+}
@@ -0,0 +1,154 @@
+package com.omar.bvgsim.service;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.stereotype.Service;
+
+import com.google.transit.realtime.GtfsRealtime.FeedEntity;
+import com.google.transit.realtime.GtfsRealtime.FeedHeader;
+import com.google.transit.realtime.GtfsRealtime.FeedMessage;
+import com.google.transit.realtime.GtfsRealtime.Position;
+import com.google.transit.realtime.GtfsRealtime.TripDescriptor;
+import com.google.transit.realtime.GtfsRealtime.VehicleDescriptor;
+import com.google.transit.realtime.GtfsRealtime.VehiclePosition;
+import com.omar.bvgsim.model.VehicleLocation;
+import com.omar.bvgsim.model.VehicleSnapshot;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Encodes the current snapshot as a GTFS-Realtime {@code VehiclePositions} feed. Each snapshot version is encoded
+ * at most once per mode and the bytes are shared by every request until the next radar poll. The full feed lists
+ * every vehicle; the differential feed lists vehicles that appeared or moved since the previous snapshot and marks
+ * vanished ones as deleted. Entities are keyed by trip id, or by vehicle id for movements without one.
+ */
+@Service
+public class GtfsRealtimeFeed {
+    private static final String GTFS_REALTIME_VERSION = "2.0";
+
+    private final VehicleSnapshotService snapshots;
+    private final Counter fullEncodes;
+    private final Counter differentialEncodes;
+
+    private volatile Encoded full;
+    private volatile Encoded differential;
+
+    public GtfsRealtimeFeed(VehicleSnapshotService snapshots, MeterRegistry meters) {
+        this.snapshots = snapshots;
+        this.fullEncodes = Counter.builder("bvg.gtfsrt.encodes").tag("incrementality", "full").register(meters);
+        this.differentialEncodes = Counter.builder("bvg.gtfsrt.encodes")
+            .tag("incrementality", "differential")
+            .register(meters);
+    }
+
+    /**
+     * Encoded feed bytes with a strong entity tag that changes with the snapshot version and the process.
+     */
+    public record Encoded(long version, byte[] bytes, String etag) {
+    }
+
+    public Encoded vehiclePositions(boolean differentialMode) {
+        VehicleSnapshot snapshot = snapshots.current();
+        Encoded cached = differentialMode ? differential : full;
+        if (cached != null && cached.version() == snapshot.version()) {
+            return cached;
+        }
+
+        synchronized (this) {
+            cached = differentialMode ? differential : full;
+            if (cached != null && cached.version() == snapshot.version()) {
+                return cached;
+            }
+
+            Encoded encoded;
+            if (differentialMode) {
+                VehicleSnapshot previous = snapshots.previous();
+                encoded = encode(snapshot, previous.version() < snapshot.version() ? previous : null, "diff");
+                differential = encoded;
+                differentialEncodes.increment();
+            } else {
+                encoded = encode(snapshot, null, "full");
+                full = encoded;
+                fullEncodes.increment();
+            }
+            return encoded;
+        }
+    }
+
+    private Encoded encode(VehicleSnapshot snapshot, VehicleSnapshot previous, String kind) {
+        long timestamp = snapshot.createdAt().getEpochSecond();
+        FeedMessage.Builder feed = FeedMessage.newBuilder().setHeader(FeedHeader.newBuilder()
+            .setGtfsRealtimeVersion(GTFS_REALTIME_VERSION)
+            .setIncrementality(previous != null
+                ? FeedHeader.Incrementality.DIFFERENTIAL
+                : FeedHeader.Incrementality.FULL_DATASET)
+            .setTimestamp(timestamp));
+
+        Map<String, VehicleLocation> before = previous != null ? byEntityId(previous) : Map.of();
+        Map<String, Boolean> seen = new HashMap<>();
+        for (VehicleLocation vehicle : snapshot.vehicles()) {
+            String id = entityId(vehicle);
+            if (id == null || seen.putIfAbsent(id, Boolean.TRUE) != null) {
+                continue;
+            }
+
+            VehicleLocation old = before.get(id);
+            if (previous != null && old != null && old.lat() == vehicle.lat() && old.lon() == vehicle.lon()) {
+                continue;
+            }
+            feed.addEntity(FeedEntity.newBuilder().setId(id).setVehicle(vehiclePosition(vehicle, timestamp)));
+        }
+
+        for (String id : before.keySet()) {
+            if (!seen.containsKey(id)) {
+                feed.addEntity(FeedEntity.newBuilder().setId(id).setIsDeleted(true));
+            }
+        }
+
+        String etag = VehicleSnapshotService.etag(snapshot, "gtfsrt-" + kind);
+        return new Encoded(snapshot.version(), feed.build().toByteArray(), etag);
+    }
+
+    private static VehiclePosition vehiclePosition(VehicleLocation vehicle, long timestamp) {
+        VehiclePosition.Builder position = VehiclePosition.newBuilder()
+            .setPosition(Position.newBuilder()
+                .setLatitude((float) vehicle.lat())
+                .setLongitude((float) vehicle.lon()))
+            .setTimestamp(timestamp);
+
+        TripDescriptor.Builder trip = TripDescriptor.newBuilder();
+        if (vehicle.tripId() != null) {
+            trip.setTripId(vehicle.tripId());
+        }
+        if (vehicle.routeId() != null) {
+            trip.setRouteId(vehicle.routeId());
+        }
+        position.setTrip(trip);
+
+        if (vehicle.vehicleId() != null) {
+            position.setVehicle(VehicleDescriptor.newBuilder()
+                .setId(vehicle.vehicleId())
+                .setLabel(vehicle.destination() != null
+                    ? vehicle.routeId() + " " + vehicle.destination()
+                    : vehicle.vehicleId()));
+        }
+        return position.build();
+    }
+
+    private static Map<String, VehicleLocation> byEntityId(VehicleSnapshot snapshot) {
+        Map<String, VehicleLocation> vehicles = new HashMap<>(snapshot.vehicles().size() * 2);
+        for (VehicleLocation vehicle : snapshot.vehicles()) {
+            String id = entityId(vehicle);
+            if (id != null) {
+                vehicles.putIfAbsent(id, vehicle);
+            }
+        }
+        return vehicles;
+    }
+
+    private static String entityId(VehicleLocation vehicle) {
+        return vehicle.tripId() != null ? vehicle.tripId() : vehicle.vehicleId();
+    }
+}
@@ -0,0 +1,213 @@
+package com.omar.bvgsim.service;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Every line seen on the radar, interned once on first sight with its mode, display name, sort key, map color and
+ * a small id that is stable for the life of the process. Snapshot building, sorting and vehicle ids read these
+ * precomputed values instead of re-deriving them from the line name per movement.
+ *
+ * <p>Lines sort U-Bahn, S-Bahn, numbered buses and trams, Metro, Express, Night, then the rest; within a category by
+ * the number in the name, then by name ignoring case. Colors match {@code LINE_COLORS} in {@code app.js}.
+ */
+public final class LineCatalog {
+    private static final List<String> MODES = List.of(
+        "bus",
+        "subway",
+        "suburban",
+        "tram",
+        "ferry",
+        "regional",
+        "express"
+    );
+    private static final String[] COLORS = {
+        "#2563eb",
+        "#dc2626",
+        "#16a34a",
+        "#9333ea",
+        "#ea580c",
+        "#0891b2",
+        "#be123c",
+        "#4f46e5",
+        "#65a30d",
+        "#ca8a04"
+    };
+
+    public static final Comparator<Line> ORDER = Comparator
+        .comparingLong(Line::sortKey)
+        .thenComparing(Line::name, String.CASE_INSENSITIVE_ORDER);
+
+    /**
+     * Line order for bare names, e.g. route ids that never appeared on the radar.
+     */
+    public static final Comparator<String> NAME_ORDER = (left, right) -> {
+        int keyComparison = Long.compare(sortKey(left), sortKey(right));
+        return keyComparison != 0 ? keyComparison : String.CASE_INSENSITIVE_ORDER.compare(left, right);
+    };
+
+    private static final Map<String, Line[]> LINES = new ConcurrentHashMap<>();
+    private static final AtomicInteger IDS = new AtomicInteger();
+
+    private LineCatalog() {
+    }
+
+    /**
+     * @param id           dense id in interning order, usable as an array index
+     * @param displayName  mode and name, e.g. {@code "Bus M41"}
+     * @param sortKey      category in the high and line number in the low 32 bits
+     */
+    public record Line(int id, String name, String mode, String displayName, long sortKey, String color) {
+    }
+
+    /**
+     * Returns the interned line for a radar movement, or {@code null} when the line has no name or its mode is not
+     * one the tracker shows. The radar's product wins over its mode; without either, the mode is guessed from the
+     * name prefix.
+     */
+    public static Line line(String name, String product, String mode) {
+        if (name == null) {
+            return null;
+        }
+        int modeIndex = modeIndex(name, product, mode);
+        if (modeIndex < 0) {
+            return null;
+        }
+
+        Line[] byMode = LINES.get(name);
+        Line line = byMode != null ? byMode[modeIndex] : null;
+        return line != null ? line : intern(name, modeIndex);
+    }
+
+    /**
+     * Number of lines interned so far; every id is below it.
+     */
+    public static int size() {
+        return IDS.get();
+    }
+
+    /**
+     * Returns the display name of a mode, or {@code fallback} for an unknown one.
+     */
+    public static String modeName(String mode, String fallback) {
+        return switch (mode == null ? "" : mode) {
+            case "subway" -> "U-Bahn";
+            case "suburban" -> "S-Bahn";
+            case "tram" -> "Tram";
+            case "ferry" -> "Ferry";
+            case "regional" -> "Regional";
+            case "express" -> "Express";
+            case "bus" -> "Bus";
+            default -> fallback;
+        };
+    }
+
+    public static String color(String name) {
+        int hash = name != null ? name.hashCode() : 0;
+        return COLORS[(int) (Math.abs((long) hash) % COLORS.length)];
+    }
+
+    public static long sortKey(String name) {
+        return (long) category(name) << 32 | number(name);
+    }
+
+    private static Line intern(String name, int modeIndex) {
+        Line[] byMode = LINES.computeIfAbsent(name, key -> new Line[MODES.size()]);
+        synchronized (byMode) {
+            if (byMode[modeIndex] == null) {
+                String mode = MODES.get(modeIndex);
+                byMode[modeIndex] = new Line(
+                    IDS.getAndIncrement(),
+                    name,
+                    mode,
+                    modeName(mode, "Line") + " " + name,
+                    sortKey(name),
+                    color(name)
+                );
+            }
+            return byMode[modeIndex];
+        }
+    }
+
+    private static int modeIndex(String name, String product, String mode) {
+        int index = product != null ? MODES.indexOf(product) : -1;
+        if (index < 0 && mode != null) {
+            index = MODES.indexOf(mode);
+        }
+        if (index >= 0) {
+            return index;
+        }
+
+        if (startsWithIgnoreCase(name, "U")) {
+            return MODES.indexOf("subway");
+        }
+        if (startsWithIgnoreCase(name, "S")) {
+            return MODES.indexOf("suburban");
+        }
+        if (startsWithIgnoreCase(name, "RB") || startsWithIgnoreCase(name, "RE")) {
+            return MODES.indexOf("regional");
+        }
+        if (startsWithIgnoreCase(name, "F")) {
+            return MODES.indexOf("ferry");
+        }
+        return -1;
+    }
+
+    private static boolean startsWithIgnoreCase(String name, String prefix) {
+        return name.regionMatches(true, 0, prefix, 0, prefix.length());
+    }
+
+    private static int category(String line) {
+        if (line == null || line.isBlank()) {
+            return 5;
+        }
+
+        char first = Character.toUpperCase(line.charAt(0));
+        if (first == 'U') {
+            return 0;
+        }
+        if (first == 'S') {
+            return 1;
+        }
+        if (Character.isDigit(first)) {
+            return 2;
+        }
+        if (first == 'M') {
+            return 3;
+        }
+        if (first == 'X') {
+            return 4;
+        }
+        if (first == 'N') {
+            return 5;
+        }
+        return 6;
+    }
+
+    /**
+     * The ASCII digits of the name read as one number, or {@link Integer#MAX_VALUE} when there are none or they
+     * overflow.
+     */
+    private static int number(String line) {
+        if (line == null) {
+            return Integer.MAX_VALUE;
+        }
+
+        long number = 0L;
+        boolean digits = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits = true;
+                number = number * 10 + (c - '0');
+                if (number > Integer.MAX_VALUE) {
+                    return Integer.MAX_VALUE;
+                }
+            }
+        }
+        return digits ? (int) number : Integer.MAX_VALUE;
+    }
+}
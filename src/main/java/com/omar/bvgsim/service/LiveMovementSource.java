@@ -0,0 +1,35 @@
+package com.omar.bvgsim.service;
+
+import java.util.List;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import com.omar.bvgsim.model.RadarMovement;
+import com.omar.bvgsim.model.SourceStatus;
+
+/**
+ * Polls the BVG radar through {@link RadarTilePoller}. The default source.
+ */
+@Service
+@ConditionalOnProperty(name = "bvg.source.mode", havingValue = "live", matchIfMissing = true)
+public class LiveMovementSource implements MovementSource {
+    private final RadarTilePoller tiles;
+    private volatile long polls;
+
+    public LiveMovementSource(RadarTilePoller tiles) {
+        this.tiles = tiles;
+    }
+
+    @Override
+    public List<RadarMovement> poll() {
+        List<RadarMovement> movements = tiles.poll();
+        polls++;
+        return movements;
+    }
+
+    @Override
+    public SourceStatus status() {
+        return new SourceStatus("live", null, polls, null, 1.0);
+    }
+}
@@ -0,0 +1,29 @@
+package com.omar.bvgsim.service;
+
+import java.util.List;
+
+import com.omar.bvgsim.model.RadarMovement;
+import com.omar.bvgsim.model.SourceStatus;
+
+/**
+ * Where {@link RadarRefresher} gets its radar movements from. Exactly one implementation is active, selected with
+ * {@code bvg.source.mode}: {@code live} polls the BVG radar, {@code record} polls it and also writes every result
+ * to a capture file, and {@code replay} plays a capture back without any network access.
+ */
+public interface MovementSource {
+    /**
+     * Returns the movements for the next snapshot.
+     *
+     * @throws org.springframework.web.client.RestClientException when no movements are available right now
+     */
+    List<RadarMovement> poll();
+
+    /**
+     * Milliseconds until the source has new movements, or {@code -1} to let the refresher pick its own interval.
+     */
+    default long nextPollInMs() {
+        return -1L;
+    }
+
+    SourceStatus status();
+}
@@ -0,0 +1,15 @@
+package com.omar.bvgsim.service;
+
+/**
+ * An encoded SSE event ready to be queued for any number of subscribers.
+ *
+ * @param event       SSE event name, or {@code null} for the default {@code message} event
+ * @param id          SSE event id, or {@code null}
+ * @param data        JSON payload, shared by every subscriber
+ * @param coalesceKey frames with the same key replace each other while still queued; {@code null} never coalesces
+ */
+public record OutboundFrame(String event, String id, byte[] data, String coalesceKey) {
+    public static OutboundFrame of(byte[] data, String coalesceKey) {
+        return new OutboundFrame(null, null, data, coalesceKey);
+    }
+}
@@ -0,0 +1,148 @@
+package com.omar.bvgsim.service;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.omar.bvgsim.model.RadarMovement;
+
+/**
+ * Capture file format for recorded radar results: a gzip stream holding a magic number and version followed by
+ * frames of {@code [epoch millis][body length][body]}. Each body is a v6 radar response reduced to the fields
+ * {@link RadarMovementParser} reads, so replayed frames go through the same parser as live responses. The writer
+ * sync-flushes after every frame, which keeps a capture readable up to its last frame if the process dies.
+ */
+final class RadarCapture {
+    private static final int MAGIC = 0x42564743;
+    private static final int FORMAT_VERSION = 1;
+    private static final int MAX_FRAME_BYTES = 256 * 1024 * 1024;
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private RadarCapture() {
+    }
+
+    record Frame(long epochMillis, byte[] body) {
+        List<RadarMovement> movements() throws IOException {
+            List<RadarMovement> movements = RadarMovementParser.parse(new ByteArrayInputStream(body));
+            return movements != null ? movements : List.of();
+        }
+    }
+
+    static byte[] encode(long epochMillis, List<RadarMovement> movements) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(Math.max(64, movements.size() * 160));
+        try (JsonGenerator json = JSON_FACTORY.createGenerator(bytes)) {
+            json.writeStartObject();
+            json.writeArrayFieldStart("movements");
+            for (RadarMovement movement : movements) {
+                json.writeStartObject();
+                writeString(json, "tripId", movement.tripId());
+                writeString(json, "direction", movement.direction());
+                json.writeObjectFieldStart("line");
+                writeString(json, "name", movement.lineName());
+                writeString(json, "mode", movement.lineMode());
+                writeString(json, "product", movement.lineProduct());
+                json.writeEndObject();
+                if (movement.hasLocation()) {
+                    json.writeObjectFieldStart("location");
+                    json.writeNumberField("latitude", movement.latitude());
+                    json.writeNumberField("longitude", movement.longitude());
+                    json.writeEndObject();
+                }
+                json.writeEndObject();
+            }
+            json.writeEndArray();
+            json.writeNumberField("realtimeDataUpdatedAt", epochMillis / 1000L);
+            json.writeEndObject();
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeString(JsonGenerator json, String field, String value) throws IOException {
+        if (value != null) {
+            json.writeStringField(field, value);
+        }
+    }
+
+    static final class Writer implements Closeable {
+        private final DataOutputStream out;
+
+        Writer(Path file) throws IOException {
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            this.out = new DataOutputStream(new GZIPOutputStream(
+                Files.newOutputStream(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE),
+                64 * 1024,
+                true
+            ));
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.flush();
+        }
+
+        void write(long epochMillis, List<RadarMovement> movements) throws IOException {
+            byte[] body = encode(epochMillis, movements);
+            out.writeLong(epochMillis);
+            out.writeInt(body.length);
+            out.write(body);
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    static final class Reader implements Closeable {
+        private final DataInputStream in;
+
+        Reader(Path file) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(file), 64 * 1024)
+            ));
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                in.close();
+                throw new IOException(file + " is not a radar capture");
+            }
+        }
+
+        /**
+         * Returns the next frame, or {@code null} at the end of the capture. A frame cut off by an unclean
+         * shutdown counts as the end.
+         */
+        Frame next() throws IOException {
+            try {
+                long epochMillis = in.readLong();
+                int length = in.readInt();
+                if (length < 0 || length > MAX_FRAME_BYTES) {
+                    throw new IOException("Corrupt radar capture frame of " + length + " bytes");
+                }
+                byte[] body = new byte[length];
+                in.readFully(body);
+                return new Frame(epochMillis, body);
+            } catch (EOFException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.omar.bvgsim.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.omar.bvgsim.model.RadarMovement;
+
+/**
+ * Streaming decoder for {@code /radar} responses. Reads the body token by token straight into
+ * {@link RadarMovement} records, skipping every field the app never uses, so neither the raw
+ * response nor an intermediate {@code Map} tree is ever materialised.
+ */
+public final class RadarMovementParser {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final int EXPECTED_MOVEMENTS = 1024;
+
+    private RadarMovementParser() {
+    }
+
+    /**
+     * Parses a radar response. Accepts both the v6 object form ({@code {"movements": [...]}}) and a bare
+     * movement array. Returns {@code null} when the body carries no movement list at all.
+     */
+    public static List<RadarMovement> parse(InputStream body) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            JsonToken root = parser.nextToken();
+            Map<String, String> strings = new HashMap<>();
+
+            if (root == JsonToken.START_ARRAY) {
+                return readMovements(parser, strings);
+            }
+            if (root != JsonToken.START_OBJECT) {
+                return null;
+            }
+
+            List<RadarMovement> movements = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("movements".equals(field) && value == JsonToken.START_ARRAY) {
+                    movements = readMovements(parser, strings);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return movements;
+        }
+    }
+
+    private static List<RadarMovement> readMovements(JsonParser parser, Map<String, String> strings) throws IOException {
+        List<RadarMovement> movements = new ArrayList<>(EXPECTED_MOVEMENTS);
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token == JsonToken.START_OBJECT) {
+                movements.add(readMovement(parser, strings));
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return movements;
+    }
+
+    private static RadarMovement readMovement(JsonParser parser, Map<String, String> strings) throws IOException {
+        String tripId = null;
+        String direction = null;
+        String lineName = null;
+        String lineMode = null;
+        String lineProduct = null;
+        double latitude = Double.NaN;
+        double longitude = Double.NaN;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "tripId" -> tripId = readString(parser, value, null);
+                case "direction" -> direction = readString(parser, value, strings);
+                case "line" -> {
+                    if (value != JsonToken.START_OBJECT) {
+                        parser.skipChildren();
+                        break;
+                    }
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String lineField = parser.getCurrentName();
+                        JsonToken lineValue = parser.nextToken();
+                        switch (lineField) {
+                            case "name" -> lineName = readString(parser, lineValue, strings);
+                            case "mode" -> lineMode = readString(parser, lineValue, strings);
+                            case "product" -> lineProduct = readString(parser, lineValue, strings);
+                            default -> parser.skipChildren();
+                        }
+                    }
+                }
+                case "location" -> {
+                    if (value != JsonToken.START_OBJECT) {
+                        parser.skipChildren();
+                        break;
+                    }
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String locationField = parser.getCurrentName();
+                        JsonToken locationValue = parser.nextToken();
+                        switch (locationField) {
+                            case "latitude" -> latitude = readDouble(parser, locationValue);
+                            case "longitude" -> longitude = readDouble(parser, locationValue);
+                            default -> parser.skipChildren();
+                        }
+                    }
+                }
+                default -> parser.skipChildren();
+            }
+        }
+
+        return new RadarMovement(tripId, direction, lineName, lineMode, lineProduct, latitude, longitude);
+    }
+
+    private static String readString(JsonParser parser, JsonToken token, Map<String, String> strings) throws IOException {
+        if (token != JsonToken.VALUE_STRING) {
+            parser.skipChildren();
+            return null;
+        }
+
+        String text = parser.getText();
+        // Line names, modes and directions repeat hundreds of times per response; keep one copy of each.
+        return strings == null ? text : strings.computeIfAbsent(text, key -> key);
+    }
+
+    private static double readDouble(JsonParser parser, JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_NUMBER_FLOAT || token == JsonToken.VALUE_NUMBER_INT) {
+            return parser.getDoubleValue();
+        }
+
+        parser.skipChildren();
+        return Double.NaN;
+    }
+}
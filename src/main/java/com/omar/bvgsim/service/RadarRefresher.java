@@ -0,0 +1,239 @@
+package com.omar.bvgsim.service;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import com.omar.bvgsim.model.FeedStatus;
+import com.omar.bvgsim.model.RadarMovement;
+import com.omar.bvgsim.model.VehicleSnapshot;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Polls the active {@link MovementSource} on its own thread and publishes each result as a new snapshot, so no request
+ * or broadcast ever waits on the upstream call. Polls run at the active interval while stream subscribers exist or
+ * HTTP clients read recently, fall back to the idle interval otherwise, and back off after failures. A source that
+ * knows when its next result is due, such as a replay, sets the pace itself. The last good snapshot is
+ * served until it is older than the stale limit, after which an empty snapshot is published.
+ */
+@Service
+public class RadarRefresher {
+    private static final long SCHEDULER_TICK_MS = 250;
+    private static final long ERROR_LOG_INTERVAL_MS = 60000;
+
+    private final MovementSource source;
+    private final VehicleSnapshotService snapshots;
+    private final SseFanout fanout;
+    private final BinaryStreamHub binaryStreams;
+    private final TrajectoryStore history;
+    private final long activeIntervalMs;
+    private final long idleIntervalMs;
+    private final long idleAfterMs;
+    private final long errorBackoffMs;
+    private final long staleAfterMs;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "radar-refresher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile long lastAttemptAt = 0L;
+    private volatile long lastSuccessAt = 0L;
+    private volatile long lastErrorLogAt = 0L;
+    private volatile int consecutiveFailures = 0;
+
+    private final Timer pollTimer;
+    private final Counter pollSuccesses;
+    private final Counter pollFailures;
+    private final Counter staleExpirations;
+    private final DistributionSummary movementsPerPoll;
+
+    public RadarRefresher(
+        MovementSource source,
+        RadarTilePoller tiles,
+        VehicleSnapshotService snapshots,
+        SseFanout fanout,
+        BinaryStreamHub binaryStreams,
+        TrajectoryStore history,
+        @Value("${bvg.radar.active-interval-ms:5000}") long activeIntervalMs,
+        @Value("${bvg.radar.idle-interval-ms:30000}") long idleIntervalMs,
+        @Value("${bvg.radar.idle-after-ms:60000}") long idleAfterMs,
+        @Value("${bvg.radar.error-backoff-ms:30000}") long errorBackoffMs,
+        @Value("${bvg.radar.stale-after-ms:120000}") long staleAfterMs,
+        MeterRegistry meters
+    ) {
+        this.source = source;
+        this.snapshots = snapshots;
+        this.fanout = fanout;
+        this.binaryStreams = binaryStreams;
+        this.history = history;
+        this.activeIntervalMs = activeIntervalMs;
+        this.idleIntervalMs = idleIntervalMs;
+        this.idleAfterMs = idleAfterMs;
+        this.errorBackoffMs = errorBackoffMs;
+        this.staleAfterMs = staleAfterMs;
+
+        this.pollTimer = Timer.builder("bvg.radar.poll")
+            .description("Duration of one radar refresh across all tiles")
+            .publishPercentileHistogram()
+            .register(meters);
+        this.pollSuccesses = Counter.builder("bvg.radar.polls").tag("outcome", "success").register(meters);
+        this.pollFailures = Counter.builder("bvg.radar.polls").tag("outcome", "failure").register(meters);
+        this.staleExpirations = Counter.builder("bvg.radar.stale.expirations")
+            .description("Times the last good snapshot was dropped after the stale limit")
+            .register(meters);
+        this.movementsPerPoll = DistributionSummary.builder("bvg.radar.movements")
+            .description("Merged radar movements per successful poll")
+            .register(meters);
+        Gauge.builder("bvg.radar.consecutive.failures", this, refresher -> refresher.consecutiveFailures)
+            .description("Failed polls since the last success; non-zero means the refresher is backing off")
+            .register(meters);
+        Gauge.builder("bvg.radar.truncated", tiles, poller -> poller.lastPollTruncated() ? 1.0 : 0.0)
+            .description("1 when a tile still hit the radar result limit at the maximum split depth")
+            .register(meters);
+        Gauge.builder("bvg.radar.tile.requests", tiles, RadarTilePoller::lastPollRequests)
+            .description("Radar requests made by the last poll")
+            .register(meters);
+        Gauge.builder("bvg.snapshot.age", snapshots, service -> Math.max(0L, service.ageMillis()) / 1000.0)
+            .description("Age of the current vehicle snapshot")
+            .baseUnit("seconds")
+            .register(meters);
+        Gauge.builder("bvg.snapshot.vehicles", snapshots, service -> service.latest().vehicles().size())
+            .register(meters);
+    }
+
+    /**
+     * Starts polling once the application is ready, so an upstream served by this same instance (the
+     * {@code fake-upstream} profile) is already accepting connections.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        scheduler.execute(this::run);
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Milliseconds until the next poll is due, the earliest a new snapshot can appear.
+     */
+    public long nextPollInMs() {
+        return untilDue(System.currentTimeMillis());
+    }
+
+    public FeedStatus status() {
+        VehicleSnapshot snapshot = snapshots.latest();
+        long interval = currentInterval(System.currentTimeMillis());
+        return new FeedStatus(
+            snapshot.version(),
+            snapshot.createdAt(),
+            snapshots.ageMillis(),
+            snapshot.vehicles().size(),
+            interval,
+            untilDue(System.currentTimeMillis()),
+            consecutiveFailures
+        );
+    }
+
+    /**
+     * Runs one tick and schedules the next one when the poll is due, but at least every scheduler tick so a change
+     * in activity is picked up quickly.
+     */
+    private void run() {
+        try {
+            tick();
+        } finally {
+            long delay = Math.min(SCHEDULER_TICK_MS, untilDue(System.currentTimeMillis()));
+            try {
+                scheduler.schedule(this::run, delay, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // Shutting down.
+            }
+        }
+    }
+
+    private void tick() {
+        long now = System.currentTimeMillis();
+        if (untilDue(now) > 0L) {
+            return;
+        }
+
+        lastAttemptAt = now;
+        long startedAt = System.nanoTime();
+        try {
+            List<RadarMovement> movements = source.poll();
+            VehicleSnapshot snapshot = snapshots.publish(movements);
+            lastSuccessAt = System.currentTimeMillis();
+            consecutiveFailures = 0;
+            pollSuccesses.increment();
+            movementsPerPoll.record(movements.size());
+            history.append(snapshot);
+        } catch (Exception e) {
+            consecutiveFailures++;
+            pollFailures.increment();
+            logError(e, now);
+            expireStaleSnapshot(now);
+        } finally {
+            pollTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private long untilDue(long now) {
+        if (lastAttemptAt == 0L) {
+            return 0L;
+        }
+        if (consecutiveFailures == 0) {
+            long hinted = source.nextPollInMs();
+            if (hinted >= 0L) {
+                return hinted;
+            }
+        }
+        return Math.max(0L, lastAttemptAt + currentInterval(now) - now);
+    }
+
+    private long currentInterval(long now) {
+        if (consecutiveFailures > 0) {
+            return errorBackoffMs;
+        }
+
+        boolean active = fanout.hasSubscribers()
+            || binaryStreams.hasSubscribers()
+            || now - snapshots.lastReadAt() < idleAfterMs;
+        return active ? activeIntervalMs : idleIntervalMs;
+    }
+
+    private void expireStaleSnapshot(long now) {
+        if (!snapshots.latest().isEmpty() && now - lastSuccessAt > staleAfterMs) {
+            snapshots.publish(List.of());
+            staleExpirations.increment();
+        }
+    }
+
+    private void logError(Exception e, long now) {
+        if (now - lastErrorLogAt < ERROR_LOG_INTERVAL_MS) {
+            return;
+        }
+
+        lastErrorLogAt = now;
+        System.err.println("BVG radar temporarily unavailable; retrying in "
+            + (errorBackoffMs / 1000)
+            + "s. "
+            + e.getMessage());
+    }
+}
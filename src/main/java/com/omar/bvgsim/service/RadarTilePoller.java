@@ -0,0 +1,277 @@
+package com.omar.bvgsim.service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClientException;
+
+import com.omar.bvgsim.model.RadarMovement;
+import com.omar.bvgsim.model.Viewport;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Covers the Berlin radar area with a grid of tiles polled concurrently, so the per-request result cap no longer
+ * silently drops vehicles. A tile that returns a full page is split into four and its children are polled in the
+ * same cycle, each starting from its share of the parent's page so a child that fails still serves something;
+ * split tiles are merged back once their children comfortably fit in one request again. Small tiles
+ * whose trip set stops changing are polled less often and serve their previous result in between. Results are
+ * deduplicated by trip id, since vehicles on tile borders can be reported twice.
+ */
+@Service
+public class RadarTilePoller {
+    private final BvgRadarClient radarClient;
+    private final int resultsPerTile;
+    private final int maxSplitDepth;
+    private final int quietTileMovements;
+    private final int maxSkippedPolls;
+    private final ExecutorService pollers;
+    private final List<Tile> roots;
+
+    private volatile boolean lastPollTruncated;
+    private volatile int lastPollRequests;
+
+    public RadarTilePoller(
+        BvgRadarClient radarClient,
+        @Value("${bvg.radar.tiles.rows:1}") int rows,
+        @Value("${bvg.radar.tiles.cols:1}") int cols,
+        @Value("${bvg.radar.tiles.max-concurrency:4}") int maxConcurrency,
+        @Value("${bvg.radar.tiles.results-per-tile:" + BvgRadarClient.RADAR_RESULT_LIMIT + "}") int resultsPerTile,
+        @Value("${bvg.radar.tiles.max-split-depth:3}") int maxSplitDepth,
+        @Value("${bvg.radar.tiles.quiet-movements:10}") int quietTileMovements,
+        @Value("${bvg.radar.tiles.max-skipped-polls:3}") int maxSkippedPolls
+    ) {
+        this.radarClient = radarClient;
+        this.resultsPerTile = resultsPerTile;
+        this.maxSplitDepth = maxSplitDepth;
+        this.quietTileMovements = quietTileMovements;
+        this.maxSkippedPolls = maxSkippedPolls;
+
+        AtomicInteger threadIds = new AtomicInteger(1);
+        this.pollers = Executors.newFixedThreadPool(Math.max(1, maxConcurrency), runnable -> {
+            Thread thread = new Thread(runnable, "radar-tile-" + threadIds.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.roots = grid(BvgRadarClient.BERLIN_AREA, Math.max(1, rows), Math.max(1, cols), 0);
+    }
+
+    /**
+     * Polls every due tile and returns the merged movements of the whole area. A failed tile serves its previous
+     * result; the other tiles of the cycle are still collected.
+     *
+     * @throws RestClientException when no tile could be polled, or a failed tile has no previous result to serve
+     */
+    public synchronized List<RadarMovement> poll() {
+        List<Tile> pending = new ArrayList<>();
+        for (Tile root : roots) {
+            root.collectLeaves(pending);
+        }
+
+        int requests = 0;
+        int failures = 0;
+        boolean truncated = false;
+        boolean uncovered = false;
+        RestClientException failure = null;
+        while (!pending.isEmpty()) {
+            Map<Tile, Future<List<RadarMovement>>> calls = new IdentityHashMap<>();
+            for (Tile tile : pending) {
+                if (tile.skipRemaining > 0) {
+                    tile.skipRemaining--;
+                } else {
+                    calls.put(tile, pollers.submit(() -> radarClient.fetchRadarArea(tile.area, resultsPerTile)));
+                }
+            }
+            requests += calls.size();
+
+            List<Tile> next = new ArrayList<>();
+            for (Map.Entry<Tile, Future<List<RadarMovement>>> call : calls.entrySet()) {
+                Tile tile = call.getKey();
+                List<RadarMovement> movements;
+                try {
+                    movements = call.getValue().get();
+                } catch (ExecutionException e) {
+                    failures++;
+                    failure = e.getCause() instanceof RestClientException cause
+                        ? cause
+                        : new RestClientException("Radar tile poll failed", e.getCause());
+                    uncovered |= tile.last == null;
+                    continue;
+                } catch (InterruptedException e) {
+                    calls.values().forEach(future -> future.cancel(true));
+                    Thread.currentThread().interrupt();
+                    throw new RestClientException("Interrupted while polling radar tiles", e);
+                }
+
+                if (movements.size() >= resultsPerTile && tile.depth < maxSplitDepth) {
+                    tile.split(movements);
+                    next.addAll(tile.children);
+                } else {
+                    truncated |= movements.size() >= resultsPerTile;
+                    tile.record(movements);
+                }
+            }
+            pending = next;
+        }
+
+        lastPollRequests = requests;
+        lastPollTruncated = truncated;
+        if (failure != null && (uncovered || failures == requests)) {
+            throw failure;
+        }
+
+        roots.forEach(Tile::mergeQuietChildren);
+        return merge();
+    }
+
+    /**
+     * Whether any tile still returned a full page at the maximum split depth during the last poll.
+     */
+    public boolean lastPollTruncated() {
+        return lastPollTruncated;
+    }
+
+    public int lastPollRequests() {
+        return lastPollRequests;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pollers.shutdownNow();
+    }
+
+    private List<RadarMovement> merge() {
+        List<Tile> leaves = new ArrayList<>();
+        roots.forEach(root -> root.collectLeaves(leaves));
+
+        Map<String, RadarMovement> byTripId = new LinkedHashMap<>();
+        List<RadarMovement> withoutTripId = new ArrayList<>();
+        for (Tile leaf : leaves) {
+            if (leaf.last == null) {
+                continue;
+            }
+            for (RadarMovement movement : leaf.last) {
+                if (movement.tripId() == null) {
+                    withoutTripId.add(movement);
+                } else {
+                    byTripId.putIfAbsent(movement.tripId(), movement);
+                }
+            }
+        }
+
+        List<RadarMovement> merged = new ArrayList<>(byTripId.size() + withoutTripId.size());
+        merged.addAll(byTripId.values());
+        merged.addAll(withoutTripId);
+        return merged;
+    }
+
+    private List<Tile> grid(Viewport area, int rows, int cols, int depth) {
+        double latStep = (area.north() - area.south()) / rows;
+        double lonStep = (area.east() - area.west()) / cols;
+        List<Tile> tiles = new ArrayList<>(rows * cols);
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                double south = area.south() + row * latStep;
+                double west = area.west() + col * lonStep;
+                tiles.add(new Tile(new Viewport(south + latStep, west, south, west + lonStep), depth));
+            }
+        }
+        return tiles;
+    }
+
+    private final class Tile {
+        private final Viewport area;
+        private final int depth;
+        private List<Tile> children;
+        private List<RadarMovement> last;
+        private Set<String> lastTripIds = Set.of();
+        private int quietPolls;
+        private int skipRemaining;
+
+        private Tile(Viewport area, int depth) {
+            this.area = area;
+            this.depth = depth;
+        }
+
+        private void collectLeaves(List<Tile> leaves) {
+            if (children == null) {
+                leaves.add(this);
+            } else {
+                children.forEach(child -> child.collectLeaves(leaves));
+            }
+        }
+
+        /**
+         * Replaces this tile by four children, each seeded with the movements of {@code page} inside it. The page
+         * was truncated, so the seed is incomplete, but it is what a child serves if its own first poll fails.
+         */
+        private void split(List<RadarMovement> page) {
+            children = grid(area, 2, 2, depth + 1);
+            children.forEach(child -> child.last = new ArrayList<>());
+            for (RadarMovement movement : page) {
+                Tile owner = children.get(0);
+                for (Tile child : children) {
+                    if (child.contains(movement)) {
+                        owner = child;
+                        break;
+                    }
+                }
+                owner.last.add(movement);
+            }
+            last = null;
+        }
+
+        private boolean contains(RadarMovement movement) {
+            return movement.latitude() >= area.south() && movement.latitude() <= area.north()
+                && movement.longitude() >= area.west() && movement.longitude() <= area.east();
+        }
+
+        private void record(List<RadarMovement> movements) {
+            Set<String> tripIds = new HashSet<>();
+            movements.forEach(movement -> tripIds.add(movement.tripId()));
+
+            boolean quiet = movements.size() <= quietTileMovements && tripIds.equals(lastTripIds);
+            quietPolls = quiet ? Math.min(maxSkippedPolls, quietPolls + 1) : 0;
+            skipRemaining = quietPolls;
+            lastTripIds = tripIds;
+            last = movements;
+        }
+
+        private int movementCount() {
+            if (children == null) {
+                return last == null ? 0 : last.size();
+            }
+            return children.stream().mapToInt(Tile::movementCount).sum();
+        }
+
+        private void mergeQuietChildren() {
+            if (children == null) {
+                return;
+            }
+
+            children.forEach(Tile::mergeQuietChildren);
+            boolean leafChildren = children.stream().allMatch(child -> child.children == null && child.last != null);
+            if (leafChildren && movementCount() < resultsPerTile / 2) {
+                List<RadarMovement> combined = new ArrayList<>();
+                children.forEach(child -> combined.addAll(child.last));
+                children = null;
+                last = combined;
+                lastTripIds = Set.of();
+                quietPolls = 0;
+                skipRemaining = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.omar.bvgsim.service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import com.omar.bvgsim.model.RadarMovement;
+import com.omar.bvgsim.model.SourceStatus;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Polls the BVG radar like {@link LiveMovementSource} and appends every successful result, with its poll time, to
+ * a new {@link RadarCapture} file in {@code bvg.source.record.directory}. A failing write is logged and stops the
+ * recording but never the live feed.
+ */
+@Service
+@ConditionalOnProperty(name = "bvg.source.mode", havingValue = "record")
+public class RecordingMovementSource implements MovementSource {
+    private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private final RadarTilePoller tiles;
+    private final Path file;
+    private RadarCapture.Writer writer;
+    private volatile long frames;
+
+    public RecordingMovementSource(
+        RadarTilePoller tiles,
+        @Value("${bvg.source.record.directory:captures}") String directory
+    ) throws IOException {
+        this.tiles = tiles;
+        this.file = Path.of(directory).resolve("radar-" + LocalDateTime.now().format(FILE_TIME) + ".cap.gz");
+        this.writer = new RadarCapture.Writer(file);
+        System.out.println("Recording radar results to " + file.toAbsolutePath());
+    }
+
+    @Override
+    public List<RadarMovement> poll() {
+        List<RadarMovement> movements = tiles.poll();
+        record(System.currentTimeMillis(), movements);
+        return movements;
+    }
+
+    @Override
+    public SourceStatus status() {
+        return new SourceStatus("record", file.toString(), frames, null, 1.0);
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            System.err.println("Failed to close radar capture " + file + ": " + e.getMessage());
+        }
+        writer = null;
+    }
+
+    private synchronized void record(long epochMillis, List<RadarMovement> movements) {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.write(epochMillis, movements);
+            frames++;
+        } catch (IOException e) {
+            System.err.println("Radar recording stopped, writing " + file + " failed: " + e.getMessage());
+            close();
+        }
+    }
+}
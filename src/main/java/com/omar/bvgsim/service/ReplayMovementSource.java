@@ -0,0 +1,143 @@
+package com.omar.bvgsim.service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClientException;
+
+import com.omar.bvgsim.model.RadarMovement;
+import com.omar.bvgsim.model.SourceStatus;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Plays a {@link RadarCapture} back instead of polling the radar. At a speed of {@code N} a frame recorded
+ * {@code t} ms after the first one is served {@code t / N} ms after the first poll, and the refresher is told when
+ * the next frame is due; at {@code max} every poll serves the next frame and the refresher polls back to back.
+ * Frames are streamed from the file, so captures of any length replay in constant memory. With
+ * {@code bvg.source.replay.loop} the capture starts over after its last frame, otherwise the last frame is served
+ * from then on.
+ */
+@Service
+@ConditionalOnProperty(name = "bvg.source.mode", havingValue = "replay")
+public class ReplayMovementSource implements MovementSource {
+    private static final long DEFAULT_FRAME_GAP_MS = 5000L;
+
+    private final Path file;
+    private final double speed;
+    private final boolean loop;
+
+    private RadarCapture.Reader reader;
+    private RadarCapture.Frame current;
+    private RadarCapture.Frame next;
+    private List<RadarMovement> currentMovements;
+    private long firstCaptureMs;
+    private long startedAtMs;
+    private long lastGapMs = DEFAULT_FRAME_GAP_MS;
+    private volatile long frames;
+    private volatile Instant capturedAt;
+
+    public ReplayMovementSource(
+        @Value("${bvg.source.replay.file}") String file,
+        @Value("${bvg.source.replay.speed:1}") String speed,
+        @Value("${bvg.source.replay.loop:true}") boolean loop
+    ) throws IOException {
+        this.file = Path.of(file);
+        this.speed = "max".equalsIgnoreCase(speed.trim()) ? 0.0 : Double.parseDouble(speed.trim());
+        if (this.speed < 0.0 || Double.isNaN(this.speed)) {
+            throw new IllegalArgumentException("bvg.source.replay.speed must be positive or 'max'");
+        }
+        this.loop = loop;
+        this.reader = new RadarCapture.Reader(this.file);
+        this.next = reader.next();
+        if (next == null) {
+            throw new IllegalStateException(file + " contains no radar frames");
+        }
+        this.firstCaptureMs = next.epochMillis();
+        System.out.println("Replaying radar capture " + this.file.toAbsolutePath()
+            + " at " + (this.speed == 0.0 ? "max" : this.speed + "x") + " speed");
+    }
+
+    @Override
+    public synchronized List<RadarMovement> poll() {
+        long now = System.currentTimeMillis();
+        if (startedAtMs == 0L) {
+            startedAtMs = now;
+        }
+
+        try {
+            RadarCapture.Frame served = current;
+            if (speed == 0.0) {
+                if (next != null) {
+                    advance(now);
+                }
+            } else {
+                while (next != null && dueAt(next) <= now) {
+                    advance(now);
+                }
+            }
+
+            if (current != served || currentMovements == null) {
+                currentMovements = current.movements();
+            }
+            return currentMovements;
+        } catch (IOException e) {
+            throw new RestClientException("Replaying " + file + " failed", e);
+        }
+    }
+
+    @Override
+    public synchronized long nextPollInMs() {
+        if (next == null) {
+            return -1L;
+        }
+        if (speed == 0.0 || startedAtMs == 0L) {
+            return 0L;
+        }
+        return Math.max(0L, dueAt(next) - System.currentTimeMillis());
+    }
+
+    @Override
+    public SourceStatus status() {
+        return new SourceStatus("replay", file.toString(), frames, capturedAt, speed);
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        reader.close();
+    }
+
+    private long dueAt(RadarCapture.Frame frame) {
+        return startedAtMs + Math.round((frame.epochMillis() - firstCaptureMs) / speed);
+    }
+
+    private void advance(long now) throws IOException {
+        if (current != null && next.epochMillis() > current.epochMillis()) {
+            lastGapMs = next.epochMillis() - current.epochMillis();
+        }
+        current = next;
+        frames++;
+        capturedAt = Instant.ofEpochMilli(current.epochMillis());
+        next = reader.next();
+        if (next != null) {
+            return;
+        }
+
+        if (!loop) {
+            System.out.println("Radar capture " + file + " finished after " + frames + " frames");
+            return;
+        }
+
+        long lastDueAt = speed == 0.0 ? now : dueAt(current);
+        reader.close();
+        reader = new RadarCapture.Reader(file);
+        next = reader.next();
+        firstCaptureMs = next.epochMillis();
+        startedAtMs = speed == 0.0 ? now : lastDueAt + Math.round(lastGapMs / speed);
+    }
+}
@@ -2,28 +2,81 @@ package com.omar.bvgsim.service;
 
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ResourceLoader;
 import org.springframework.stereotype.Service;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.omar.bvgsim.model.Route;
+import com.omar.bvgsim.model.Waypoint;
 
 import jakarta.annotation.PostConstruct;
 
 @Service
 public class RouteLoader {
+    private final ResourceLoader resources;
+    private final String location;
+    private final ScheduleStore schedule;
     private List<Route> routes = new ArrayList<>();
+    private Map<String, Route> routesById = Map.of();
+
+    public RouteLoader(
+        ResourceLoader resources,
+        @Value("${bvg.routes.location:classpath:config/routes.json}") String location,
+        ScheduleStore schedule
+    ) {
+        this.resources = resources;
+        this.location = location;
+        this.schedule = schedule;
+    }
 
     @PostConstruct
     public void load() throws Exception {
         ObjectMapper mapper = new ObjectMapper();
-        InputStream is = getClass().getResourceAsStream("/config/routes.json");
-        routes = mapper.readValue(is, new TypeReference<>() {});
+        try (InputStream is = resources.getResource(location).getInputStream()) {
+            routes = mapper.readValue(is, new TypeReference<>() {});
+        }
+
+        fillWaypointsFromSchedule();
+
+        Map<String, Route> byId = new LinkedHashMap<>();
+        routes.forEach(route -> byId.putIfAbsent(route.getId(), route));
+        routesById = byId;
+    }
+
+    /**
+     * Routes configured without waypoints take the geometry of their line from the GTFS schedule, when one is loaded.
+     */
+    private void fillWaypointsFromSchedule() {
+        if (!schedule.available()) {
+            return;
+        }
+
+        int filled = 0;
+        for (Route route : routes) {
+            if (route.getWaypoints() == null || route.getWaypoints().isEmpty()) {
+                List<Waypoint> shape = schedule.lineShape(route.getId());
+                if (!shape.isEmpty()) {
+                    route.setWaypoints(shape);
+                    filled++;
+                }
+            }
+        }
+        if (filled > 0) {
+            System.out.println("Filled waypoints of " + filled + " routes from the GTFS schedule.");
+        }
     }
 
     public List<Route> getAll() {
         return routes;
     }
+
+    public Route find(String id) {
+        return routesById.get(id);
+    }
 }
@@ -0,0 +1,207 @@
+package com.omar.bvgsim.service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.omar.bvgsim.model.Route;
+import com.omar.bvgsim.model.VehicleLocation;
+import com.omar.bvgsim.model.Waypoint;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Time-stepped simulator for the routes in {@code routes.json}. Each route is compiled once into cumulative
+ * distance and timetable arrays; its vehicles shuttle back and forth along the waypoints at a cruise speed, dwell
+ * at every waypoint and are spaced by the route's headway. A vehicle's position is a pure function of the seed and
+ * the time elapsed since the routes were compiled, found by binary search in the timetable, so runs are
+ * reproducible and tens of thousands of vehicles can be positioned per second on one core. Each vehicle's pace
+ * scales only that elapsed time, so vehicles start at their headway spacing and drift apart gradually.
+ */
+@Service
+public class RouteSimulator {
+    private static final String SIMULATED_MODE = "bus";
+
+    private final RouteLoader loader;
+    private final long seed;
+    private final int defaultHeadwaySeconds;
+    private final int defaultDwellSeconds;
+    private final double defaultSpeedKmh;
+    private final int vehiclesPerRoute;
+    private final double speedJitter;
+    private Map<String, SimulatedRoute> routes = Map.of();
+
+    public RouteSimulator(
+        RouteLoader loader,
+        @Value("${bvg.simulation.seed:42}") long seed,
+        @Value("${bvg.simulation.headway-seconds:300}") int defaultHeadwaySeconds,
+        @Value("${bvg.simulation.dwell-seconds:20}") int defaultDwellSeconds,
+        @Value("${bvg.simulation.speed-kmh:25}") double defaultSpeedKmh,
+        @Value("${bvg.simulation.vehicles-per-route:0}") int vehiclesPerRoute,
+        @Value("${bvg.simulation.speed-jitter:0.1}") double speedJitter
+    ) {
+        this.loader = loader;
+        this.seed = seed;
+        this.defaultHeadwaySeconds = defaultHeadwaySeconds;
+        this.defaultDwellSeconds = defaultDwellSeconds;
+        this.defaultSpeedKmh = defaultSpeedKmh;
+        this.vehiclesPerRoute = vehiclesPerRoute;
+        this.speedJitter = speedJitter;
+    }
+
+    @PostConstruct
+    public void compile() {
+        long origin = System.currentTimeMillis();
+        Map<String, SimulatedRoute> compiled = new HashMap<>();
+        for (Route route : loader.getAll()) {
+            List<Waypoint> waypoints = route.getWaypoints();
+            if (route.getId() != null && waypoints != null && waypoints.size() >= 2) {
+                compiled.putIfAbsent(route.getId(), new SimulatedRoute(route, origin));
+            }
+        }
+        routes = compiled;
+    }
+
+    /**
+     * Returns every simulated vehicle of the route at {@code at}, or an empty list when the route has no usable
+     * geometry. Calls with the same configuration and the same time since {@link #compile()} always return the
+     * same positions.
+     */
+    public List<VehicleLocation> positions(String routeId, Instant at) {
+        SimulatedRoute route = routes.get(routeId);
+        return route == null ? List.of() : route.positions(at);
+    }
+
+    private final class SimulatedRoute {
+        private final String id;
+        private final String destinationOutbound;
+        private final String destinationInbound;
+        private final double[] lats;
+        private final double[] lons;
+        private final double[] distances;
+        private final long[] arrivals;
+        private final long[] departures;
+        private final long oneWayMs;
+        private final long origin;
+        private final long[] offsets;
+        private final double[] paces;
+
+        private SimulatedRoute(Route route, long origin) {
+            List<Waypoint> waypoints = route.getWaypoints();
+            int size = waypoints.size();
+            this.id = route.getId();
+            this.origin = origin;
+            String name = route.getName() != null ? route.getName() : id;
+            this.destinationOutbound = name + " (outbound)";
+            this.destinationInbound = name + " (inbound)";
+            this.lats = new double[size];
+            this.lons = new double[size];
+            this.distances = new double[size];
+            for (int i = 0; i < size; i++) {
+                lats[i] = waypoints.get(i).lat();
+                lons[i] = waypoints.get(i).lon();
+                if (i > 0) {
+                    distances[i] = distances[i - 1] + GeoDistance.meters(lats[i - 1], lons[i - 1], lats[i], lons[i]);
+                }
+            }
+
+            double metersPerMs = valueOr(route.getSpeedKmh(), defaultSpeedKmh) / 3.6 / 1000.0;
+            long dwellMs = Math.round(valueOr(route.getDwellSeconds(), defaultDwellSeconds) * 1000.0);
+            this.arrivals = new long[size];
+            this.departures = new long[size];
+            for (int i = 0; i < size; i++) {
+                arrivals[i] = i == 0
+                    ? 0L
+                    : departures[i - 1] + Math.round((distances[i] - distances[i - 1]) / metersPerMs);
+                departures[i] = arrivals[i] + dwellMs;
+            }
+            this.oneWayMs = Math.max(1L, departures[size - 1]);
+
+            double headwaySeconds = valueOr(route.getHeadwaySeconds(), defaultHeadwaySeconds);
+            long headwayMs = Math.max(1L, Math.round(headwaySeconds * 1000.0));
+            int count = vehiclesPerRoute > 0
+                ? vehiclesPerRoute
+                : (int) Math.max(1L, (2L * oneWayMs + headwayMs - 1L) / headwayMs);
+            SplittableRandom random = new SplittableRandom(seed ^ id.hashCode());
+            this.offsets = new long[count];
+            this.paces = new double[count];
+            for (int i = 0; i < count; i++) {
+                double jitter = (random.nextDouble() - 0.5) * 0.2 * headwayMs;
+                offsets[i] = Math.floorMod(i * headwayMs + Math.round(jitter), 2L * oneWayMs);
+                paces[i] = 1.0 + (random.nextDouble() * 2.0 - 1.0) * speedJitter;
+            }
+        }
+
+        private List<VehicleLocation> positions(Instant at) {
+            long elapsed = at.toEpochMilli() - origin;
+            long cycleMs = 2L * oneWayMs;
+            List<VehicleLocation> vehicles = new ArrayList<>(offsets.length);
+            for (int i = 0; i < offsets.length; i++) {
+                long phase = Math.floorMod(Math.round(elapsed * paces[i]) + offsets[i], cycleMs);
+                boolean inbound = phase >= oneWayMs;
+                double distance = distanceAt(inbound ? cycleMs - phase : phase);
+                double[] point = pointAt(distance);
+                vehicles.add(new VehicleLocation(
+                    id,
+                    id + "-sim-" + i,
+                    null,
+                    SIMULATED_MODE,
+                    point[0],
+                    point[1],
+                    at,
+                    inbound ? destinationInbound : destinationOutbound
+                ));
+            }
+            return vehicles;
+        }
+
+        /**
+         * Distance along the route at {@code phase} milliseconds into the outbound run. The inbound run is the
+         * outbound run played backwards, so it reuses the same timetable.
+         */
+        private double distanceAt(long phase) {
+            int index = Arrays.binarySearch(departures, phase);
+            int segment = index >= 0 ? index : -index - 2;
+            if (segment < 0) {
+                return 0.0;
+            }
+            if (segment >= departures.length - 1) {
+                return distances[distances.length - 1];
+            }
+
+            long travelMs = arrivals[segment + 1] - departures[segment];
+            if (phase >= arrivals[segment + 1] || travelMs <= 0L) {
+                return distances[segment + 1];
+            }
+            double fraction = (phase - departures[segment]) / (double) travelMs;
+            return distances[segment] + fraction * (distances[segment + 1] - distances[segment]);
+        }
+
+        private double[] pointAt(double distance) {
+            int index = Arrays.binarySearch(distances, distance);
+            if (index >= 0) {
+                return new double[] { lats[index], lons[index] };
+            }
+
+            int end = Math.min(-index - 1, distances.length - 1);
+            int start = Math.max(0, end - 1);
+            double span = distances[end] - distances[start];
+            double t = span == 0.0 ? 0.0 : (distance - distances[start]) / span;
+            return new double[] {
+                lats[start] + t * (lats[end] - lats[start]),
+                lons[start] + t * (lons[end] - lons[start])
+            };
+        }
+    }
+
+    private static double valueOr(Number value, double fallback) {
+        return value != null && value.doubleValue() > 0 ? value.doubleValue() : fallback;
+    }
+}
@@ -0,0 +1,600 @@
+package com.omar.bvgsim.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Converts a static GTFS zip into the column file read by {@link ScheduleStore}. The file is a header followed by
+ * one section per {@link Section}, each a flat array of big-endian ints except the UTF-8 string bytes:
+ *
+ * <pre>
+ * int    magic, int version
+ * long   source size, long source last-modified millis, long imported-at millis
+ * int    section count, then per section: long offset, long length in bytes
+ * </pre>
+ *
+ * Stops, routes, trips and shapes are sorted by id so a lookup is a binary search over the id column. Strings are
+ * stored once in a shared table and referenced by index ({@code -1} for none); coordinates are fixed-point at 1e-6
+ * degrees; stop times are seconds after midnight of the service day ({@code -1} for none). Trips point at their
+ * shape and at a contiguous range of stop times; routes point at a range of trip indexes ordered by first departure.
+ * Stops are bucketed into a uniform grid for nearest-stop searches.
+ */
+final class ScheduleImporter {
+    static final int MAGIC = 0x42564753;
+    static final int VERSION = 1;
+    static final double SCALE = 1e6;
+    private static final int MAX_GRID_CELLS = 1 << 20;
+    private static final double METERS_PER_DEGREE = 111_320.0;
+
+    /**
+     * Column sections in file order. {@code GRID} holds rows, columns, minimum latitude and longitude and the cell
+     * height and width, all fixed-point; {@code *_START} columns have one entry more than their parent table.
+     */
+    enum Section {
+        STRING_OFFSETS, STRING_BYTES,
+        STOP_ID, STOP_NAME, STOP_LAT, STOP_LON,
+        GRID, GRID_START, GRID_STOPS,
+        ROUTE_ID, ROUTE_SHORT_NAME, ROUTE_LONG_NAME, ROUTE_TYPE, ROUTE_TRIP_START, ROUTE_TRIPS, ROUTE_BY_NAME,
+        TRIP_ID, TRIP_ROUTE, TRIP_HEADSIGN, TRIP_DIRECTION, TRIP_SHAPE, TRIP_STOP_START,
+        STOP_TIME_STOP, STOP_TIME_ARRIVAL, STOP_TIME_DEPARTURE,
+        SHAPE_ID, SHAPE_POINT_START, SHAPE_LAT, SHAPE_LON
+    }
+
+    private final Strings strings = new Strings();
+    private final int[][] columns = new int[Section.values().length][];
+
+    private ScheduleImporter() {
+    }
+
+    /**
+     * Reads {@code feed} and atomically replaces {@code store} with its column file.
+     */
+    static void importFeed(Path feed, Path store, int gridMeters) throws IOException {
+        ScheduleImporter importer = new ScheduleImporter();
+        try (ZipFile zip = new ZipFile(feed.toFile(), StandardCharsets.UTF_8)) {
+            Map<String, Integer> stops = importer.readStops(zip, gridMeters);
+            Map<String, Integer> routes = importer.readRoutes(zip);
+            Map<String, Integer> shapes = importer.readShapes(zip);
+            Map<String, Integer> trips = importer.readTrips(zip, routes, shapes);
+            importer.readStopTimes(zip, trips, stops);
+            importer.indexRouteTrips();
+        }
+
+        Path parent = store.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temporary = Files.createTempFile(parent, store.getFileName().toString(), ".tmp");
+        try {
+            importer.write(temporary, Files.size(feed), Files.getLastModifiedTime(feed).toMillis());
+            Files.move(temporary, store, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private Map<String, Integer> readStops(ZipFile zip, int gridMeters) throws IOException {
+        List<String> ids = new ArrayList<>();
+        Ints names = new Ints();
+        Ints lats = new Ints();
+        Ints lons = new Ints();
+        try (GtfsCsvReader csv = open(zip, "stops.txt", true)) {
+            int id = csv.column("stop_id");
+            int name = csv.column("stop_name");
+            int lat = csv.column("stop_lat");
+            int lon = csv.column("stop_lon");
+            while (csv.next()) {
+                String stopLat = csv.get(lat);
+                String stopLon = csv.get(lon);
+                if (csv.get(id) == null || stopLat == null || stopLon == null) {
+                    continue;
+                }
+                ids.add(csv.get(id));
+                names.add(strings.ref(csv.get(name)));
+                lats.add(fixed(stopLat));
+                lons.add(fixed(stopLon));
+            }
+        }
+
+        int[] order = sortedById(ids);
+        Map<String, Integer> index = indexOf(ids, order);
+        put(Section.STOP_ID, refs(ids, order));
+        put(Section.STOP_NAME, permute(names.toArray(), order));
+        put(Section.STOP_LAT, permute(lats.toArray(), order));
+        put(Section.STOP_LON, permute(lons.toArray(), order));
+        buildGrid(gridMeters);
+        return index;
+    }
+
+    private void buildGrid(int gridMeters) {
+        int[] lats = columns[Section.STOP_LAT.ordinal()];
+        int[] lons = columns[Section.STOP_LON.ordinal()];
+        int minLat = Integer.MAX_VALUE;
+        int maxLat = Integer.MIN_VALUE;
+        int minLon = Integer.MAX_VALUE;
+        int maxLon = Integer.MIN_VALUE;
+        for (int i = 0; i < lats.length; i++) {
+            minLat = Math.min(minLat, lats[i]);
+            maxLat = Math.max(maxLat, lats[i]);
+            minLon = Math.min(minLon, lons[i]);
+            maxLon = Math.max(maxLon, lons[i]);
+        }
+        if (lats.length == 0) {
+            minLat = maxLat = minLon = maxLon = 0;
+        }
+
+        double middle = Math.toRadians((minLat + (double) maxLat) / 2.0 / SCALE);
+        int cellLat = Math.max(1, (int) Math.round(Math.max(1, gridMeters) / METERS_PER_DEGREE * SCALE));
+        int cellLon = Math.max(1, (int) Math.round(cellLat / Math.max(0.01, Math.cos(middle))));
+        long rows;
+        long cols;
+        while (true) {
+            rows = ((long) maxLat - minLat) / cellLat + 1;
+            cols = ((long) maxLon - minLon) / cellLon + 1;
+            if (rows * cols <= MAX_GRID_CELLS) {
+                break;
+            }
+            cellLat *= 2;
+            cellLon *= 2;
+        }
+
+        int cells = (int) (rows * cols);
+        int[] cellOf = new int[lats.length];
+        for (int i = 0; i < lats.length; i++) {
+            cellOf[i] = (int) ((lats[i] - (long) minLat) / cellLat * cols + (lons[i] - (long) minLon) / cellLon);
+        }
+        int[] start = new int[cells + 1];
+        int[] members = bucket(cellOf, cells, start);
+        put(Section.GRID, new int[] { (int) rows, (int) cols, minLat, minLon, cellLat, cellLon });
+        put(Section.GRID_START, start);
+        put(Section.GRID_STOPS, members);
+    }
+
+    private Map<String, Integer> readRoutes(ZipFile zip) throws IOException {
+        List<String> ids = new ArrayList<>();
+        Ints shortNames = new Ints();
+        Ints longNames = new Ints();
+        Ints types = new Ints();
+        try (GtfsCsvReader csv = open(zip, "routes.txt", true)) {
+            int id = csv.column("route_id");
+            int shortName = csv.column("route_short_name");
+            int longName = csv.column("route_long_name");
+            int type = csv.column("route_type");
+            while (csv.next()) {
+                if (csv.get(id) == null) {
+                    continue;
+                }
+                ids.add(csv.get(id));
+                shortNames.add(strings.ref(csv.get(shortName)));
+                longNames.add(strings.ref(csv.get(longName)));
+                types.add(integer(csv.get(type), -1));
+            }
+        }
+
+        int[] order = sortedById(ids);
+        int[] sortedShortNames = permute(shortNames.toArray(), order);
+        put(Section.ROUTE_ID, refs(ids, order));
+        put(Section.ROUTE_SHORT_NAME, sortedShortNames);
+        put(Section.ROUTE_LONG_NAME, permute(longNames.toArray(), order));
+        put(Section.ROUTE_TYPE, permute(types.toArray(), order));
+
+        Integer[] byName = new Integer[ids.size()];
+        Arrays.setAll(byName, i -> i);
+        Arrays.sort(byName, Comparator.comparing(i -> nameKey(strings.value(sortedShortNames[i]))));
+        put(Section.ROUTE_BY_NAME, Arrays.stream(byName).mapToInt(Integer::intValue).toArray());
+        return indexOf(ids, order);
+    }
+
+    private Map<String, Integer> readShapes(ZipFile zip) throws IOException {
+        Map<String, Integer> firstSeen = new HashMap<>();
+        List<String> ids = new ArrayList<>();
+        Ints shapeOf = new Ints();
+        Ints sequences = new Ints();
+        Ints lats = new Ints();
+        Ints lons = new Ints();
+        try (GtfsCsvReader csv = open(zip, "shapes.txt", false)) {
+            if (csv != null) {
+                int id = csv.column("shape_id");
+                int lat = csv.column("shape_pt_lat");
+                int lon = csv.column("shape_pt_lon");
+                int sequence = csv.column("shape_pt_sequence");
+                while (csv.next()) {
+                    String shapeId = csv.get(id);
+                    if (shapeId == null || csv.get(lat) == null || csv.get(lon) == null) {
+                        continue;
+                    }
+                    Integer shape = firstSeen.get(shapeId);
+                    if (shape == null) {
+                        shape = ids.size();
+                        firstSeen.put(shapeId, shape);
+                        ids.add(shapeId);
+                    }
+                    shapeOf.add(shape);
+                    sequences.add(integer(csv.get(sequence), 0));
+                    lats.add(fixed(csv.get(lat)));
+                    lons.add(fixed(csv.get(lon)));
+                }
+            }
+        }
+
+        int[] order = sortedById(ids);
+        int[] rank = inverse(order);
+        int[] groups = shapeOf.toArray();
+        for (int i = 0; i < groups.length; i++) {
+            groups[i] = rank[groups[i]];
+        }
+        int[] start = new int[ids.size() + 1];
+        int[] rows = bucket(groups, ids.size(), start);
+        sortWithinGroups(rows, start, sequences.toArray());
+
+        put(Section.SHAPE_ID, refs(ids, order));
+        put(Section.SHAPE_POINT_START, start);
+        put(Section.SHAPE_LAT, permute(lats.toArray(), rows));
+        put(Section.SHAPE_LON, permute(lons.toArray(), rows));
+        return indexOf(ids, order);
+    }
+
+    private Map<String, Integer> readTrips(
+        ZipFile zip,
+        Map<String, Integer> routes,
+        Map<String, Integer> shapes
+    ) throws IOException {
+        List<String> ids = new ArrayList<>();
+        Ints routeOf = new Ints();
+        Ints headsigns = new Ints();
+        Ints directions = new Ints();
+        Ints shapeOf = new Ints();
+        try (GtfsCsvReader csv = open(zip, "trips.txt", true)) {
+            int id = csv.column("trip_id");
+            int route = csv.column("route_id");
+            int headsign = csv.column("trip_headsign");
+            int direction = csv.column("direction_id");
+            int shape = csv.column("shape_id");
+            while (csv.next()) {
+                Integer routeIndex = routes.get(csv.get(route));
+                if (csv.get(id) == null || routeIndex == null) {
+                    continue;
+                }
+                ids.add(csv.get(id));
+                routeOf.add(routeIndex);
+                headsigns.add(strings.ref(csv.get(headsign)));
+                directions.add(integer(csv.get(direction), -1));
+                String shapeId = csv.get(shape);
+                shapeOf.add(shapeId != null ? shapes.getOrDefault(shapeId, -1) : -1);
+            }
+        }
+
+        int[] order = sortedById(ids);
+        put(Section.TRIP_ID, refs(ids, order));
+        put(Section.TRIP_ROUTE, permute(routeOf.toArray(), order));
+        put(Section.TRIP_HEADSIGN, permute(headsigns.toArray(), order));
+        put(Section.TRIP_DIRECTION, permute(directions.toArray(), order));
+        put(Section.TRIP_SHAPE, permute(shapeOf.toArray(), order));
+        return indexOf(ids, order);
+    }
+
+    private void readStopTimes(ZipFile zip, Map<String, Integer> trips, Map<String, Integer> stops) throws IOException {
+        Ints tripOf = new Ints();
+        Ints sequences = new Ints();
+        Ints stopOf = new Ints();
+        Ints arrivals = new Ints();
+        Ints departures = new Ints();
+        try (GtfsCsvReader csv = open(zip, "stop_times.txt", true)) {
+            int trip = csv.column("trip_id");
+            int stop = csv.column("stop_id");
+            int arrival = csv.column("arrival_time");
+            int departure = csv.column("departure_time");
+            int sequence = csv.column("stop_sequence");
+            while (csv.next()) {
+                Integer tripIndex = trips.get(csv.get(trip));
+                Integer stopIndex = stops.get(csv.get(stop));
+                if (tripIndex == null || stopIndex == null) {
+                    continue;
+                }
+                int arrivalTime = seconds(csv.get(arrival));
+                int departureTime = seconds(csv.get(departure));
+                tripOf.add(tripIndex);
+                sequences.add(integer(csv.get(sequence), 0));
+                stopOf.add(stopIndex);
+                arrivals.add(arrivalTime >= 0 ? arrivalTime : departureTime);
+                departures.add(departureTime >= 0 ? departureTime : arrivalTime);
+            }
+        }
+
+        int[] start = new int[trips.size() + 1];
+        int[] rows = bucket(tripOf.toArray(), trips.size(), start);
+        sortWithinGroups(rows, start, sequences.toArray());
+        put(Section.TRIP_STOP_START, start);
+        put(Section.STOP_TIME_STOP, permute(stopOf.toArray(), rows));
+        put(Section.STOP_TIME_ARRIVAL, permute(arrivals.toArray(), rows));
+        put(Section.STOP_TIME_DEPARTURE, permute(departures.toArray(), rows));
+    }
+
+    private void indexRouteTrips() {
+        int[] tripRoutes = columns[Section.TRIP_ROUTE.ordinal()];
+        int[] stopStart = columns[Section.TRIP_STOP_START.ordinal()];
+        int[] departures = columns[Section.STOP_TIME_DEPARTURE.ordinal()];
+        int[] firstDeparture = new int[tripRoutes.length];
+        for (int trip = 0; trip < tripRoutes.length; trip++) {
+            firstDeparture[trip] = stopStart[trip] < stopStart[trip + 1] ? departures[stopStart[trip]] : -1;
+        }
+
+        int routeCount = columns[Section.ROUTE_ID.ordinal()].length;
+        int[] start = new int[routeCount + 1];
+        int[] trips = bucket(tripRoutes, routeCount, start);
+        sortWithinGroups(trips, start, firstDeparture);
+        put(Section.ROUTE_TRIP_START, start);
+        put(Section.ROUTE_TRIPS, trips);
+    }
+
+    private void write(Path path, long sourceSize, long sourceModified) throws IOException {
+        Section[] sections = Section.values();
+        columns[Section.STRING_OFFSETS.ordinal()] = strings.offsets();
+        byte[] stringBytes = strings.bytes();
+
+        long[] offsets = new long[sections.length];
+        long[] lengths = new long[sections.length];
+        long position = 4 + 4 + 8 + 8 + 8 + 4 + 16L * sections.length;
+        for (Section section : sections) {
+            position = (position + 7) & ~7L;
+            offsets[section.ordinal()] = position;
+            lengths[section.ordinal()] = section == Section.STRING_BYTES
+                ? stringBytes.length
+                : 4L * columns[section.ordinal()].length;
+            position += lengths[section.ordinal()];
+        }
+
+        try (FileChannel channel = FileChannel.open(
+            path,
+            StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING
+        )) {
+            ByteBuffer header = ByteBuffer.allocate((int) offsets[0]);
+            header.putInt(MAGIC).putInt(VERSION).putLong(sourceSize).putLong(sourceModified)
+                .putLong(System.currentTimeMillis()).putInt(sections.length);
+            for (Section section : sections) {
+                header.putLong(offsets[section.ordinal()]).putLong(lengths[section.ordinal()]);
+            }
+            writeFully(channel, header.flip(), 0);
+
+            for (Section section : sections) {
+                ByteBuffer body;
+                if (section == Section.STRING_BYTES) {
+                    body = ByteBuffer.wrap(stringBytes);
+                } else {
+                    int[] values = columns[section.ordinal()];
+                    body = ByteBuffer.allocate(values.length * 4);
+                    body.asIntBuffer().put(values);
+                }
+                writeFully(channel, body, offsets[section.ordinal()]);
+            }
+            channel.force(true);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private void put(Section section, int[] values) {
+        columns[section.ordinal()] = values;
+    }
+
+    /**
+     * Opens {@code name} wherever it sits in the archive; feeds are sometimes zipped with a top-level folder.
+     * Returns {@code null} for a missing optional file.
+     */
+    private static GtfsCsvReader open(ZipFile zip, String name, boolean required) throws IOException {
+        ZipEntry entry = zip.getEntry(name);
+        if (entry == null) {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements() && entry == null) {
+                ZipEntry candidate = entries.nextElement();
+                if (candidate.getName().endsWith("/" + name)) {
+                    entry = candidate;
+                }
+            }
+        }
+        if (entry == null) {
+            if (required) {
+                throw new IOException("GTFS feed has no " + name);
+            }
+            return null;
+        }
+        InputStream in = zip.getInputStream(entry);
+        return new GtfsCsvReader(in);
+    }
+
+    private int[] refs(List<String> ids, int[] order) {
+        int[] refs = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            refs[i] = strings.ref(ids.get(order[i]));
+        }
+        return refs;
+    }
+
+    private static int[] sortedById(List<String> ids) {
+        Integer[] order = new Integer[ids.size()];
+        Arrays.setAll(order, i -> i);
+        Arrays.sort(order, Comparator.comparing(ids::get));
+        return Arrays.stream(order).mapToInt(Integer::intValue).toArray();
+    }
+
+    private static Map<String, Integer> indexOf(List<String> ids, int[] order) {
+        Map<String, Integer> index = new HashMap<>(order.length * 2);
+        for (int i = 0; i < order.length; i++) {
+            index.putIfAbsent(ids.get(order[i]), i);
+        }
+        return index;
+    }
+
+    private static int[] inverse(int[] order) {
+        int[] rank = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            rank[order[i]] = i;
+        }
+        return rank;
+    }
+
+    private static int[] permute(int[] values, int[] order) {
+        int[] permuted = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            permuted[i] = values[order[i]];
+        }
+        return permuted;
+    }
+
+    /**
+     * Counting sort of row indexes by group. Fills {@code start} with each group's first position and returns the
+     * rows in group order, keeping their original order within a group.
+     */
+    private static int[] bucket(int[] groups, int groupCount, int[] start) {
+        for (int group : groups) {
+            start[group + 1]++;
+        }
+        for (int i = 0; i < groupCount; i++) {
+            start[i + 1] += start[i];
+        }
+        int[] next = Arrays.copyOf(start, groupCount);
+        int[] rows = new int[groups.length];
+        for (int row = 0; row < groups.length; row++) {
+            rows[next[groups[row]]++] = row;
+        }
+        return rows;
+    }
+
+    /**
+     * Orders the rows of each group by {@code keys}. Feeds are usually already sorted, so sorted groups are skipped.
+     */
+    private static void sortWithinGroups(int[] rows, int[] start, int[] keys) {
+        long[] packed = new long[0];
+        for (int group = 0; group + 1 < start.length; group++) {
+            int from = start[group];
+            int to = start[group + 1];
+            boolean sorted = true;
+            for (int i = from + 1; i < to && sorted; i++) {
+                sorted = keys[rows[i - 1]] <= keys[rows[i]];
+            }
+            if (sorted) {
+                continue;
+            }
+
+            if (packed.length < to - from) {
+                packed = new long[to - from];
+            }
+            for (int i = from; i < to; i++) {
+                packed[i - from] = (long) keys[rows[i]] << 32 | rows[i];
+            }
+            Arrays.sort(packed, 0, to - from);
+            for (int i = from; i < to; i++) {
+                rows[i] = (int) packed[i - from];
+            }
+        }
+    }
+
+    private static String nameKey(String name) {
+        return name == null ? "" : name;
+    }
+
+    private static int fixed(String degrees) {
+        return (int) Math.round(Double.parseDouble(degrees.trim()) * SCALE);
+    }
+
+    private static int integer(String value, int fallback) {
+        if (value == null) {
+            return fallback;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    /**
+     * Parses {@code H:MM:SS}; hours may exceed 23 for trips running past midnight.
+     */
+    private static int seconds(String time) {
+        if (time == null) {
+            return -1;
+        }
+        String[] parts = time.trim().split(":");
+        if (parts.length != 3) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(parts[0]) * 3600 + Integer.parseInt(parts[1]) * 60 + Integer.parseInt(parts[2]);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static final class Strings {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        private int ref(String value) {
+            if (value == null) {
+                return -1;
+            }
+            Integer id = ids.get(value);
+            if (id == null) {
+                id = values.size();
+                ids.put(value, id);
+                values.add(value);
+            }
+            return id;
+        }
+
+        private String value(int ref) {
+            return ref >= 0 ? values.get(ref) : null;
+        }
+
+        private int[] offsets() {
+            int[] offsets = new int[values.size() + 1];
+            for (int i = 0; i < values.size(); i++) {
+                offsets[i + 1] = offsets[i] + values.get(i).getBytes(StandardCharsets.UTF_8).length;
+            }
+            return offsets;
+        }
+
+        private byte[] bytes() {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(values.size() * 16);
+            values.forEach(value -> bytes.writeBytes(value.getBytes(StandardCharsets.UTF_8)));
+            return bytes.toByteArray();
+        }
+    }
+
+    private static final class Ints {
+        private int[] values = new int[1024];
+        private int size;
+
+        private void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        private int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
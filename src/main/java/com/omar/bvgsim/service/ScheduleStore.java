@@ -0,0 +1,614 @@
+package com.omar.bvgsim.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.omar.bvgsim.model.NearbyStop;
+import com.omar.bvgsim.model.ScheduleStatus;
+import com.omar.bvgsim.model.TransitStop;
+import com.omar.bvgsim.model.Waypoint;
+import com.omar.bvgsim.service.ScheduleImporter.Section;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Static GTFS schedule served from the memory-mapped column file written by {@link ScheduleImporter}. When
+ * {@code bvg.schedule.gtfs-file} is set, the feed is imported at startup unless the store already matches its size
+ * and modification time; without it, an existing store is used as is. Lookups read the mapped columns directly and
+ * allocate only the strings and maps of their result.
+ *
+ * <p>Radar trip ids are HAFAS ids and never match GTFS trip ids, so {@link #trip} falls back to matching the line
+ * name and headsign and picks the scheduled trip of that pattern closest to the requested time. Service calendars
+ * are not evaluated; the stop list and geometry of a pattern do not depend on the day.
+ */
+@Service
+public class ScheduleStore {
+    private static final ZoneId SERVICE_ZONE = ZoneId.of("Europe/Berlin");
+    private static final int SECONDS_PER_DAY = 86_400;
+
+    private final String feed;
+    private final Path store;
+    private final int gridMeters;
+    private final boolean localTrips;
+    private final Timer found;
+    private final Timer missing;
+    private volatile Columns columns;
+
+    public ScheduleStore(
+        @Value("${bvg.schedule.gtfs-file:}") String feed,
+        @Value("${bvg.schedule.store:${java.io.tmpdir}/bvg-sim-schedule.store}") String store,
+        @Value("${bvg.schedule.grid-meters:250}") int gridMeters,
+        @Value("${bvg.schedule.local-trips:true}") boolean localTrips,
+        MeterRegistry meters
+    ) {
+        this.feed = feed;
+        this.store = Path.of(store);
+        this.gridMeters = gridMeters;
+        this.localTrips = localTrips;
+        this.found = tripTimer("found", meters);
+        this.missing = tripTimer("missing", meters);
+    }
+
+    @PostConstruct
+    public void open() {
+        try {
+            if (feed != null && !feed.isBlank()) {
+                Path source = Path.of(feed);
+                if (!Files.isRegularFile(source)) {
+                    System.err.println("GTFS feed " + source + " not found; using the existing schedule store if any.");
+                } else if (!matches(source)) {
+                    long startedAt = System.nanoTime();
+                    ScheduleImporter.importFeed(source, store, gridMeters);
+                    System.out.println("Imported GTFS feed " + source + " into " + store + " in "
+                        + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt) + " ms.");
+                }
+            }
+            if (Files.isRegularFile(store)) {
+                columns = Columns.map(store);
+                System.out.println("Schedule store " + store + ": " + columns.size(Section.STOP_ID) + " stops, "
+                    + columns.size(Section.TRIP_ID) + " trips, " + columns.size(Section.SHAPE_ID) + " shapes.");
+            }
+        } catch (IOException | RuntimeException e) {
+            columns = null;
+            System.err.println("Schedule store unavailable: " + e.getMessage());
+        }
+    }
+
+    public boolean available() {
+        return columns != null;
+    }
+
+    public ScheduleStatus status() {
+        Columns current = columns;
+        if (current == null) {
+            return new ScheduleStatus(false, store.toString(), null, 0, 0, 0, 0, 0, 0L);
+        }
+        return new ScheduleStatus(
+            true,
+            store.toString(),
+            Instant.ofEpochMilli(current.importedAt),
+            current.size(Section.STOP_ID),
+            current.size(Section.ROUTE_ID),
+            current.size(Section.TRIP_ID),
+            current.size(Section.STOP_TIME_STOP),
+            current.size(Section.SHAPE_ID),
+            current.sizeBytes
+        );
+    }
+
+    /**
+     * Returns the trip in the shape of an upstream trip response, wrapped in {@code trip}, with planned times on the
+     * service day of {@code at}; or {@code null} when local trips are disabled or nothing matches. {@code tripId} is
+     * tried as a GTFS trip id first, then {@code lineName} and {@code direction} are matched against route short
+     * names and trip headsigns.
+     */
+    public Map<String, Object> trip(String tripId, String lineName, String direction, Instant at) {
+        Columns current = columns;
+        if (!localTrips || current == null) {
+            return null;
+        }
+
+        long startedAt = System.nanoTime();
+        int trip = tripId != null ? current.find(Section.TRIP_ID, tripId) : -1;
+        if (trip < 0 && lineName != null && !lineName.isBlank()) {
+            trip = current.closestTrip(lineName, direction, at);
+        }
+        Map<String, Object> response = trip >= 0 ? Map.of("trip", current.tripResponse(trip, at)) : null;
+        (response != null ? found : missing).record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+        return response;
+    }
+
+    /**
+     * Fills in what an upstream trip response lacks from {@code scheduled}, a response of {@link #trip}: the
+     * polyline when it has none, and the stopovers when it has none. Everything upstream sent, including realtime
+     * times and delays, is kept as is. Returns {@code upstream} itself when nothing is missing; the shared response
+     * is never modified.
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> supplement(Map<String, Object> upstream, Map<String, Object> scheduled) {
+        boolean wrapped = upstream.get("trip") instanceof Map;
+        Map<String, Object> live = wrapped ? (Map<String, Object>) upstream.get("trip") : upstream;
+        boolean needsPolyline = live.get("polyline") == null;
+        boolean needsStopovers = !(live.get("stopovers") instanceof List<?> stopovers) || stopovers.isEmpty();
+        if (!needsPolyline && !needsStopovers) {
+            return upstream;
+        }
+
+        Map<String, Object> planned = (Map<String, Object>) scheduled.get("trip");
+        Map<String, Object> merged = new LinkedHashMap<>(live);
+        if (needsPolyline && planned.get("polyline") != null) {
+            merged.put("polyline", planned.get("polyline"));
+        }
+        if (needsStopovers) {
+            merged.put("stopovers", planned.get("stopovers"));
+        }
+        merged.put("supplementedBy", "gtfs");
+        return wrapped ? Map.of("trip", merged) : merged;
+    }
+
+    /**
+     * Returns the geometry of the shape most trips of the line named {@code lineName} follow, or an empty list when
+     * the schedule has no such line or it has no shapes.
+     */
+    public List<Waypoint> lineShape(String lineName) {
+        Columns current = columns;
+        if (current == null || lineName == null) {
+            return List.of();
+        }
+
+        Map<Integer, Integer> uses = new HashMap<>();
+        for (int route : current.routesNamed(lineName)) {
+            int end = current.get(Section.ROUTE_TRIP_START, route + 1);
+            for (int i = current.get(Section.ROUTE_TRIP_START, route); i < end; i++) {
+                int shape = current.get(Section.TRIP_SHAPE, current.get(Section.ROUTE_TRIPS, i));
+                if (shape >= 0) {
+                    uses.merge(shape, 1, Integer::sum);
+                }
+            }
+        }
+
+        return uses.entrySet().stream()
+            .max(Map.Entry.<Integer, Integer>comparingByValue()
+                .thenComparing(entry -> current.shapePoints(entry.getKey())))
+            .map(entry -> current.shape(entry.getKey()))
+            .orElse(List.of());
+    }
+
+    /**
+     * Returns up to {@code limit} stops within {@code radiusMeters} of the point, nearest first.
+     */
+    public List<NearbyStop> nearestStops(double lat, double lon, double radiusMeters, int limit) {
+        Columns current = columns;
+        if (current == null || limit <= 0) {
+            return List.of();
+        }
+
+        List<NearbyStop> nearby = new ArrayList<>();
+        current.stopsAround(lat, lon, radiusMeters, stop -> {
+            double distance = GeoDistance.meters(
+                lat,
+                lon,
+                current.degrees(Section.STOP_LAT, stop),
+                current.degrees(Section.STOP_LON, stop)
+            );
+            if (distance <= radiusMeters) {
+                nearby.add(new NearbyStop(current.stop(stop), distance));
+            }
+        });
+        nearby.sort(Comparator.comparingDouble(NearbyStop::distanceMeters));
+        return nearby.size() > limit ? List.copyOf(nearby.subList(0, limit)) : nearby;
+    }
+
+    private boolean matches(Path source) throws IOException {
+        if (!Files.isRegularFile(store)) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(store, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(24);
+            channel.read(header, 0);
+            header.flip();
+            return header.remaining() == 24
+                && header.getInt() == ScheduleImporter.MAGIC
+                && header.getInt() == ScheduleImporter.VERSION
+                && header.getLong() == Files.size(source)
+                && header.getLong() == Files.getLastModifiedTime(source).toMillis();
+        }
+    }
+
+    private static Timer tripTimer(String outcome, MeterRegistry meters) {
+        return Timer.builder("bvg.trips.fetch")
+            .description("Trip lookup latency by resolution path; primary includes trip cache hits")
+            .tag("path", "schedule")
+            .tag("outcome", outcome)
+            .publishPercentileHistogram()
+            .register(meters);
+    }
+
+    /**
+     * Maps the {@code route_type} of a route, basic or extended, to the product names used by the radar.
+     */
+    static String product(int routeType) {
+        if (routeType == 109 || (routeType >= 300 && routeType < 400)) {
+            return "suburban";
+        }
+        if (routeType == 0 || (routeType >= 900 && routeType < 1000)) {
+            return "tram";
+        }
+        if (routeType == 1 || (routeType >= 400 && routeType < 500)) {
+            return "subway";
+        }
+        if (routeType == 3 || (routeType >= 700 && routeType < 800)) {
+            return "bus";
+        }
+        if (routeType == 4 || (routeType >= 1000 && routeType < 1100) || routeType == 1200) {
+            return "ferry";
+        }
+        if (routeType == 101 || routeType == 102) {
+            return "express";
+        }
+        return routeType == 2 || (routeType >= 100 && routeType < 200) ? "regional" : null;
+    }
+
+    private static String normalize(String name) {
+        if (name == null) {
+            return "";
+        }
+        StringBuilder normalized = new StringBuilder(name.length());
+        name.toLowerCase(Locale.ROOT).codePoints()
+            .filter(Character::isLetterOrDigit)
+            .forEach(normalized::appendCodePoint);
+        return normalized.toString();
+    }
+
+    private interface StopVisitor {
+        void visit(int stop);
+    }
+
+    private static final class Columns {
+        private final ByteBuffer strings;
+        private final IntBuffer[] sections;
+        private final long importedAt;
+        private final long sizeBytes;
+
+        private Columns(ByteBuffer strings, IntBuffer[] sections, long importedAt, long sizeBytes) {
+            this.strings = strings;
+            this.sections = sections;
+            this.importedAt = importedAt;
+            this.sizeBytes = sizeBytes;
+        }
+
+        static Columns map(Path path) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                long size = channel.size();
+                if (size > Integer.MAX_VALUE) {
+                    throw new IOException("schedule store larger than 2 GB");
+                }
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                if (size < 36 || mapped.getInt(0) != ScheduleImporter.MAGIC) {
+                    throw new IOException(path + " is not a schedule store");
+                }
+                if (mapped.getInt(4) != ScheduleImporter.VERSION) {
+                    throw new IOException(path + " has store version " + mapped.getInt(4) + "; re-import the feed");
+                }
+
+                Section[] values = Section.values();
+                if (mapped.getInt(32) != values.length) {
+                    throw new IOException(path + " has an unexpected section count");
+                }
+                ByteBuffer strings = null;
+                IntBuffer[] sections = new IntBuffer[values.length];
+                for (Section section : values) {
+                    int entry = 36 + 16 * section.ordinal();
+                    int offset = (int) mapped.getLong(entry);
+                    int length = (int) mapped.getLong(entry + 8);
+                    ByteBuffer slice = mapped.slice(offset, length);
+                    if (section == Section.STRING_BYTES) {
+                        strings = slice;
+                    } else {
+                        sections[section.ordinal()] = slice.asIntBuffer();
+                    }
+                }
+                return new Columns(strings, sections, mapped.getLong(24), size);
+            }
+        }
+
+        int size(Section section) {
+            return sections[section.ordinal()].limit();
+        }
+
+        int get(Section section, int index) {
+            return sections[section.ordinal()].get(index);
+        }
+
+        double degrees(Section section, int index) {
+            return get(section, index) / ScheduleImporter.SCALE;
+        }
+
+        String string(int ref) {
+            if (ref < 0) {
+                return null;
+            }
+            int from = get(Section.STRING_OFFSETS, ref);
+            byte[] bytes = new byte[get(Section.STRING_OFFSETS, ref + 1) - from];
+            strings.get(from, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Binary search of an id column sorted by {@link String#compareTo}; -1 when absent.
+         */
+        int find(Section idColumn, String id) {
+            int low = 0;
+            int high = size(idColumn) - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int comparison = string(get(idColumn, middle)).compareTo(id);
+                if (comparison < 0) {
+                    low = middle + 1;
+                } else if (comparison > 0) {
+                    high = middle - 1;
+                } else {
+                    return middle;
+                }
+            }
+            return -1;
+        }
+
+        List<Integer> routesNamed(String lineName) {
+            int low = 0;
+            int high = size(Section.ROUTE_BY_NAME);
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (routeName(middle).compareTo(lineName) < 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+
+            List<Integer> routes = new ArrayList<>(2);
+            for (int i = low; i < size(Section.ROUTE_BY_NAME) && routeName(i).equals(lineName); i++) {
+                routes.add(get(Section.ROUTE_BY_NAME, i));
+            }
+            return routes;
+        }
+
+        private String routeName(int byNameIndex) {
+            String name = string(get(Section.ROUTE_SHORT_NAME, get(Section.ROUTE_BY_NAME, byNameIndex)));
+            return name != null ? name : "";
+        }
+
+        /**
+         * Picks the trip of the line whose headsign matches {@code direction} and whose run is closest to {@code at}
+         * in the time of day. Headsigns match when one contains the other after dropping case and punctuation, which
+         * absorbs the "S+U" and "(Berlin)" variations between HAFAS and GTFS names.
+         */
+        int closestTrip(String lineName, String direction, Instant at) {
+            String wanted = normalize(direction);
+            int now = ZonedDateTime.ofInstant(at, SERVICE_ZONE).toLocalTime().toSecondOfDay();
+            Map<Integer, Boolean> headsignMatches = new HashMap<>();
+            int best = -1;
+            long bestScore = Long.MAX_VALUE;
+            for (int route : routesNamed(lineName)) {
+                for (int i = get(Section.ROUTE_TRIP_START, route); i < get(Section.ROUTE_TRIP_START, route + 1); i++) {
+                    int trip = get(Section.ROUTE_TRIPS, i);
+                    int headsign = get(Section.TRIP_HEADSIGN, trip);
+                    boolean matches = wanted.isEmpty() || headsignMatches.computeIfAbsent(headsign, ref -> {
+                        String candidate = normalize(string(ref));
+                        return !candidate.isEmpty() && (candidate.contains(wanted) || wanted.contains(candidate));
+                    });
+                    int from = get(Section.TRIP_STOP_START, trip);
+                    int to = get(Section.TRIP_STOP_START, trip + 1);
+                    if (!matches || from == to) {
+                        continue;
+                    }
+
+                    int start = get(Section.STOP_TIME_DEPARTURE, from);
+                    int end = get(Section.STOP_TIME_ARRIVAL, to - 1);
+                    long score = Math.min(distance(now, start, end), distance(now + SECONDS_PER_DAY, start, end));
+                    if (score < bestScore) {
+                        bestScore = score;
+                        best = trip;
+                    }
+                }
+            }
+            return best;
+        }
+
+        private static long distance(int time, int start, int end) {
+            if (time < start) {
+                return start - time;
+            }
+            return time > end ? time - end : 0;
+        }
+
+        Map<String, Object> tripResponse(int trip, Instant at) {
+            int route = get(Section.TRIP_ROUTE, trip);
+            int from = get(Section.TRIP_STOP_START, trip);
+            int to = get(Section.TRIP_STOP_START, trip + 1);
+            ZonedDateTime serviceDay = from < to
+                ? serviceDay(at, get(Section.STOP_TIME_DEPARTURE, from), get(Section.STOP_TIME_ARRIVAL, to - 1))
+                : serviceDay(at, 0, 0);
+
+            List<Map<String, Object>> stopovers = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                String arrival = time(serviceDay, get(Section.STOP_TIME_ARRIVAL, i));
+                String departure = time(serviceDay, get(Section.STOP_TIME_DEPARTURE, i));
+                Map<String, Object> stopover = new LinkedHashMap<>();
+                stopover.put("stop", stopResponse(get(Section.STOP_TIME_STOP, i)));
+                stopover.put("arrival", arrival);
+                stopover.put("plannedArrival", arrival);
+                stopover.put("departure", departure);
+                stopover.put("plannedDeparture", departure);
+                stopovers.add(stopover);
+            }
+
+            String product = product(get(Section.ROUTE_TYPE, route));
+            Map<String, Object> line = new LinkedHashMap<>();
+            line.put("type", "line");
+            line.put("id", string(get(Section.ROUTE_ID, route)));
+            line.put("name", string(get(Section.ROUTE_SHORT_NAME, route)));
+            line.put("mode", "bus".equals(product) ? "bus" : "ferry".equals(product) ? "watercraft" : "train");
+            line.put("product", product);
+
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("id", string(get(Section.TRIP_ID, trip)));
+            response.put("direction", string(get(Section.TRIP_HEADSIGN, trip)));
+            response.put("line", line);
+            if (!stopovers.isEmpty()) {
+                response.put("origin", stopovers.get(0).get("stop"));
+                response.put("destination", stopovers.get(stopovers.size() - 1).get("stop"));
+                response.put("departure", stopovers.get(0).get("departure"));
+                response.put("arrival", stopovers.get(stopovers.size() - 1).get("arrival"));
+            }
+            response.put("stopovers", stopovers);
+            response.put("polyline", polyline(trip, from, to));
+            response.put("source", "gtfs");
+            return response;
+        }
+
+        /**
+         * Service day whose run of the trip is nearest {@code at}: today, or yesterday for a trip past midnight.
+         */
+        private static ZonedDateTime serviceDay(Instant at, int firstDeparture, int lastArrival) {
+            ZonedDateTime local = ZonedDateTime.ofInstant(at, SERVICE_ZONE);
+            LocalDate today = local.toLocalDate();
+            int now = local.toLocalTime().toSecondOfDay();
+            boolean yesterday = distance(now + SECONDS_PER_DAY, firstDeparture, lastArrival)
+                < distance(now, firstDeparture, lastArrival);
+            LocalDate day = yesterday ? today.minusDays(1) : today;
+            return ZonedDateTime.of(day, LocalTime.NOON, SERVICE_ZONE).minusHours(12);
+        }
+
+        private static String time(ZonedDateTime serviceDay, int seconds) {
+            return seconds < 0 ? null : serviceDay.plusSeconds(seconds).format(DateTimeFormatter.ISO_OFFSET_DATE_TIME);
+        }
+
+        private Map<String, Object> stopResponse(int stop) {
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("type", "stop");
+            response.put("id", string(get(Section.STOP_ID, stop)));
+            response.put("name", string(get(Section.STOP_NAME, stop)));
+            response.put("location", Map.of(
+                "type", "location",
+                "latitude", degrees(Section.STOP_LAT, stop),
+                "longitude", degrees(Section.STOP_LON, stop)
+            ));
+            return response;
+        }
+
+        /**
+         * The trip's shape as one line feature, or its stops as point features when the feed has no shape for it.
+         */
+        private Map<String, Object> polyline(int trip, int from, int to) {
+            int shape = get(Section.TRIP_SHAPE, trip);
+            List<Map<String, Object>> features = new ArrayList<>();
+            if (shape >= 0 && shapePoints(shape) >= 2) {
+                List<List<Double>> coordinates = new ArrayList<>(shapePoints(shape));
+                int end = get(Section.SHAPE_POINT_START, shape + 1);
+                for (int i = get(Section.SHAPE_POINT_START, shape); i < end; i++) {
+                    coordinates.add(List.of(degrees(Section.SHAPE_LON, i), degrees(Section.SHAPE_LAT, i)));
+                }
+                features.add(feature("LineString", coordinates));
+            } else {
+                for (int i = from; i < to; i++) {
+                    int stop = get(Section.STOP_TIME_STOP, i);
+                    List<Double> coordinates = List.of(degrees(Section.STOP_LON, stop), degrees(Section.STOP_LAT, stop));
+                    features.add(feature("Point", coordinates));
+                }
+            }
+            return Map.of("type", "FeatureCollection", "features", features);
+        }
+
+        private static Map<String, Object> feature(String type, Object coordinates) {
+            return Map.of(
+                "type", "Feature",
+                "properties", Map.of(),
+                "geometry", Map.of("type", type, "coordinates", coordinates)
+            );
+        }
+
+        int shapePoints(int shape) {
+            return get(Section.SHAPE_POINT_START, shape + 1) - get(Section.SHAPE_POINT_START, shape);
+        }
+
+        List<Waypoint> shape(int shape) {
+            List<Waypoint> waypoints = new ArrayList<>(shapePoints(shape));
+            for (int i = get(Section.SHAPE_POINT_START, shape); i < get(Section.SHAPE_POINT_START, shape + 1); i++) {
+                waypoints.add(new Waypoint(degrees(Section.SHAPE_LAT, i), degrees(Section.SHAPE_LON, i)));
+            }
+            return waypoints;
+        }
+
+        TransitStop stop(int stop) {
+            return new TransitStop(
+                string(get(Section.STOP_ID, stop)),
+                string(get(Section.STOP_NAME, stop)),
+                degrees(Section.STOP_LAT, stop),
+                degrees(Section.STOP_LON, stop)
+            );
+        }
+
+        /**
+         * Visits every stop in the grid cells overlapping the square of {@code radiusMeters} around the point. Points
+         * outside the grid are clamped to its border cells; callers filter by distance anyway.
+         */
+        void stopsAround(double lat, double lon, double radiusMeters, StopVisitor visitor) {
+            int rows = get(Section.GRID, 0);
+            int cols = get(Section.GRID, 1);
+            int minLat = get(Section.GRID, 2);
+            int minLon = get(Section.GRID, 3);
+            int cellLat = get(Section.GRID, 4);
+            int cellLon = get(Section.GRID, 5);
+
+            double latRadius = radiusMeters / 111_320.0 * ScheduleImporter.SCALE;
+            double lonRadius = latRadius / Math.max(0.01, Math.cos(Math.toRadians(lat)));
+            double y = lat * ScheduleImporter.SCALE - minLat;
+            double x = lon * ScheduleImporter.SCALE - minLon;
+            int fromRow = clamp((int) Math.floor((y - latRadius) / cellLat), rows);
+            int toRow = clamp((int) Math.floor((y + latRadius) / cellLat), rows);
+            int fromCol = clamp((int) Math.floor((x - lonRadius) / cellLon), cols);
+            int toCol = clamp((int) Math.floor((x + lonRadius) / cellLon), cols);
+
+            for (int row = fromRow; row <= toRow; row++) {
+                for (int col = fromCol; col <= toCol; col++) {
+                    int cell = row * cols + col;
+                    for (int i = get(Section.GRID_START, cell); i < get(Section.GRID_START, cell + 1); i++) {
+                        visitor.visit(get(Section.GRID_STOPS, i));
+                    }
+                }
+            }
+        }
+
+        private static int clamp(int value, int size) {
+            return Math.max(0, Math.min(size - 1, value));
+        }
+    }
+}
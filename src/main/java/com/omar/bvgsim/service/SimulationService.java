@@ -1,14 +1,14 @@
 package com.omar.bvgsim.service;
 
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.TimeUnit;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.EnableScheduling;
@@ -16,42 +16,67 @@ import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import com.omar.bvgsim.model.FanoutStats;
 import com.omar.bvgsim.model.VehicleLocation;
+import com.omar.bvgsim.model.VehicleSnapshot;
+import com.omar.bvgsim.model.Viewport;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.MultiGauge;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
 
 import jakarta.annotation.PostConstruct;
 
 @Service
 @EnableScheduling
 public class SimulationService {
-    private static final String ALL_ROUTES_ID = "all";
-    private static final Set<String> SUPPORTED_MODES = Set.of(
-        "bus",
-        "subway",
-        "suburban",
-        "tram",
-        "ferry",
-        "regional",
-        "express"
-    );
+    private static final String ALL_ROUTES_ID = SubscriptionIndex.ALL_ROUTES_ID;
+    private static final String VIEWPORT_STREAM_KEY = "viewport";
+    private static final String SUBSCRIPTION_EVENT = "subscription";
+
+    @Autowired
+    private RouteSimulator simulator;
 
     @Autowired
-    private RouteLoader loader;
+    private VehicleSnapshotService snapshots;
 
     @Autowired
-    private BvgRadarClient radarClient;
+    private VehicleInterpolator interpolator;
 
-    private final Map<String, List<SseEmitter>> emitters = new ConcurrentHashMap<>();
+    @Autowired
+    private VehicleFrameEncoder frames;
+
+    @Autowired
+    private VehicleDeltaTracker deltaTracker;
+
+    @Autowired
+    private SseFanout fanout;
+
+    @Autowired
+    private ViewportIndex viewports;
+
+    @Autowired
+    private BinaryStreamHub binaryStreams;
+
+    @Autowired
+    private MeterRegistry meters;
+
+    private Timer tickTimer;
+    private MultiGauge lineSubscribers;
+
+    private final SubscriptionIndex<StreamSubscriber> emitters = new SubscriptionIndex<>();
+    private final SubscriptionIndex<StreamSubscriber> deltaEmitters = new SubscriptionIndex<>();
 
     @PostConstruct
     public void init() {
-        // Initialize with some common lines, but updateAvailableLines will add the real active ones
-        String[] commonLines = {"100", "200", "255", "M29", "M41", "M45", "M48", "M49", "X10"};
-        for (String lineId : commonLines) {
-            emitters.put(lineId, new CopyOnWriteArrayList<>());
-        }
-        
-        // Update with real active lines immediately
-        updateAvailableLines();
+        tickTimer = Timer.builder("bvg.stream.tick")
+            .description("Duration of one broadcast tick, excluding the socket writes done by the writer pool")
+            .publishPercentileHistogram()
+            .register(meters);
+        lineSubscribers = MultiGauge.builder("bvg.stream.subscribers")
+            .description("Stream subscribers per line and stream type")
+            .register(meters);
     }
 
     public SseEmitter subscribe(String routeId) {
@@ -59,261 +84,222 @@ public class SimulationService {
     }
 
     public SseEmitter subscribe(Set<String> routeIds) {
+        return subscribe(routeIds, false);
+    }
+
+    /**
+     * Subscribes to live vehicles of the given lines. In delta mode the emitter first receives a {@code keyframe}
+     * event per line and afterwards only {@code delta} events with added, moved and removed vehicles.
+     */
+    public SseEmitter subscribe(Set<String> routeIds, boolean delta) {
         SseEmitter emitter = new SseEmitter(0L);
+        Set<String> normalizedRouteIds = normalizeRouteIds(routeIds);
+        if (normalizedRouteIds.isEmpty()) {
+            emitter.complete();
+            return emitter;
+        }
 
-        Set<String> normalizedRouteIds = routeIds.stream()
-            .filter(Objects::nonNull)
-            .map(String::trim)
-            .filter(routeId -> !routeId.isBlank())
-            .collect(java.util.stream.Collectors.toSet());
+        StreamSubscriber subscriber = fanout.register(emitter);
+        SubscriptionIndex<StreamSubscriber> registry = delta ? deltaEmitters : emitters;
+        if (delta) {
+            VehicleSnapshot snapshot = snapshots.latest();
+            normalizedRouteIds.forEach(routeId -> deltaTracker.join(
+                routeId,
+                snapshot,
+                streamVehicles(snapshot, routeId),
+                keyframe -> {
+                    fanout.publish(keyframe, subscriber);
+                    registry.add(routeId, subscriber);
+                }
+            ));
+        } else {
+            normalizedRouteIds.forEach(routeId -> registry.add(routeId, subscriber));
+        }
 
+        subscriber.onClose(() -> removeSubscriber(registry, subscriber, normalizedRouteIds));
+        bindLifecycle(emitter, subscriber);
+        if (subscriber.isClosed()) {
+            // Closed while registering, before the close hook was set; release its lines here instead.
+            removeSubscriber(registry, subscriber, normalizedRouteIds);
+        }
+        return emitter;
+    }
+
+    /**
+     * Subscribes to live vehicles of the given lines that are inside {@code viewport}, plus a margin. The first
+     * event, {@code subscription}, carries the id to pass to {@link #updateViewport} whenever the map is panned.
+     */
+    public SseEmitter subscribe(Set<String> routeIds, Viewport viewport) {
+        SseEmitter emitter = new SseEmitter(0L);
+        Set<String> normalizedRouteIds = normalizeRouteIds(routeIds);
         if (normalizedRouteIds.isEmpty()) {
             emitter.complete();
             return emitter;
         }
 
-        normalizedRouteIds.forEach(routeId ->
-            emitters.computeIfAbsent(routeId, k -> new CopyOnWriteArrayList<>()).add(emitter)
-        );
+        StreamSubscriber subscriber = fanout.register(emitter);
+        String subscriptionId = viewports.register(subscriber, normalizedRouteIds, viewport);
+        byte[] greeting = frames.encodeValue(Map.of("subscriptionId", subscriptionId));
+        fanout.publish(new OutboundFrame(SUBSCRIPTION_EVENT, null, greeting, null), subscriber);
 
-        Runnable cleanup = () -> removeEmitter(emitter, normalizedRouteIds);
+        subscriber.onClose(() -> {
+            fanout.unregister(subscriber);
+            viewports.remove(subscriptionId);
+        });
+        bindLifecycle(emitter, subscriber);
+        return emitter;
+    }
+
+    public boolean updateViewport(String subscriptionId, Viewport viewport) {
+        return viewports.update(subscriptionId, viewport);
+    }
+
+    public FanoutStats fanoutStats() {
+        return fanout.stats();
+    }
+
+    private Set<String> normalizeRouteIds(Set<String> routeIds) {
+        return routeIds.stream()
+            .filter(Objects::nonNull)
+            .map(String::trim)
+            .filter(routeId -> !routeId.isBlank())
+            .collect(java.util.stream.Collectors.toSet());
+    }
+
+    private void bindLifecycle(SseEmitter emitter, StreamSubscriber subscriber) {
+        Runnable cleanup = subscriber::close;
         emitter.onCompletion(cleanup);
         emitter.onTimeout(cleanup);
         emitter.onError(error -> cleanup.run());
-
-        return emitter;
     }
 
-    private void removeEmitter(SseEmitter emitter, Set<String> routeIds) {
-        routeIds.forEach(routeId -> {
-            List<SseEmitter> routeEmitters = emitters.get(routeId);
-            if (routeEmitters != null) {
-                routeEmitters.remove(emitter);
-            }
-        });
+    private void removeSubscriber(
+        SubscriptionIndex<StreamSubscriber> registry,
+        StreamSubscriber subscriber,
+        Set<String> routeIds
+    ) {
+        fanout.unregister(subscriber);
+        routeIds.forEach(routeId -> registry.remove(routeId, subscriber));
     }
 
-    @Scheduled(fixedRate = 30000)
-    public void updateAvailableLines() {
+    @Scheduled(fixedRate = 1000)
+    public void fetchRealDataAndBroadcast() {
+        long startedAt = System.nanoTime();
         try {
-            System.out.println("Checking for active transit lines from BVG radar API...");
-
-            List<Map<String, Object>> movements = radarClient.fetchBerlinMovements();
-
-            if (movements != null && !movements.isEmpty()) {
-                // Count vehicles by line - only include supported transit modes that appear in radar data.
-                Map<String, Long> lineCounts = movements.stream()
-                    .map(this::extractLineRef)
-                    .filter(Objects::nonNull)
-                    .map(LineRef::name)
-                    .collect(java.util.stream.Collectors.groupingBy(
-                        lineName -> lineName,
-                        java.util.stream.Collectors.counting()
-                    ));
-
-                if (!lineCounts.isEmpty()) {
-                    lineCounts.keySet().forEach(lineId ->
-                        emitters.computeIfAbsent(lineId, key -> new CopyOnWriteArrayList<>())
-                    );
-
-                    System.out.println("Active transit lines available: " + lineCounts.size());
-                }
-            }
-        } catch (Exception e) {
-            System.err.println("Error updating available lines: " + e.getMessage());
+            broadcast();
+        } finally {
+            tickTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
         }
     }
 
-    @Scheduled(fixedRate = 1000)
-    public void fetchRealDataAndBroadcast() {
-        boolean hasSubscribers = emitters.values().stream()
-            .anyMatch(subs -> subs != null && !subs.isEmpty());
-        if (!hasSubscribers) {
+    private void broadcast() {
+        recordLineSubscribers();
+        boolean hasSubscribers = !emitters.isEmpty();
+        boolean hasDeltaSubscribers = !deltaEmitters.isEmpty();
+        boolean hasViewportSubscribers = !viewports.isEmpty();
+        boolean hasBinarySubscribers = binaryStreams.hasSubscribers();
+        if (!hasSubscribers && !hasDeltaSubscribers && !hasViewportSubscribers && !hasBinarySubscribers) {
             return;
         }
 
-        List<VehicleLocation> locations;
-        locations = fetchLiveVehicleLocations();
-
-        emitters.forEach((routeId, subs) -> {
-            if (subs == null || subs.isEmpty()) {
-                return;
-            }
-
-            List<VehicleLocation> matchingLocations = locations.stream()
-                .filter(location -> ALL_ROUTES_ID.equals(routeId) || routeId.equals(location.routeId()))
-                .toList();
-
-            matchingLocations.forEach(location -> subs.forEach(emitter -> {
-                try {
-                    emitter.send(location);
-                } catch (Exception e) {
-                    subs.remove(emitter);
-                }
-            }));
+        VehicleSnapshot snapshot = interpolator.smooth(snapshots.latest());
+        if (hasDeltaSubscribers) {
+            broadcastDeltas(snapshot);
+        }
+        if (hasViewportSubscribers) {
+            broadcastViewports(snapshot);
+        }
+        if (hasBinarySubscribers) {
+            broadcastBinary(snapshot);
+        }
+        if (!hasSubscribers) {
+            return;
+        }
 
-            if (matchingLocations.isEmpty() && !ALL_ROUTES_ID.equals(routeId)) {
+        List<StreamSubscriber> wildcard = emitters.wildcard();
+        if (!wildcard.isEmpty() && !snapshot.vehicles().isEmpty()) {
+            fanout.publish(
+                OutboundFrame.of(frames.frameFor(snapshot, ALL_ROUTES_ID, snapshot.vehicles()), ALL_ROUTES_ID),
+                wildcard
+            );
+        }
+        emitters.lines().forEach((routeId, subs) -> {
+            List<VehicleLocation> matchingLocations = snapshot.vehiclesForLine(routeId);
+            if (!matchingLocations.isEmpty()) {
+                fanout.publish(OutboundFrame.of(frames.frameFor(snapshot, routeId, matchingLocations), routeId), subs);
+            } else {
                 simulateVehiclesForRoute(routeId, subs);
             }
         });
     }
 
-    private List<VehicleLocation> fetchLiveVehicleLocations() {
-        List<Map<String, Object>> movements = radarClient.fetchBerlinMovements();
-        if (movements == null || movements.isEmpty()) {
-            return List.of();
-        }
-
-        Map<String, AtomicInteger> vehicleSequences = new HashMap<>();
-        return movements.stream()
-            .map(movement -> toVehicleLocation(movement, vehicleSequences))
-            .filter(location -> location != null)
-            .toList();
+    private void recordLineSubscribers() {
+        List<MultiGauge.Row<?>> rows = new ArrayList<>();
+        addSubscriberRows(rows, emitters, "full");
+        addSubscriberRows(rows, deltaEmitters, "delta");
+        lineSubscribers.register(rows, true);
     }
 
-    @SuppressWarnings("unchecked")
-    private VehicleLocation toVehicleLocation(
-        Map<String, Object> movement,
-        Map<String, AtomicInteger> vehicleSequences
+    private static void addSubscriberRows(
+        List<MultiGauge.Row<?>> rows,
+        SubscriptionIndex<StreamSubscriber> index,
+        String stream
     ) {
-        Object locationValue = movement.get("location");
-        if (!(locationValue instanceof Map)) {
-            return null;
+        if (!index.wildcard().isEmpty()) {
+            rows.add(MultiGauge.Row.of(Tags.of("line", ALL_ROUTES_ID, "stream", stream), index.wildcard().size()));
         }
+        index.lines().forEach((routeId, subs) ->
+            rows.add(MultiGauge.Row.of(Tags.of("line", routeId, "stream", stream), subs.size()))
+        );
+    }
 
-        LineRef lineRef = extractLineRef(movement);
-        if (lineRef == null) {
-            return null;
-        }
-        String lineId = lineRef.name();
-
-        Map<String, Object> location = (Map<String, Object>) locationValue;
-        Object latObj = location.get("latitude");
-        Object lonObj = location.get("longitude");
-        if (!(latObj instanceof Number) || !(lonObj instanceof Number)) {
-            return null;
+    private void broadcastDeltas(VehicleSnapshot snapshot) {
+        Set<String> activeStreams = new HashSet<>(deltaEmitters.lines().keySet());
+        List<StreamSubscriber> wildcard = deltaEmitters.wildcard();
+        if (!wildcard.isEmpty()) {
+            activeStreams.add(ALL_ROUTES_ID);
+            publishDelta(snapshot, ALL_ROUTES_ID, wildcard);
         }
+        deltaEmitters.lines().forEach((routeId, subs) -> publishDelta(snapshot, routeId, subs));
+        deltaTracker.retainStreams(activeStreams);
+    }
 
-        String originalTripId = movement.get("tripId") instanceof String
-            ? (String) movement.get("tripId")
-            : null;
-        String destination = movement.get("direction") instanceof String
-            ? (String) movement.get("direction")
-            : "Unknown destination";
-        if (destination == null || destination.trim().isEmpty()) {
-            destination = "Unknown destination";
+    private void publishDelta(VehicleSnapshot snapshot, String routeId, List<StreamSubscriber> subs) {
+        OutboundFrame frame = deltaTracker.advance(routeId, snapshot, streamVehicles(snapshot, routeId));
+        if (frame != null) {
+            fanout.publish(frame, subs);
         }
+    }
 
-        int sequenceNumber = vehicleSequences
-            .computeIfAbsent(lineId, key -> new AtomicInteger(1))
-            .getAndIncrement();
-        String vehicleId = VehicleIdFormatter.format(lineId, originalTripId, sequenceNumber, lineRef.mode());
-
-        return new VehicleLocation(
-            lineId,
-            vehicleId,
-            originalTripId,
-            lineRef.mode(),
-            ((Number) latObj).doubleValue(),
-            ((Number) lonObj).doubleValue(),
-            Instant.now(),
-            destination
+    private void broadcastViewports(VehicleSnapshot snapshot) {
+        viewports.match(snapshot.vehicles(), frames.encodedVehicles(snapshot)).forEach((subscriber, encoded) ->
+            fanout.publish(OutboundFrame.of(frames.joinBatch(encoded), VIEWPORT_STREAM_KEY), subscriber)
         );
     }
 
-    @SuppressWarnings("unchecked")
-    private LineRef extractLineRef(Map<String, Object> movement) {
-        Object lineValue = movement.get("line");
-        if (!(lineValue instanceof Map)) {
-            return null;
-        }
-
-        Map<String, Object> line = (Map<String, Object>) lineValue;
-        Object lineName = line.get("name");
-        Object lineMode = line.get("mode");
-        Object lineProduct = line.get("product");
-
-        if (lineName instanceof String) {
-            String normalizedMode = normalizeMode((String) lineName, lineProduct, lineMode);
-            if (normalizedMode != null) {
-                return new LineRef((String) lineName, normalizedMode);
+    private void broadcastBinary(VehicleSnapshot snapshot) {
+        Map<String, List<VehicleLocation>> vehiclesByRoute = new HashMap<>();
+        Instant now = Instant.now();
+        for (String routeId : binaryStreams.routeIds()) {
+            List<VehicleLocation> vehicles = streamVehicles(snapshot, routeId);
+            if (vehicles.isEmpty() && !ALL_ROUTES_ID.equals(routeId)) {
+                vehicles = simulator.positions(routeId, now);
             }
+            vehiclesByRoute.put(routeId, vehicles);
         }
-
-        return null;
+        binaryStreams.publish(snapshot.version(), snapshot.createdAt().toEpochMilli(), vehiclesByRoute);
     }
 
-    private String normalizeMode(String lineName, Object product, Object mode) {
-        if (product instanceof String productValue && SUPPORTED_MODES.contains(productValue)) {
-            return productValue;
-        }
-
-        if (mode instanceof String modeValue && SUPPORTED_MODES.contains(modeValue)) {
-            return modeValue;
-        }
-
-        String normalizedLineName = lineName == null ? "" : lineName.toUpperCase();
-        if (normalizedLineName.startsWith("U")) {
-            return "subway";
-        }
-        if (normalizedLineName.startsWith("S")) {
-            return "suburban";
-        }
-        if (normalizedLineName.startsWith("RB") || normalizedLineName.startsWith("RE")) {
-            return "regional";
-        }
-        if (normalizedLineName.startsWith("F")) {
-            return "ferry";
-        }
-
-        return null;
+    private List<VehicleLocation> streamVehicles(VehicleSnapshot snapshot, String routeId) {
+        return ALL_ROUTES_ID.equals(routeId)
+            ? snapshot.vehicles()
+            : snapshot.vehiclesForLine(routeId);
     }
 
-    private void simulateVehiclesForRoute(String routeId, List<SseEmitter> subs) {
-        try {
-            // Find the route from loader
-            var route = loader.getAll().stream()
-                .filter(r -> r.getId().equals(routeId))
-                .findFirst();
-                
-            if (route.isPresent() && !route.get().getWaypoints().isEmpty()) {
-                var waypoints = route.get().getWaypoints();
-                
-                // Create 1-2 simulated vehicles moving along the route
-                for (int i = 0; i < 2; i++) {
-                    int waypointIndex = (int) (Math.random() * waypoints.size());
-                    var waypoint = waypoints.get(waypointIndex);
-                    
-                    // Add some random offset to make it more realistic
-                    double latOffset = (Math.random() - 0.5) * 0.002; // ~200m variance
-                    double lonOffset = (Math.random() - 0.5) * 0.002;
-                    
-                    VehicleLocation loc = new VehicleLocation(
-                        routeId, 
-                        routeId + "-sim-" + i, 
-                        null,
-                        "bus",
-                        waypoint.lat() + latOffset, 
-                        waypoint.lon() + lonOffset, 
-                        Instant.now(),
-                        "Simulated destination"
-                    );
-                    System.out.println("Simulating vehicle: " + loc.vehicleId() + " at " + loc.lat() + "," + loc.lon());
-                    
-                    subs.forEach(emitter -> {
-                        try {
-                            emitter.send(loc);
-                        } catch (Exception e) {
-                            subs.remove(emitter);
-                        }
-                    });
-                }
-            }
-        } catch (Exception e) {
-            System.err.println("Error in simulation fallback: " + e.getMessage());
+    private void simulateVehiclesForRoute(String routeId, List<StreamSubscriber> subs) {
+        List<VehicleLocation> simulated = simulator.positions(routeId, Instant.now());
+        if (!simulated.isEmpty()) {
+            fanout.publish(OutboundFrame.of(frames.encode(simulated), routeId), subs);
         }
     }
-
-    private record LineRef(String name, String mode) {
-    }
 }
@@ -0,0 +1,105 @@
+package com.omar.bvgsim.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.omar.bvgsim.model.VehicleSnapshot;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * JSON responses of the read endpoints, serialised and gzip-compressed once per snapshot version and key and then
+ * served as stored bytes. The cache is dropped as a whole when a newer snapshot is read, so it only ever holds the
+ * responses of one version.
+ */
+@Service
+public class SnapshotResponseCache {
+    private final ObjectMapper objectMapper;
+    private final Counter builds;
+    private final Counter hits;
+    private volatile Entries entries = new Entries(-1L, new ConcurrentHashMap<>());
+
+    public SnapshotResponseCache(ObjectMapper objectMapper, MeterRegistry meters) {
+        this.objectMapper = objectMapper;
+        this.builds = Counter.builder("bvg.response.cache").tag("outcome", "build").register(meters);
+        this.hits = Counter.builder("bvg.response.cache").tag("outcome", "hit").register(meters);
+    }
+
+    /**
+     * One serialised response in both encodings. Each encoding has its own strong entity tag.
+     */
+    public record CachedResponse(byte[] identity, byte[] gzip, String etag, String gzipEtag) {
+    }
+
+    /**
+     * Returns the cached response for {@code key} in {@code snapshot}, building it from {@code body} on first use.
+     */
+    public CachedResponse get(VehicleSnapshot snapshot, String key, Supplier<Object> body) {
+        Entries current = entries;
+        if (current.version() != snapshot.version()) {
+            synchronized (this) {
+                current = entries;
+                if (current.version() < snapshot.version()) {
+                    current = new Entries(snapshot.version(), new ConcurrentHashMap<>());
+                    entries = current;
+                }
+            }
+        }
+
+        if (current.version() != snapshot.version()) {
+            // A reader still holding an older snapshot; serve it without caching.
+            return build(snapshot, key, body.get());
+        }
+
+        CachedResponse cached = current.responses().get(key);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+        return current.responses().computeIfAbsent(key, k -> build(snapshot, k, body.get()));
+    }
+
+    private CachedResponse build(VehicleSnapshot snapshot, String key, Object body) {
+        builds.increment();
+        try {
+            byte[] identity = objectMapper.writeValueAsBytes(body);
+            String tag = Integer.toUnsignedString(key.hashCode(), 36);
+            return new CachedResponse(
+                identity,
+                gzip(identity),
+                VehicleSnapshotService.etag(snapshot, tag),
+                VehicleSnapshotService.etag(snapshot, tag + "-gzip")
+            );
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] gzip(byte[] bytes) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, bytes.length / 4));
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        }) {
+            out.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return compressed.toByteArray();
+    }
+
+    private record Entries(long version, Map<String, CachedResponse> responses) {
+    }
+}
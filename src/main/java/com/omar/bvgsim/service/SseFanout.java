@@ -0,0 +1,166 @@
+package com.omar.bvgsim.service;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.omar.bvgsim.model.FanoutStats;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Delivers encoded frames to SSE subscribers without blocking the broadcaster. Publishing only enqueues onto each
+ * subscriber's bounded queue; a dedicated writer pool performs the socket writes. Subscribers that stay behind past
+ * the deadline are evicted.
+ *
+ * <p>A write to a client that stopped reading blocks its writer until the container's socket write timeout
+ * ({@code server.tomcat.connection-timeout}) fails it, so the pool grows past {@code bvg.stream.writer-threads} up
+ * to {@code bvg.stream.max-writer-threads} rather than letting a few stalled sockets starve everyone else. Completing
+ * an emitter waits for its write in progress, so evicted subscribers are completed on their own threads, never on
+ * the scheduler that also runs the broadcast tick.
+ */
+@Service
+public class SseFanout {
+    private final ExecutorService writers;
+    private final ExecutorService reaper;
+    private final int queueCapacity;
+    private final long evictAfterMs;
+    private final Set<StreamSubscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final Counters counters = new Counters();
+
+    public SseFanout(
+        @Value("${bvg.stream.writer-threads:4}") int writerThreads,
+        @Value("${bvg.stream.max-writer-threads:64}") int maxWriterThreads,
+        @Value("${bvg.stream.queue-capacity:8}") int queueCapacity,
+        @Value("${bvg.stream.evict-after-ms:15000}") long evictAfterMs,
+        MeterRegistry meters
+    ) {
+        AtomicInteger writerIds = new AtomicInteger(1);
+        this.writers = new ThreadPoolExecutor(
+            writerThreads,
+            Math.max(writerThreads, maxWriterThreads),
+            30,
+            TimeUnit.SECONDS,
+            new SynchronousQueue<>(),
+            runnable -> {
+                Thread thread = new Thread(runnable, "sse-writer-" + writerIds.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        );
+        AtomicInteger reaperIds = new AtomicInteger(1);
+        this.reaper = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "sse-evict-" + reaperIds.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.queueCapacity = queueCapacity;
+        this.evictAfterMs = evictAfterMs;
+        bindMetrics(meters);
+    }
+
+    StreamSubscriber register(SseEmitter emitter) {
+        StreamSubscriber subscriber = new StreamSubscriber(emitter, queueCapacity, counters);
+        subscribers.add(subscriber);
+        return subscriber;
+    }
+
+    void unregister(StreamSubscriber subscriber) {
+        subscribers.remove(subscriber);
+    }
+
+    public boolean hasSubscribers() {
+        return !subscribers.isEmpty();
+    }
+
+    void publish(OutboundFrame frame, Collection<StreamSubscriber> targets) {
+        targets.forEach(subscriber -> subscriber.offer(frame, writers));
+    }
+
+    void publish(OutboundFrame frame, StreamSubscriber target) {
+        target.offer(frame, writers);
+    }
+
+    @Scheduled(fixedRate = 1000)
+    public void evictStalledSubscribers() {
+        long now = System.currentTimeMillis();
+        subscribers.forEach(subscriber -> {
+            if (subscriber.isStalled(now, evictAfterMs)) {
+                counters.evictions.increment();
+                subscribers.remove(subscriber);
+                subscriber.close(reaper);
+            }
+        });
+    }
+
+    public FanoutStats stats() {
+        int queued = 0;
+        int maxDepth = 0;
+        for (StreamSubscriber subscriber : subscribers) {
+            int depth = subscriber.queueDepth();
+            queued += depth;
+            maxDepth = Math.max(maxDepth, depth);
+        }
+
+        return new FanoutStats(
+            subscribers.size(),
+            queued,
+            maxDepth,
+            counters.dropped.sum(),
+            counters.coalesced.sum(),
+            counters.sendFailures.sum(),
+            counters.evictions.sum(),
+            writers instanceof ThreadPoolExecutor pool ? pool.getActiveCount() : 0
+        );
+    }
+
+    private void bindMetrics(MeterRegistry meters) {
+        Gauge.builder("bvg.stream.connections", subscribers, Set::size)
+            .description("Connected stream subscribers")
+            .register(meters);
+        Gauge.builder("bvg.stream.queued.frames", this, fanout -> fanout.stats().queuedFrames())
+            .register(meters);
+        Gauge.builder("bvg.stream.active.writers", this, fanout -> fanout.stats().activeWriters())
+            .register(meters);
+        FunctionCounter.builder("bvg.stream.frames", counters.dropped, LongAdder::sum)
+            .tag("result", "dropped")
+            .register(meters);
+        FunctionCounter.builder("bvg.stream.frames", counters.coalesced, LongAdder::sum)
+            .tag("result", "coalesced")
+            .register(meters);
+        FunctionCounter.builder("bvg.stream.send.failures", counters.sendFailures, LongAdder::sum)
+            .register(meters);
+        FunctionCounter.builder("bvg.stream.evictions", counters.evictions, LongAdder::sum)
+            .description("Subscribers disconnected for staying behind past the deadline")
+            .register(meters);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        writers.shutdownNow();
+        reaper.shutdownNow();
+    }
+
+    static final class Counters {
+        final LongAdder dropped = new LongAdder();
+        final LongAdder coalesced = new LongAdder();
+        final LongAdder sendFailures = new LongAdder();
+        final LongAdder evictions = new LongAdder();
+    }
+}
@@ -0,0 +1,196 @@
+package com.omar.bvgsim.service;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * One SSE connection with its own bounded outbound queue. The broadcaster only enqueues; a writer thread drains the
+ * queue, so a slow connection delays nobody but itself. When the queue is full the oldest frame is dropped, and a
+ * queued frame with the same coalesce key is replaced in place.
+ */
+final class StreamSubscriber {
+    private final SseEmitter emitter;
+    private final int capacity;
+    private final SseFanout.Counters counters;
+    private final ArrayDeque<Queued> queue;
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private volatile long sendingSince = 0L;
+    private volatile Runnable onClose = () -> { };
+
+    StreamSubscriber(SseEmitter emitter, int capacity, SseFanout.Counters counters) {
+        this.emitter = emitter;
+        this.capacity = capacity;
+        this.counters = counters;
+        this.queue = new ArrayDeque<>(capacity);
+    }
+
+    SseEmitter emitter() {
+        return emitter;
+    }
+
+    void onClose(Runnable onClose) {
+        this.onClose = onClose;
+    }
+
+    boolean isClosed() {
+        return closed.get();
+    }
+
+    void offer(OutboundFrame frame, Executor writers) {
+        if (closed.get()) {
+            return;
+        }
+
+        synchronized (queue) {
+            if (!coalesce(frame)) {
+                if (queue.size() >= capacity) {
+                    queue.pollFirst();
+                    counters.dropped.increment();
+                }
+                queue.addLast(new Queued(frame, System.currentTimeMillis()));
+            }
+        }
+
+        scheduleDrain(writers);
+    }
+
+    int queueDepth() {
+        synchronized (queue) {
+            return queue.size();
+        }
+    }
+
+    /**
+     * Returns true when the oldest undelivered frame has been waiting, or the current write has been blocked,
+     * for longer than {@code deadlineMs}.
+     */
+    boolean isStalled(long now, long deadlineMs) {
+        long since = sendingSince;
+        if (since == 0L) {
+            synchronized (queue) {
+                Queued head = queue.peekFirst();
+                since = head == null ? 0L : head.enqueuedAt();
+            }
+        }
+        return since != 0L && now - since > deadlineMs;
+    }
+
+    void close() {
+        close(Runnable::run);
+    }
+
+    /**
+     * Stops delivery and releases the subscription at once, but completes the emitter on {@code completer}.
+     * Completing waits for a write in progress to finish or time out, so callers that must not block hand it off.
+     */
+    void close(Executor completer) {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+
+        synchronized (queue) {
+            queue.clear();
+        }
+        onClose.run();
+        try {
+            completer.execute(this::complete);
+        } catch (RejectedExecutionException e) {
+            // Shutting down; the container releases the connection.
+        }
+    }
+
+    private void complete() {
+        try {
+            emitter.complete();
+        } catch (Exception e) {
+            // The connection is already gone; nothing left to release.
+        }
+    }
+
+    private boolean coalesce(OutboundFrame frame) {
+        if (frame.coalesceKey() == null) {
+            return false;
+        }
+
+        for (Iterator<Queued> it = queue.iterator(); it.hasNext(); ) {
+            Queued queued = it.next();
+            if (frame.coalesceKey().equals(queued.frame().coalesceKey())) {
+                it.remove();
+                // Keep the original enqueue time so a coalesced stream still counts as lagging.
+                queue.addLast(new Queued(frame, queued.enqueuedAt()));
+                counters.coalesced.increment();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void scheduleDrain(Executor writers) {
+        if (!draining.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            writers.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            draining.set(false);
+        }
+    }
+
+    private void drain() {
+        do {
+            try {
+                while (!closed.get()) {
+                    Queued next;
+                    synchronized (queue) {
+                        next = queue.pollFirst();
+                    }
+                    if (next == null) {
+                        break;
+                    }
+                    write(next.frame());
+                }
+            } finally {
+                draining.set(false);
+            }
+            // A frame may have been queued after the last poll but before the flag was cleared.
+        } while (hasPending() && !closed.get() && draining.compareAndSet(false, true));
+    }
+
+    private boolean hasPending() {
+        synchronized (queue) {
+            return !queue.isEmpty();
+        }
+    }
+
+    private void write(OutboundFrame frame) {
+        SseEmitter.SseEventBuilder event = SseEmitter.event();
+        if (frame.event() != null) {
+            event.name(frame.event());
+        }
+        if (frame.id() != null) {
+            event.id(frame.id());
+        }
+        event.data(frame.data(), MediaType.APPLICATION_JSON);
+
+        sendingSince = System.currentTimeMillis();
+        try {
+            emitter.send(event);
+        } catch (Exception e) {
+            counters.sendFailures.increment();
+            close();
+        } finally {
+            sendingSince = 0L;
+        }
+    }
+
+    private record Queued(OutboundFrame frame, long enqueuedAt) {
+    }
+}
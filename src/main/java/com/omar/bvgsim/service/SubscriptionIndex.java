@@ -0,0 +1,85 @@
+package com.omar.bvgsim.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Subscribers by line, with the {@code all} wildcard kept as its own tier. A line is present only while it has at
+ * least one subscriber: its entry is created by the first {@link #add} and dropped by the {@link #remove} that takes
+ * its reference count back to zero, so the index never grows with the number of lines the city runs, only with
+ * what is subscribed. The subscribers of a vehicle are {@link #subscribers(String)} of its line plus
+ * {@link #wildcard()}, two map reads.
+ *
+ * <p>Subscriber lists are immutable and replaced on change, so the broadcaster iterates them without locking while
+ * subscriptions come and go.
+ */
+final class SubscriptionIndex<S> {
+    static final String ALL_ROUTES_ID = "all";
+
+    private final Map<String, List<S>> byLine = new ConcurrentHashMap<>();
+    private volatile List<S> wildcard = List.of();
+
+    void add(String routeId, S subscriber) {
+        if (ALL_ROUTES_ID.equals(routeId)) {
+            synchronized (this) {
+                wildcard = with(wildcard, subscriber);
+            }
+        } else {
+            byLine.compute(routeId, (key, subscribers) -> with(subscribers, subscriber));
+        }
+    }
+
+    void remove(String routeId, S subscriber) {
+        if (ALL_ROUTES_ID.equals(routeId)) {
+            synchronized (this) {
+                wildcard = without(wildcard, subscriber);
+            }
+        } else {
+            byLine.computeIfPresent(routeId, (key, subscribers) -> {
+                List<S> remaining = without(subscribers, subscriber);
+                return remaining.isEmpty() ? null : remaining;
+            });
+        }
+    }
+
+    /**
+     * Subscribers of one line, not counting the wildcard tier.
+     */
+    List<S> subscribers(String lineId) {
+        List<S> subscribers = byLine.get(lineId);
+        return subscribers != null ? subscribers : List.of();
+    }
+
+    List<S> wildcard() {
+        return wildcard;
+    }
+
+    /**
+     * Lines with at least one subscriber and their subscribers.
+     */
+    Map<String, List<S>> lines() {
+        return Collections.unmodifiableMap(byLine);
+    }
+
+    boolean isEmpty() {
+        return byLine.isEmpty() && wildcard.isEmpty();
+    }
+
+    private static <S> List<S> with(List<S> subscribers, S subscriber) {
+        List<S> copy = new ArrayList<>(subscribers != null ? subscribers.size() + 1 : 1);
+        if (subscribers != null) {
+            copy.addAll(subscribers);
+        }
+        copy.add(subscriber);
+        return List.copyOf(copy);
+    }
+
+    private static <S> List<S> without(List<S> subscribers, S subscriber) {
+        List<S> copy = new ArrayList<>(subscribers);
+        copy.remove(subscriber);
+        return copy.size() == subscribers.size() ? subscribers : List.copyOf(copy);
+    }
+}
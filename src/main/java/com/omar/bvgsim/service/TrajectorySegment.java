@@ -0,0 +1,449 @@
+package com.omar.bvgsim.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.omar.bvgsim.model.VehicleLocation;
+
+/**
+ * One time segment of the trajectory store: a memory-mapped, append-only file of radar batches. Coordinates are
+ * quantised to 1e-5 degrees (about a metre) and written as zig-zag varints. Every few batches a keyframe stores
+ * absolute positions; in between, each vehicle is stored as the difference to its previous position, which
+ * usually fits one or two bytes. Vehicles are referenced by a small id from a per-segment dictionary that is
+ * written inline the first time a vehicle appears. An in-memory index of batch offsets and times lets queries
+ * decode only the batches from the keyframe before their time range onwards.
+ *
+ * <p>Not thread-safe; {@link TrajectoryStore} serialises access.
+ */
+final class TrajectorySegment {
+    private static final int MAGIC = 0x42564754;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+    private static final int WRITE_POSITION_OFFSET = 16;
+    private static final byte DEFINE = 1;
+    private static final byte BATCH = 2;
+    private static final double SCALE = 1e5;
+
+    private final Path path;
+    private final long startMs;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int writePosition;
+    private final int keyframeInterval;
+
+    private final List<Key> keys = new ArrayList<>();
+    private final Map<String, Integer> keyIds = new HashMap<>();
+    private final Map<String, List<Integer>> keysByLine = new HashMap<>();
+    private final Map<String, List<Integer>> keysByVehicle = new HashMap<>();
+    private long[] batchTimes = new long[64];
+    private int[] batchOffsets = new int[64];
+    private int[] batchKeyframes = new int[64];
+    private int batchCount;
+
+    private int[] lastLat = new int[0];
+    private int[] lastLon = new int[0];
+    private int[] lastGroup = new int[0];
+    private int[] lastEncode = new int[0];
+    private int keyframeIndex = -1;
+    private int encodeCount;
+
+    private TrajectorySegment(Path path, long startMs, int keyframeInterval) {
+        this.path = path;
+        this.startMs = startMs;
+        this.keyframeInterval = keyframeInterval;
+    }
+
+    static TrajectorySegment create(Path path, long startMs, int capacityBytes, int keyframeInterval)
+        throws IOException {
+        TrajectorySegment segment = new TrajectorySegment(path, startMs, keyframeInterval);
+        segment.channel = FileChannel.open(
+            path,
+            StandardOpenOption.CREATE_NEW,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE
+        );
+        segment.buffer = segment.channel.map(FileChannel.MapMode.READ_WRITE, 0, capacityBytes);
+        segment.buffer.putInt(0, MAGIC);
+        segment.buffer.putInt(4, FORMAT_VERSION);
+        segment.buffer.putLong(8, startMs);
+        segment.writePosition = HEADER_BYTES;
+        segment.buffer.putLong(WRITE_POSITION_OFFSET, HEADER_BYTES);
+        return segment;
+    }
+
+    /**
+     * Maps an existing segment read-only and rebuilds its dictionary and batch index. Returns {@code null} when the
+     * file is not a segment of this format.
+     */
+    static TrajectorySegment open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                return null;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+                return null;
+            }
+
+            TrajectorySegment segment = new TrajectorySegment(path, buffer.getLong(8), 0);
+            segment.buffer = buffer;
+            segment.writePosition = (int) Math.min(buffer.getLong(WRITE_POSITION_OFFSET), channel.size());
+            segment.rebuildIndex();
+            return segment;
+        }
+    }
+
+    Path path() {
+        return path;
+    }
+
+    long startMs() {
+        return startMs;
+    }
+
+    long endMs() {
+        return batchCount == 0 ? startMs : batchTimes[batchCount - 1];
+    }
+
+    boolean isWritable() {
+        return channel != null;
+    }
+
+    int sizeBytes() {
+        return writePosition;
+    }
+
+    /**
+     * Appends one radar batch. Returns {@code false} without changing the segment when it has no room left; the
+     * segment is then sealed and the caller should start a new one. Throws {@link java.nio.BufferOverflowException}
+     * when the batch does not fit {@code scratch}, again without changing the segment.
+     */
+    boolean append(long timeMs, List<VehicleLocation> vehicles, ByteBuffer scratch) throws IOException {
+        encodeCount++;
+        boolean keyframe = batchCount == 0 || batchCount - batchKeyframes[batchCount - 1] >= keyframeInterval;
+        int group = keyframe ? keyframeIndex + 1 : keyframeIndex;
+        int knownKeys = keys.size();
+        List<Key> newKeys = new ArrayList<>();
+        Map<String, Integer> newKeyIds = new HashMap<>();
+        int[] ids = new int[vehicles.size()];
+
+        scratch.clear();
+        for (int i = 0; i < vehicles.size(); i++) {
+            VehicleLocation vehicle = vehicles.get(i);
+            String identity = identity(vehicle.tripId(), vehicle.vehicleId());
+            Integer id = keyIds.get(identity);
+            if (id == null) {
+                id = newKeyIds.get(identity);
+            }
+            if (id == null) {
+                id = knownKeys + newKeys.size();
+                Key key = new Key(
+                    vehicle.tripId(),
+                    vehicle.vehicleId(),
+                    vehicle.routeId(),
+                    vehicle.mode(),
+                    vehicle.destination()
+                );
+                newKeys.add(key);
+                newKeyIds.put(identity, id);
+                scratch.put(DEFINE);
+                putVarint(scratch, id);
+                putString(scratch, key.tripId());
+                putString(scratch, key.vehicleId());
+                putString(scratch, key.lineId());
+                putString(scratch, key.mode());
+                putString(scratch, key.destination());
+            }
+            ids[i] = id;
+        }
+
+        ensureKeyCapacity(knownKeys + newKeys.size());
+        int batchStart = scratch.position();
+        scratch.put(BATCH);
+        scratch.putLong(timeMs);
+        scratch.put((byte) (keyframe ? 1 : 0));
+        int countPosition = scratch.position();
+        scratch.putInt(0);
+
+        int[] lats = new int[vehicles.size()];
+        int[] lons = new int[vehicles.size()];
+        int written = 0;
+        for (int i = 0; i < vehicles.size(); i++) {
+            int id = ids[i];
+            if (lastEncode[id] == encodeCount) {
+                ids[i] = -1;
+                continue;
+            }
+            lastEncode[id] = encodeCount;
+
+            VehicleLocation vehicle = vehicles.get(i);
+            lats[i] = (int) Math.round(vehicle.lat() * SCALE);
+            lons[i] = (int) Math.round(vehicle.lon() * SCALE);
+            boolean absolute = keyframe || id >= knownKeys || lastGroup[id] != group;
+            putVarint(scratch, id << 1 | (absolute ? 1 : 0));
+            putZigZag(scratch, absolute ? lats[i] : lats[i] - lastLat[id]);
+            putZigZag(scratch, absolute ? lons[i] : lons[i] - lastLon[id]);
+            written++;
+        }
+        scratch.putInt(countPosition, written);
+        scratch.flip();
+
+        if (scratch.remaining() > buffer.capacity() - writePosition) {
+            seal();
+            return false;
+        }
+
+        buffer.put(writePosition, scratch, 0, scratch.remaining());
+        int batchOffset = writePosition + batchStart;
+        writePosition += scratch.remaining();
+        buffer.putLong(WRITE_POSITION_OFFSET, writePosition);
+
+        newKeys.forEach(this::register);
+        for (int i = 0; i < ids.length; i++) {
+            int id = ids[i];
+            if (id >= 0) {
+                lastLat[id] = lats[i];
+                lastLon[id] = lons[i];
+                lastGroup[id] = group;
+            }
+        }
+        keyframeIndex = group;
+        addBatch(timeMs, batchOffset, keyframe);
+        return true;
+    }
+
+    /**
+     * Truncates the file to its written length and releases the write handle.
+     */
+    void seal() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        buffer.force();
+        channel.truncate(writePosition);
+        channel.close();
+        channel = null;
+    }
+
+    void delete() throws IOException {
+        seal();
+        Files.deleteIfExists(path);
+    }
+
+    List<Integer> keysForTrip(String tripId) {
+        Integer id = keyIds.get(identity(tripId, null));
+        return id == null ? List.of() : List.of(id);
+    }
+
+    List<Integer> keysForVehicle(String vehicleId) {
+        return keysByVehicle.getOrDefault(vehicleId, List.of());
+    }
+
+    List<Integer> keysForLine(String lineId) {
+        return keysByLine.getOrDefault(lineId, List.of());
+    }
+
+    Key key(int id) {
+        return keys.get(id);
+    }
+
+    /**
+     * Time of the last batch at or before {@code timeMs}, or {@code -1} if there is none in this segment.
+     */
+    long batchAtOrBefore(long timeMs) {
+        int index = lastBatchAtOrBefore(timeMs);
+        return index < 0 ? -1L : batchTimes[index];
+    }
+
+    /**
+     * Decodes every position of the keys in {@code wanted} (all keys when {@code null}) with a batch time in
+     * {@code [fromMs, toMs]}, in time order.
+     */
+    void scan(long fromMs, long toMs, boolean[] wanted, PositionVisitor visitor) {
+        int first = lastBatchAtOrBefore(fromMs - 1L) + 1;
+        int last = lastBatchAtOrBefore(toMs);
+        if (first > last) {
+            return;
+        }
+
+        int[] lats = new int[keys.size()];
+        int[] lons = new int[keys.size()];
+        ByteBuffer view = buffer.duplicate();
+        for (int batch = batchKeyframes[first]; batch <= last; batch++) {
+            view.position(batchOffsets[batch] + 1);
+            long time = view.getLong();
+            view.get();
+            int count = view.getInt();
+            boolean visible = batch >= first;
+            for (int i = 0; i < count; i++) {
+                int header = getVarint(view);
+                int id = header >>> 1;
+                boolean absolute = (header & 1) != 0;
+                int lat = getZigZag(view);
+                int lon = getZigZag(view);
+                lats[id] = absolute ? lat : lats[id] + lat;
+                lons[id] = absolute ? lon : lons[id] + lon;
+                if (visible && (wanted == null || (id < wanted.length && wanted[id]))) {
+                    visitor.visit(time, id, lats[id] / SCALE, lons[id] / SCALE);
+                }
+            }
+        }
+    }
+
+    int keyCount() {
+        return keys.size();
+    }
+
+    private void rebuildIndex() {
+        ByteBuffer view = buffer.duplicate();
+        view.position(HEADER_BYTES);
+        while (view.position() < writePosition) {
+            int offset = view.position();
+            byte type = view.get();
+            if (type == DEFINE) {
+                getVarint(view);
+                register(new Key(
+                    getString(view),
+                    getString(view),
+                    getString(view),
+                    getString(view),
+                    getString(view)
+                ));
+            } else if (type == BATCH) {
+                long time = view.getLong();
+                boolean keyframe = view.get() != 0;
+                int count = view.getInt();
+                for (int i = 0; i < count * 3; i++) {
+                    getVarint(view);
+                }
+                addBatch(time, offset, keyframe);
+            } else {
+                break;
+            }
+        }
+    }
+
+    private void register(Key key) {
+        int id = keys.size();
+        keys.add(key);
+        keyIds.putIfAbsent(identity(key.tripId(), key.vehicleId()), id);
+        if (key.vehicleId() != null) {
+            keysByVehicle.computeIfAbsent(key.vehicleId(), vehicle -> new ArrayList<>()).add(id);
+        }
+        if (key.lineId() != null) {
+            keysByLine.computeIfAbsent(key.lineId(), line -> new ArrayList<>()).add(id);
+        }
+    }
+
+    private void addBatch(long timeMs, int offset, boolean keyframe) {
+        if (batchCount == batchTimes.length) {
+            batchTimes = Arrays.copyOf(batchTimes, batchCount * 2);
+            batchOffsets = Arrays.copyOf(batchOffsets, batchCount * 2);
+            batchKeyframes = Arrays.copyOf(batchKeyframes, batchCount * 2);
+        }
+        batchTimes[batchCount] = timeMs;
+        batchOffsets[batchCount] = offset;
+        batchKeyframes[batchCount] = keyframe || batchCount == 0 ? batchCount : batchKeyframes[batchCount - 1];
+        batchCount++;
+    }
+
+    private int lastBatchAtOrBefore(long timeMs) {
+        int low = 0;
+        int high = batchCount - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (batchTimes[mid] <= timeMs) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    private void ensureKeyCapacity(int size) {
+        if (size > lastLat.length) {
+            int capacity = Math.max(Math.max(size, 256), lastLat.length * 2);
+            lastLat = Arrays.copyOf(lastLat, capacity);
+            lastLon = Arrays.copyOf(lastLon, capacity);
+            int previous = lastGroup.length;
+            lastGroup = Arrays.copyOf(lastGroup, capacity);
+            lastEncode = Arrays.copyOf(lastEncode, capacity);
+            Arrays.fill(lastGroup, previous, capacity, -1);
+        }
+    }
+
+    private static String identity(String tripId, String vehicleId) {
+        return tripId != null ? "t:" + tripId : "v:" + vehicleId;
+    }
+
+    private static void putString(ByteBuffer buffer, String value) {
+        if (value == null) {
+            putVarint(buffer, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        putVarint(buffer, bytes.length + 1);
+        buffer.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = getVarint(buffer);
+        if (length == 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length - 1];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void putZigZag(ByteBuffer buffer, int value) {
+        putVarint(buffer, (value << 1) ^ (value >> 31));
+    }
+
+    private static int getZigZag(ByteBuffer buffer) {
+        int value = getVarint(buffer);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void putVarint(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static int getVarint(ByteBuffer buffer) {
+        int value = 0;
+        int shift = 0;
+        byte current;
+        do {
+            current = buffer.get();
+            value |= (current & 0x7F) << shift;
+            shift += 7;
+        } while ((current & 0x80) != 0);
+        return value;
+    }
+
+    record Key(String tripId, String vehicleId, String lineId, String mode, String destination) {
+    }
+
+    @FunctionalInterface
+    interface PositionVisitor {
+        void visit(long timeMs, int keyId, double latitude, double longitude);
+    }
+}
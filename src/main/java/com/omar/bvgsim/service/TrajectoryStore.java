@@ -0,0 +1,403 @@
+package com.omar.bvgsim.service;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.omar.bvgsim.model.HistorySnapshot;
+import com.omar.bvgsim.model.TrackPoint;
+import com.omar.bvgsim.model.VehicleInfo;
+import com.omar.bvgsim.model.VehicleSnapshot;
+import com.omar.bvgsim.model.VehicleTrack;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Rolling history of every radar snapshot, kept in memory-mapped {@link TrajectorySegment} files of a fixed time
+ * span. Each successful poll is one append to the newest segment; segments older than the retention are deleted
+ * as new ones are started. Queries only decode the segments, and within them the batches, that overlap the
+ * requested time range. Segments left by an earlier run are picked up read-only at startup. Appends are handed
+ * to a single appender thread, so encoding, disk writes and segment rollover never delay the radar poll that
+ * produced the snapshot; when the appender falls behind by more than its queue, the newest batches are dropped.
+ */
+@Service
+public class TrajectoryStore {
+    private static final String SEGMENT_PREFIX = "trajectory-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final int KEYFRAME_INTERVAL = 12;
+    private static final int INITIAL_SCRATCH_BYTES = 256 * 1024;
+
+    private final boolean enabled;
+    private final Path directory;
+    private final long segmentMs;
+    private final long retentionMs;
+    private final long maxQueryMs;
+    private final int segmentBytes;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<TrajectorySegment> segments = new ArrayList<>();
+    private final ThreadPoolExecutor appender;
+    private final Timer appendTimer;
+    private final Counter appendsDropped;
+
+    private TrajectorySegment current;
+    private ByteBuffer scratch = ByteBuffer.allocate(INITIAL_SCRATCH_BYTES);
+    private long lastAppendMs = Long.MIN_VALUE;
+
+    public TrajectoryStore(
+        @Value("${bvg.history.enabled:true}") boolean enabled,
+        @Value("${bvg.history.directory:${java.io.tmpdir}/bvg-sim-history}") String directory,
+        @Value("${bvg.history.segment-minutes:10}") long segmentMinutes,
+        @Value("${bvg.history.retention-hours:6}") long retentionHours,
+        @Value("${bvg.history.max-query-minutes:120}") long maxQueryMinutes,
+        @Value("${bvg.history.segment-capacity-mb:64}") int segmentCapacityMb,
+        @Value("${bvg.history.append-queue:16}") int appendQueue,
+        MeterRegistry meters
+    ) {
+        this.enabled = enabled;
+        this.directory = Path.of(directory);
+        this.segmentMs = Math.max(1L, segmentMinutes) * 60_000L;
+        this.retentionMs = Math.max(1L, retentionHours) * 3_600_000L;
+        this.maxQueryMs = Math.max(1L, maxQueryMinutes) * 60_000L;
+        this.segmentBytes = Math.max(1, Math.min(1024, segmentCapacityMb)) * 1024 * 1024;
+        this.appender = new ThreadPoolExecutor(
+            1,
+            1,
+            0L,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(Math.max(1, appendQueue)),
+            runnable -> {
+                Thread thread = new Thread(runnable, "trajectory-appender");
+                thread.setDaemon(true);
+                return thread;
+            }
+        );
+
+        Gauge.builder("bvg.history.segments", this, store -> store.read(() -> store.segments.size()))
+            .description("Trajectory segments currently retained")
+            .register(meters);
+        Gauge.builder("bvg.history.size", this, TrajectoryStore::sizeBytes)
+            .description("Bytes written to the retained trajectory segments")
+            .baseUnit("bytes")
+            .register(meters);
+        Gauge.builder("bvg.history.append.queue", appender, executor -> executor.getQueue().size())
+            .description("Radar batches waiting for the trajectory appender")
+            .register(meters);
+        this.appendTimer = Timer.builder("bvg.history.append")
+            .description("Time to encode and write one radar batch to the trajectory history")
+            .register(meters);
+        this.appendsDropped = Counter.builder("bvg.history.append.dropped")
+            .description("Radar batches not recorded because the trajectory appender was behind")
+            .register(meters);
+    }
+
+    @PostConstruct
+    public void open() {
+        if (!enabled) {
+            return;
+        }
+
+        try {
+            Files.createDirectories(directory);
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : files.filter(TrajectoryStore::isSegmentFile).toList()) {
+                    TrajectorySegment segment = TrajectorySegment.open(file);
+                    if (segment != null) {
+                        segments.add(segment);
+                    }
+                }
+            }
+            segments.sort(Comparator.comparingLong(TrajectorySegment::startMs));
+            dropExpired(System.currentTimeMillis());
+        } catch (IOException e) {
+            System.err.println("Trajectory history unavailable in " + directory + ": " + e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        appender.shutdown();
+        try {
+            appender.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (current != null) {
+                current.seal();
+                current = null;
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to seal trajectory segment: " + e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Queues one published snapshot for the appender thread and returns immediately. Empty snapshots and snapshots
+     * not newer than the last recorded one are skipped; storage failures are logged and do not reach the caller.
+     */
+    public void append(VehicleSnapshot snapshot) {
+        if (!enabled || snapshot.isEmpty()) {
+            return;
+        }
+
+        try {
+            appender.execute(() -> appendTimer.record(() -> write(snapshot)));
+        } catch (RejectedExecutionException e) {
+            appendsDropped.increment();
+        }
+    }
+
+    /**
+     * Positions recorded for one vehicle id, one track per trip it served in the range.
+     */
+    public List<VehicleTrack> vehicleTracks(String vehicleId, Instant from, Instant to) {
+        return tracks(from, to, segment -> segment.keysForVehicle(vehicleId));
+    }
+
+    /**
+     * Positions recorded for one trip, or {@code null} when the trip was not seen in the range.
+     */
+    public VehicleTrack tripTrack(String tripId, Instant from, Instant to) {
+        List<VehicleTrack> tracks = tracks(from, to, segment -> segment.keysForTrip(tripId));
+        return tracks.isEmpty() ? null : tracks.get(0);
+    }
+
+    /**
+     * Positions of every vehicle of a line in the range, one track per trip.
+     */
+    public List<VehicleTrack> lineTracks(String lineId, Instant from, Instant to) {
+        return tracks(from, to, segment -> segment.keysForLine(lineId));
+    }
+
+    /**
+     * The last recorded radar batch at or before {@code at}, or {@code null} when nothing that old is retained.
+     */
+    public HistorySnapshot snapshotAt(Instant at) {
+        long atMs = at.toEpochMilli();
+        return read(() -> {
+            for (int i = segments.size() - 1; i >= 0; i--) {
+                TrajectorySegment segment = segments.get(i);
+                long batchMs = segment.batchAtOrBefore(atMs);
+                if (batchMs < 0L) {
+                    continue;
+                }
+
+                List<VehicleInfo> vehicles = new ArrayList<>();
+                segment.scan(batchMs, batchMs, null, (timeMs, keyId, latitude, longitude) -> {
+                    TrajectorySegment.Key key = segment.key(keyId);
+                    vehicles.add(new VehicleInfo(
+                        key.vehicleId(),
+                        key.lineId(),
+                        key.mode(),
+                        key.tripId(),
+                        key.destination(),
+                        latitude,
+                        longitude
+                    ));
+                });
+                return new HistorySnapshot(at, Instant.ofEpochMilli(batchMs), vehicles);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Rejects ranges that are inverted or longer than {@code bvg.history.max-query-minutes}.
+     */
+    public void checkRange(Instant from, Instant to) {
+        if (from.isAfter(to)) {
+            throw new IllegalArgumentException("from must not be after to");
+        }
+        if (to.toEpochMilli() - from.toEpochMilli() > maxQueryMs) {
+            throw new IllegalArgumentException("time range must not exceed " + maxQueryMs / 60_000L + " minutes");
+        }
+    }
+
+    private List<VehicleTrack> tracks(
+        Instant from,
+        Instant to,
+        Function<TrajectorySegment, List<Integer>> selector
+    ) {
+        checkRange(from, to);
+        long fromMs = from.toEpochMilli();
+        long toMs = to.toEpochMilli();
+        return read(() -> {
+            Map<String, TrackBuilder> tracks = new LinkedHashMap<>();
+            for (TrajectorySegment segment : segments) {
+                if (segment.startMs() > toMs || segment.endMs() < fromMs) {
+                    continue;
+                }
+
+                List<Integer> keyIds = selector.apply(segment);
+                if (keyIds.isEmpty()) {
+                    continue;
+                }
+
+                boolean[] wanted = new boolean[segment.keyCount()];
+                TrackBuilder[] builders = new TrackBuilder[segment.keyCount()];
+                for (int keyId : keyIds) {
+                    TrajectorySegment.Key key = segment.key(keyId);
+                    wanted[keyId] = true;
+                    builders[keyId] = tracks.computeIfAbsent(
+                        key.tripId() != null ? key.tripId() : key.vehicleId(),
+                        identity -> new TrackBuilder(key)
+                    );
+                }
+                segment.scan(fromMs, toMs, wanted, (timeMs, keyId, latitude, longitude) ->
+                    builders[keyId].points.add(new TrackPoint(Instant.ofEpochMilli(timeMs), latitude, longitude))
+                );
+            }
+
+            List<VehicleTrack> result = new ArrayList<>(tracks.size());
+            for (TrackBuilder builder : tracks.values()) {
+                if (!builder.points.isEmpty()) {
+                    result.add(builder.build());
+                }
+            }
+            return result;
+        });
+    }
+
+    private void write(VehicleSnapshot snapshot) {
+        long timeMs = snapshot.createdAt().toEpochMilli();
+        lock.writeLock().lock();
+        try {
+            if (timeMs <= lastAppendMs) {
+                return;
+            }
+
+            if (current == null || timeMs - current.startMs() >= segmentMs) {
+                roll(timeMs);
+            }
+            if (!appendWithScratch(current, timeMs, snapshot)) {
+                roll(timeMs);
+                if (!appendWithScratch(current, timeMs, snapshot)) {
+                    System.err.println("Radar batch of " + snapshot.vehicles().size()
+                        + " vehicles does not fit an empty trajectory segment; skipped");
+                    return;
+                }
+            }
+            lastAppendMs = timeMs;
+            dropExpired(timeMs);
+        } catch (IOException e) {
+            System.err.println("Failed to record trajectory batch: " + e.getMessage());
+            current = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private boolean appendWithScratch(TrajectorySegment segment, long timeMs, VehicleSnapshot snapshot)
+        throws IOException {
+        while (true) {
+            try {
+                return segment.append(timeMs, snapshot.vehicles(), scratch);
+            } catch (BufferOverflowException e) {
+                scratch = ByteBuffer.allocate(scratch.capacity() * 2);
+            }
+        }
+    }
+
+    private void roll(long timeMs) throws IOException {
+        if (current != null) {
+            current.seal();
+        }
+        Path file = directory.resolve(SEGMENT_PREFIX + timeMs + SEGMENT_SUFFIX);
+        Files.createDirectories(directory);
+        current = TrajectorySegment.create(file, timeMs, segmentBytes, KEYFRAME_INTERVAL);
+        segments.add(current);
+    }
+
+    private void dropExpired(long nowMs) {
+        while (!segments.isEmpty()) {
+            TrajectorySegment oldest = segments.get(0);
+            if (oldest == current || oldest.endMs() >= nowMs - retentionMs) {
+                return;
+            }
+
+            segments.remove(0);
+            try {
+                oldest.delete();
+            } catch (IOException e) {
+                System.err.println("Failed to delete trajectory segment " + oldest.path() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private double sizeBytes() {
+        return read(() -> {
+            long bytes = 0L;
+            for (TrajectorySegment segment : segments) {
+                bytes += segment.sizeBytes();
+            }
+            return (double) bytes;
+        });
+    }
+
+    private <T> T read(Supplier<T> query) {
+        lock.readLock().lock();
+        try {
+            return query.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static boolean isSegmentFile(Path file) {
+        String name = file.getFileName().toString();
+        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+    }
+
+    private static final class TrackBuilder {
+        private final TrajectorySegment.Key key;
+        private final List<TrackPoint> points = new ArrayList<>();
+
+        private TrackBuilder(TrajectorySegment.Key key) {
+            this.key = key;
+        }
+
+        private VehicleTrack build() {
+            return new VehicleTrack(
+                key.vehicleId(),
+                key.lineId(),
+                key.mode(),
+                key.tripId(),
+                key.destination(),
+                points
+            );
+        }
+    }
+}
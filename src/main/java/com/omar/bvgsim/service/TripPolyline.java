@@ -0,0 +1,139 @@
+package com.omar.bvgsim.service;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable trip geometry with cumulative distances, so a position can be projected onto the route once per fix
+ * and moved along it per tick with a binary search.
+ */
+final class TripPolyline {
+    private final double[] lats;
+    private final double[] lons;
+    private final double[] distances;
+
+    private TripPolyline(double[] lats, double[] lons, int size) {
+        this.lats = Arrays.copyOf(lats, size);
+        this.lons = Arrays.copyOf(lons, size);
+        this.distances = new double[size];
+        for (int i = 1; i < size; i++) {
+            distances[i] = distances[i - 1] + GeoDistance.meters(lats[i - 1], lons[i - 1], lats[i], lons[i]);
+        }
+    }
+
+    /**
+     * Reads the polyline of a trip response as returned by the trips endpoint, either wrapped in {@code trip} or
+     * not. Accepts a GeoJSON feature collection of points or lines, a bare geometry, or a coordinate array.
+     * Returns {@code null} when the trip carries fewer than two usable points.
+     */
+    static TripPolyline fromTrip(Map<String, Object> response) {
+        Object trip = response.get("trip") instanceof Map<?, ?> wrapped ? wrapped : response;
+        Object polyline = trip instanceof Map<?, ?> map ? map.get("polyline") : null;
+
+        Points points = new Points();
+        collect(polyline, points);
+        return points.size >= 2 ? new TripPolyline(points.lats, points.lons, points.size) : null;
+    }
+
+    double length() {
+        return distances[distances.length - 1];
+    }
+
+    /**
+     * Returns the distance along the route of the point nearest to {@code lat}/{@code lon}.
+     */
+    double project(double lat, double lon) {
+        double cosLat = Math.cos(Math.toRadians(lat));
+        double best = Double.MAX_VALUE;
+        double bestDistance = 0.0;
+        for (int i = 1; i < lats.length; i++) {
+            double ax = lons[i - 1] * cosLat;
+            double ay = lats[i - 1];
+            double dx = lons[i] * cosLat - ax;
+            double dy = lats[i] - ay;
+            double squaredLength = dx * dx + dy * dy;
+            double t = squaredLength == 0.0
+                ? 0.0
+                : Math.max(0.0, Math.min(1.0, ((lon * cosLat - ax) * dx + (lat - ay) * dy) / squaredLength));
+            double px = ax + t * dx - lon * cosLat;
+            double py = ay + t * dy - lat;
+            double squaredOffset = px * px + py * py;
+            if (squaredOffset < best) {
+                best = squaredOffset;
+                bestDistance = distances[i - 1] + t * (distances[i] - distances[i - 1]);
+            }
+        }
+        return bestDistance;
+    }
+
+    /**
+     * Returns the {@code {lat, lon}} at {@code distance} metres along the route, clamped to its ends.
+     */
+    double[] pointAt(double distance) {
+        if (distance <= 0.0) {
+            return new double[] { lats[0], lons[0] };
+        }
+        int last = distances.length - 1;
+        if (distance >= distances[last]) {
+            return new double[] { lats[last], lons[last] };
+        }
+
+        int index = Arrays.binarySearch(distances, distance);
+        if (index >= 0) {
+            return new double[] { lats[index], lons[index] };
+        }
+
+        int end = -index - 1;
+        int start = end - 1;
+        double span = distances[end] - distances[start];
+        double t = span == 0.0 ? 0.0 : (distance - distances[start]) / span;
+        return new double[] {
+            lats[start] + t * (lats[end] - lats[start]),
+            lons[start] + t * (lons[end] - lons[start])
+        };
+    }
+
+    private static void collect(Object node, Points points) {
+        if (node instanceof List<?> list) {
+            if (isCoordinate(list)) {
+                points.add(((Number) list.get(1)).doubleValue(), ((Number) list.get(0)).doubleValue());
+            } else {
+                list.forEach(child -> collect(child, points));
+            }
+        } else if (node instanceof Map<?, ?> map) {
+            if (map.get("features") != null) {
+                collect(map.get("features"), points);
+            } else if (map.get("geometry") != null) {
+                collect(map.get("geometry"), points);
+            } else if (map.get("coordinates") != null) {
+                collect(map.get("coordinates"), points);
+            } else if (map.get("latitude") instanceof Number lat && map.get("longitude") instanceof Number lon) {
+                points.add(lat.doubleValue(), lon.doubleValue());
+            }
+        }
+    }
+
+    private static boolean isCoordinate(List<?> list) {
+        return list.size() >= 2 && list.get(0) instanceof Number && list.get(1) instanceof Number;
+    }
+
+    private static final class Points {
+        private double[] lats = new double[64];
+        private double[] lons = new double[64];
+        private int size;
+
+        private void add(double lat, double lon) {
+            if (size > 0 && lats[size - 1] == lat && lons[size - 1] == lon) {
+                return;
+            }
+            if (size == lats.length) {
+                lats = Arrays.copyOf(lats, size * 2);
+                lons = Arrays.copyOf(lons, size * 2);
+            }
+            lats[size] = lat;
+            lons[size] = lon;
+            size++;
+        }
+    }
+}
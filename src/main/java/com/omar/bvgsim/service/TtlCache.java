@@ -0,0 +1,128 @@
+package com.omar.bvgsim.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Small bounded cache with per-entry expiry, least-recently-used eviction and single-flight loading: concurrent
+ * misses for the same key share one loader call instead of each going upstream.
+ */
+public class TtlCache<K, V> {
+    private final int maxEntries;
+    private final ToLongFunction<V> ttlMs;
+    private final Map<K, Entry<V>> entries;
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * @param maxEntries upper bound on cached keys; the least recently read entry is evicted first
+     * @param ttlMs      lifetime of a freshly loaded value, chosen per value (e.g. shorter for empty results)
+     */
+    public TtlCache(int maxEntries, ToLongFunction<V> ttlMs) {
+        this.maxEntries = maxEntries;
+        this.ttlMs = ttlMs;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                return size() > TtlCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached value for {@code key}, loading it with {@code loader} when absent or expired. A
+     * {@code null} result is returned to every waiter but never cached. Loader exceptions are rethrown to every
+     * waiter unchanged.
+     */
+    public V get(K key, Supplier<V> loader) {
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            Entry<V> entry = entries.get(key);
+            if (entry != null && entry.expiresAt() > now) {
+                hits.increment();
+                return entry.value();
+            }
+        }
+
+        misses.increment();
+        CompletableFuture<V> pending = new CompletableFuture<>();
+        CompletableFuture<V> leader = inFlight.putIfAbsent(key, pending);
+        if (leader != null) {
+            coalesced.increment();
+            return join(leader);
+        }
+
+        try {
+            V value = loader.get();
+            if (value != null) {
+                synchronized (entries) {
+                    entries.put(key, new Entry<>(value, System.currentTimeMillis() + ttlMs.applyAsLong(value)));
+                }
+            }
+            pending.complete(value);
+            return value;
+        } catch (RuntimeException e) {
+            pending.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, pending);
+        }
+    }
+
+    /**
+     * Returns the cached value for {@code key} if present and unexpired, without loading it or counting a miss.
+     */
+    public V peek(K key) {
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            Entry<V> entry = entries.get(key);
+            return entry != null && entry.expiresAt() > now ? entry.value() : null;
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public long coalescedLoads() {
+        return coalesced.sum();
+    }
+
+    private V join(CompletableFuture<V> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private record Entry<V>(V value, long expiresAt) {
+    }
+}
@@ -0,0 +1,232 @@
+package com.omar.bvgsim.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestClientResponseException;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import com.omar.bvgsim.model.UpstreamStats;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * The one HTTP transport for calls to the BVG API. Connections are pooled and kept alive across calls, HTTP/2 is
+ * negotiated where the server supports it, responses are requested gzip-compressed and decompressed while they are
+ * parsed, and every endpoint has its own timeout. The timeout covers the whole call including the body, so a server
+ * that stalls mid-response cannot hold the calling thread; the exchange is cancelled when it expires. Failures
+ * surface as {@link RestClientException}s.
+ */
+@Service
+public class UpstreamClient {
+    public static final String RADAR = "radar";
+    public static final String TRIP = "trip";
+    public static final String TRIPS = "trips";
+    public static final String VEHICLE_POSITIONS = "vehicle-positions";
+
+    private final HttpClient httpClient;
+    private final String baseUrl;
+    private final Map<String, Duration> timeouts;
+    private final Duration defaultTimeout;
+    private final Map<String, Timing> timings = new ConcurrentHashMap<>();
+    private final MeterRegistry meters;
+
+    public UpstreamClient(
+        @Value("${bvg.api.base-url:https://v6.bvg.transport.rest}") String baseUrl,
+        @Value("${bvg.http.connect-timeout-ms:3000}") long connectTimeoutMs,
+        @Value("${bvg.http.timeout.radar-ms:10000}") long radarTimeoutMs,
+        @Value("${bvg.http.timeout.trip-ms:8000}") long tripTimeoutMs,
+        @Value("${bvg.http.timeout.trips-ms:15000}") long tripsTimeoutMs,
+        @Value("${bvg.http.timeout.vehicle-positions-ms:8000}") long vehiclePositionsTimeoutMs,
+        MeterRegistry meters
+    ) {
+        this.baseUrl = baseUrl;
+        this.meters = meters;
+        this.httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .build();
+        this.timeouts = Map.of(
+            RADAR, Duration.ofMillis(radarTimeoutMs),
+            TRIP, Duration.ofMillis(tripTimeoutMs),
+            TRIPS, Duration.ofMillis(tripsTimeoutMs),
+            VEHICLE_POSITIONS, Duration.ofMillis(vehiclePositionsTimeoutMs)
+        );
+        this.defaultTimeout = Duration.ofMillis(tripTimeoutMs);
+    }
+
+    /**
+     * Starts a URL on the configured API base URL.
+     */
+    public UriComponentsBuilder uriBuilder() {
+        return UriComponentsBuilder.fromHttpUrl(baseUrl);
+    }
+
+    /**
+     * Performs a GET and hands the decompressed response body to {@code reader}. Only the compressed body is
+     * buffered; it is decompressed while {@code reader} consumes it.
+     *
+     * @param endpoint one of the endpoint constants; selects the timeout and the timing bucket
+     */
+    public <T> T get(String endpoint, String url, BodyReader<T> reader) {
+        Duration timeout = timeouts.getOrDefault(endpoint, defaultTimeout);
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+            .timeout(timeout)
+            .header(HttpHeaders.ACCEPT, "application/json")
+            .header(HttpHeaders.ACCEPT_ENCODING, "gzip")
+            .GET()
+            .build();
+
+        Timing timing = timings.computeIfAbsent(endpoint, key -> new Timing(key, meters));
+        long startedAt = System.nanoTime();
+        boolean failed = true;
+        try {
+            HttpResponse<byte[]> response = await(
+                httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray()),
+                timeout,
+                endpoint,
+                url
+            );
+            try (InputStream body = decode(response)) {
+                if (response.statusCode() / 100 != 2) {
+                    throw new RestClientResponseException(
+                        endpoint + " returned HTTP " + response.statusCode(),
+                        response.statusCode(),
+                        "",
+                        null,
+                        null,
+                        null
+                    );
+                }
+
+                T value = reader.read(body);
+                failed = false;
+                return value;
+            }
+        } catch (IOException e) {
+            throw new ResourceAccessException("I/O error on GET request for \"" + url + "\": " + e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ResourceAccessException("Interrupted during GET request for \"" + url + "\"");
+        } finally {
+            timing.record(System.nanoTime() - startedAt, failed);
+        }
+    }
+
+    public Map<String, UpstreamStats> stats() {
+        Map<String, UpstreamStats> stats = new TreeMap<>();
+        timings.forEach((endpoint, timing) -> stats.put(endpoint, timing.snapshot()));
+        return stats;
+    }
+
+    /**
+     * Waits for the complete response until {@code timeout} has passed since the call started, then cancels it.
+     */
+    private static <T> HttpResponse<T> await(
+        CompletableFuture<HttpResponse<T>> pending,
+        Duration timeout,
+        String endpoint,
+        String url
+    ) throws IOException, InterruptedException {
+        try {
+            return pending.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            pending.cancel(true);
+            throw new ResourceAccessException(
+                endpoint + " did not complete within " + timeout.toMillis() + " ms for GET \"" + url + "\""
+            );
+        } catch (InterruptedException e) {
+            pending.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private InputStream decode(HttpResponse<byte[]> response) throws IOException {
+        String encoding = response.headers().firstValue(HttpHeaders.CONTENT_ENCODING).orElse("");
+        InputStream body = new ByteArrayInputStream(response.body());
+        return "gzip".equalsIgnoreCase(encoding) ? new GZIPInputStream(body) : body;
+    }
+
+    @FunctionalInterface
+    public interface BodyReader<T> {
+        T read(InputStream body) throws IOException;
+    }
+
+    private static final class Timing {
+        private final Timer successes;
+        private final Timer errors;
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder totalMillis = new LongAdder();
+        private final AtomicLong maxMillis = new AtomicLong();
+        private volatile long lastMillis;
+
+        private Timing(String endpoint, MeterRegistry meters) {
+            this.successes = timer(endpoint, "success", meters);
+            this.errors = timer(endpoint, "error", meters);
+        }
+
+        private static Timer timer(String endpoint, String outcome, MeterRegistry meters) {
+            return Timer.builder("bvg.upstream.requests")
+                .description("BVG API call latency, including reading the response body")
+                .tag("endpoint", endpoint)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meters);
+        }
+
+        private void record(long nanos, boolean failed) {
+            long millis = nanos / 1_000_000L;
+            calls.increment();
+            if (failed) {
+                failures.increment();
+            }
+            (failed ? errors : successes).record(nanos, TimeUnit.NANOSECONDS);
+            totalMillis.add(millis);
+            maxMillis.accumulateAndGet(millis, Math::max);
+            lastMillis = millis;
+        }
+
+        private UpstreamStats snapshot() {
+            long count = calls.sum();
+            return new UpstreamStats(
+                count,
+                failures.sum(),
+                count == 0 ? 0.0 : (double) totalMillis.sum() / count,
+                maxMillis.get(),
+                lastMillis
+            );
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.omar.bvgsim.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.omar.bvgsim.model.VehicleDelta;
+import com.omar.bvgsim.model.VehicleKeyframe;
+import com.omar.bvgsim.model.VehicleLocation;
+import com.omar.bvgsim.model.VehicleSnapshot;
+
+/**
+ * Keeps one reference state per delta stream (a line id or {@code all}) that every in-sync subscriber of that
+ * stream shares. Each new snapshot version is diffed against the reference once, so deltas are encoded once per
+ * stream rather than once per client. Vehicles that moved less than the threshold stay at their last sent
+ * position until they move further or the next keyframe resets the reference. Streams are versioned by
+ * {@link VehicleSnapshot#sequence()}, which also advances for interpolated snapshots between radar polls.
+ */
+@Service
+public class VehicleDeltaTracker {
+    public static final String KEYFRAME_EVENT = "keyframe";
+    public static final String DELTA_EVENT = "delta";
+
+    private final VehicleFrameEncoder frames;
+    private final long keyframeIntervalMs;
+    private final double minMoveMeters;
+    private final Map<String, StreamState> streams = new ConcurrentHashMap<>();
+
+    public VehicleDeltaTracker(
+        VehicleFrameEncoder frames,
+        @Value("${bvg.stream.delta.keyframe-interval-ms:60000}") long keyframeIntervalMs,
+        @Value("${bvg.stream.delta.min-move-meters:10}") double minMoveMeters
+    ) {
+        this.frames = frames;
+        this.keyframeIntervalMs = keyframeIntervalMs;
+        this.minMoveMeters = minMoveMeters;
+    }
+
+    /**
+     * Hands the current keyframe of a stream to {@code register} under the stream lock, so a joining subscriber
+     * queues its keyframe and registers before the next delta of that stream can be computed.
+     */
+    public void join(
+        String stream,
+        VehicleSnapshot snapshot,
+        List<VehicleLocation> vehicles,
+        Consumer<OutboundFrame> register
+    ) {
+        StreamState state = streams.computeIfAbsent(stream, StreamState::new);
+        synchronized (state) {
+            if (state.version < 0) {
+                state.reset(snapshot.sequence(), vehicles);
+            }
+            register.accept(state.keyframe());
+        }
+    }
+
+    /**
+     * Moves a stream to {@code snapshot}. Returns the frame to send to its subscribers, or {@code null} when the
+     * snapshot is not newer than the stream, e.g. a subscriber joined from a later one, or nothing moved past the
+     * threshold.
+     */
+    public OutboundFrame advance(String stream, VehicleSnapshot snapshot, List<VehicleLocation> vehicles) {
+        StreamState state = streams.computeIfAbsent(stream, StreamState::new);
+        synchronized (state) {
+            if (state.version >= snapshot.sequence()) {
+                return null;
+            }
+
+            long now = System.currentTimeMillis();
+            if (state.version < 0 || now - state.keyframeAt >= keyframeIntervalMs) {
+                state.reset(snapshot.sequence(), vehicles);
+                return state.keyframe();
+            }
+
+            return state.applyDelta(snapshot.sequence(), vehicles);
+        }
+    }
+
+    public void retainStreams(Set<String> activeStreams) {
+        streams.keySet().retainAll(activeStreams);
+    }
+
+    private final class StreamState {
+        private final String stream;
+        private final Map<String, VehicleLocation> reference = new LinkedHashMap<>();
+        private long version = -1L;
+        private long keyframeAt;
+        private OutboundFrame keyframe;
+
+        private StreamState(String stream) {
+            this.stream = stream;
+        }
+
+        private void reset(long snapshotVersion, List<VehicleLocation> vehicles) {
+            reference.clear();
+            vehicles.forEach(vehicle -> reference.put(vehicle.vehicleId(), vehicle));
+            version = snapshotVersion;
+            keyframeAt = System.currentTimeMillis();
+            keyframe = null;
+        }
+
+        private OutboundFrame keyframe() {
+            if (keyframe == null) {
+                VehicleKeyframe value = new VehicleKeyframe(stream, version, List.copyOf(reference.values()));
+                keyframe = new OutboundFrame(KEYFRAME_EVENT, Long.toString(version), frames.encodeValue(value), null);
+            }
+            return keyframe;
+        }
+
+        private OutboundFrame applyDelta(long snapshotVersion, List<VehicleLocation> vehicles) {
+            List<VehicleLocation> upserts = new ArrayList<>();
+            Map<String, VehicleLocation> remaining = new HashMap<>(reference);
+
+            for (VehicleLocation vehicle : vehicles) {
+                VehicleLocation previous = remaining.remove(vehicle.vehicleId());
+                if (previous == null || hasChanged(previous, vehicle)) {
+                    upserts.add(vehicle);
+                    reference.put(vehicle.vehicleId(), vehicle);
+                }
+            }
+
+            List<String> removed = new ArrayList<>(remaining.keySet());
+            removed.forEach(reference::remove);
+
+            if (upserts.isEmpty() && removed.isEmpty()) {
+                return null;
+            }
+
+            long baseVersion = version;
+            version = snapshotVersion;
+            keyframe = null;
+            VehicleDelta delta = new VehicleDelta(stream, baseVersion, snapshotVersion, upserts, removed);
+            return new OutboundFrame(DELTA_EVENT, Long.toString(snapshotVersion), frames.encodeValue(delta), null);
+        }
+
+        private boolean hasChanged(VehicleLocation previous, VehicleLocation current) {
+            if (!Objects.equals(previous.destination(), current.destination())) {
+                return true;
+            }
+            return GeoDistance.meters(previous.lat(), previous.lon(), current.lat(), current.lon()) >= minMoveMeters;
+        }
+    }
+}
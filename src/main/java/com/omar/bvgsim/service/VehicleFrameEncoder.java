@@ -0,0 +1,115 @@
+package com.omar.bvgsim.service;
+
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.omar.bvgsim.model.VehicleLocation;
+import com.omar.bvgsim.model.VehicleSnapshot;
+
+/**
+ * Encodes vehicle batches into JSON frames for the live stream. Frames for a snapshot are encoded once per
+ * stream key and reused for every subscriber and every tick until the next snapshot, by sequence, arrives.
+ */
+@Service
+public class VehicleFrameEncoder {
+    private final ObjectMapper objectMapper;
+    private final ObjectWriter batchWriter;
+    private final ObjectWriter vehicleWriter;
+    private volatile FrameCache cache = new FrameCache(-1L, new ConcurrentHashMap<>());
+    private volatile EncodedVehicles encodedVehicles = new EncodedVehicles(-1L, List.of());
+
+    public VehicleFrameEncoder(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        this.batchWriter = objectMapper.writerFor(new TypeReference<List<VehicleLocation>>() { });
+        this.vehicleWriter = objectMapper.writerFor(VehicleLocation.class);
+    }
+
+    public byte[] frameFor(VehicleSnapshot snapshot, String streamKey, List<VehicleLocation> vehicles) {
+        FrameCache current = cache;
+        if (current.sequence() != snapshot.sequence()) {
+            current = new FrameCache(snapshot.sequence(), new ConcurrentHashMap<>());
+            cache = current;
+        }
+
+        return current.frames().computeIfAbsent(streamKey, key -> encode(vehicles));
+    }
+
+    public byte[] encode(List<VehicleLocation> vehicles) {
+        try {
+            return batchWriter.writeValueAsBytes(vehicles);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns each vehicle of the snapshot encoded on its own, in {@link VehicleSnapshot#vehicles()} order, so
+     * per-subscriber batches can be assembled by concatenation instead of re-serialising.
+     */
+    public List<byte[]> encodedVehicles(VehicleSnapshot snapshot) {
+        EncodedVehicles current = encodedVehicles;
+        if (current.sequence() == snapshot.sequence()) {
+            return current.vehicles();
+        }
+
+        List<byte[]> encoded = new ArrayList<>(snapshot.vehicles().size());
+        try {
+            for (VehicleLocation vehicle : snapshot.vehicles()) {
+                encoded.add(vehicleWriter.writeValueAsBytes(vehicle));
+            }
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        current = new EncodedVehicles(snapshot.sequence(), List.copyOf(encoded));
+        encodedVehicles = current;
+        return current.vehicles();
+    }
+
+    /**
+     * Joins individually encoded vehicles into one JSON array frame.
+     */
+    public byte[] joinBatch(List<byte[]> encoded) {
+        int size = 2 + Math.max(0, encoded.size() - 1);
+        for (byte[] vehicle : encoded) {
+            size += vehicle.length;
+        }
+
+        byte[] frame = new byte[size];
+        int offset = 0;
+        frame[offset++] = '[';
+        for (int i = 0; i < encoded.size(); i++) {
+            if (i > 0) {
+                frame[offset++] = ',';
+            }
+            byte[] vehicle = encoded.get(i);
+            System.arraycopy(vehicle, 0, frame, offset, vehicle.length);
+            offset += vehicle.length;
+        }
+        frame[offset] = ']';
+        return frame;
+    }
+
+    public byte[] encodeValue(Object value) {
+        try {
+            return objectMapper.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private record FrameCache(long sequence, Map<String, byte[]> frames) {
+    }
+
+    private record EncodedVehicles(long sequence, List<byte[]> vehicles) {
+    }
+}
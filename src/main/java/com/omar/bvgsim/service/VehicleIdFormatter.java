@@ -11,25 +11,20 @@ public final class VehicleIdFormatter {
     }
 
     public static String format(String lineId, String tripId, int sequenceNumber, String mode) {
-        String suffix;
+        return LineCatalog.modeName(mode, "Vehicle") + " " + lineId + "-" + suffix(tripId, sequenceNumber);
+    }
+
+    /**
+     * Formats the id of a vehicle on an interned line, reusing the line's precomputed display name as the prefix.
+     */
+    public static String format(LineCatalog.Line line, String tripId, int sequenceNumber) {
+        return line.displayName() + "-" + suffix(tripId, sequenceNumber);
+    }
 
+    private static String suffix(String tripId, int sequenceNumber) {
         if (tripId != null && !tripId.isBlank()) {
-            suffix = Integer.toUnsignedString(tripId.hashCode(), 36).toUpperCase(Locale.ROOT);
-        } else {
-            suffix = String.format(Locale.ROOT, "%02d", sequenceNumber);
+            return Integer.toUnsignedString(tripId.hashCode(), 36).toUpperCase(Locale.ROOT);
         }
-
-        String prefix = switch (mode == null ? "" : mode) {
-            case "subway" -> "U-Bahn";
-            case "suburban" -> "S-Bahn";
-            case "tram" -> "Tram";
-            case "ferry" -> "Ferry";
-            case "regional" -> "Regional";
-            case "express" -> "Express";
-            case "bus" -> "Bus";
-            default -> "Vehicle";
-        };
-
-        return prefix + " " + lineId + "-" + suffix;
+        return String.format(Locale.ROOT, "%02d", sequenceNumber);
     }
 }
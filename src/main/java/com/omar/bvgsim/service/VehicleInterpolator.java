@@ -0,0 +1,222 @@
+package com.omar.bvgsim.service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.omar.bvgsim.model.VehicleLocation;
+import com.omar.bvgsim.model.VehicleSnapshot;
+
+/**
+ * Turns the radar snapshot, which only changes once per poll, into smoothly moving positions for every broadcast
+ * tick. Each trip keeps its last two fixes with the speed and heading between them. When the trip's polyline is
+ * already in the trip cache, the vehicle is projected onto it and moved along the route; otherwise it is dead
+ * reckoned in a straight line. After a new fix the shown position eases from where the vehicle was last shown, so
+ * markers neither jump nor stall. No upstream calls are made here.
+ */
+@Service
+public class VehicleInterpolator {
+    private final VehicleSnapshotService snapshots;
+    private final BvgRadarClient radarClient;
+    private final boolean enabled;
+    private final long maxExtrapolationMs;
+    private final long blendMs;
+    private final double maxSpeedMps;
+    private final double maxRouteOffsetMeters;
+    private final Map<String, Track> tracks = new HashMap<>();
+
+    private long ingestedVersion = -1L;
+
+    public VehicleInterpolator(
+        VehicleSnapshotService snapshots,
+        BvgRadarClient radarClient,
+        @Value("${bvg.interpolation.enabled:true}") boolean enabled,
+        @Value("${bvg.interpolation.max-extrapolation-ms:10000}") long maxExtrapolationMs,
+        @Value("${bvg.interpolation.blend-ms:3000}") long blendMs,
+        @Value("${bvg.interpolation.max-speed-mps:40}") double maxSpeedMps,
+        @Value("${bvg.interpolation.max-route-offset-meters:150}") double maxRouteOffsetMeters
+    ) {
+        this.snapshots = snapshots;
+        this.radarClient = radarClient;
+        this.enabled = enabled;
+        this.maxExtrapolationMs = maxExtrapolationMs;
+        this.blendMs = blendMs;
+        this.maxSpeedMps = maxSpeedMps;
+        this.maxRouteOffsetMeters = maxRouteOffsetMeters;
+    }
+
+    /**
+     * Returns {@code base} with every vehicle moved to its estimated position at the current time, as a derived
+     * snapshot with its own sequence number. Returns {@code base} itself when interpolation is disabled.
+     */
+    public synchronized VehicleSnapshot smooth(VehicleSnapshot base) {
+        if (!enabled || base.isEmpty()) {
+            return base;
+        }
+
+        long now = System.currentTimeMillis();
+        if (base.version() != ingestedVersion) {
+            ingest(base, now);
+            ingestedVersion = base.version();
+        }
+
+        Instant timestamp = Instant.ofEpochMilli(now);
+        List<VehicleLocation> vehicles = new ArrayList<>(base.vehicles().size());
+        for (VehicleLocation vehicle : base.vehicles()) {
+            Track track = vehicle.tripId() == null ? null : tracks.get(vehicle.tripId());
+            if (track == null) {
+                vehicles.add(vehicle);
+                continue;
+            }
+
+            track.advance(now);
+            vehicles.add(new VehicleLocation(
+                vehicle.routeId(),
+                vehicle.vehicleId(),
+                vehicle.tripId(),
+                vehicle.mode(),
+                track.shownLat,
+                track.shownLon,
+                timestamp,
+                vehicle.destination()
+            ));
+        }
+        return snapshots.derive(base, vehicles);
+    }
+
+    private void ingest(VehicleSnapshot base, long now) {
+        for (VehicleLocation vehicle : base.vehicles()) {
+            if (vehicle.tripId() == null) {
+                continue;
+            }
+
+            Track track = tracks.get(vehicle.tripId());
+            if (track == null) {
+                track = new Track(vehicle.lat(), vehicle.lon(), now);
+                tracks.put(vehicle.tripId(), track);
+            }
+            track.seenVersion = base.version();
+            if (track.polyline == null) {
+                track.attachPolyline(radarClient.cachedTrip(vehicle.tripId()));
+            }
+            track.fix(vehicle.lat(), vehicle.lon(), now);
+        }
+
+        tracks.values().removeIf(track -> track.seenVersion != base.version());
+    }
+
+    private final class Track {
+        private double prevLat;
+        private double prevLon;
+        private long prevAt;
+        private double lat;
+        private double lon;
+        private long fixAt;
+        private double speed;
+        private double heading;
+
+        private TripPolyline polyline;
+        private double fixDistance = Double.NaN;
+        private double routeSpeed;
+
+        private double startLat;
+        private double startLon;
+        private double startDistance = Double.NaN;
+        private double shownLat;
+        private double shownLon;
+        private double shownDistance = Double.NaN;
+        private long seenVersion;
+
+        private Track(double lat, double lon, long now) {
+            this.prevLat = lat;
+            this.prevLon = lon;
+            this.prevAt = now;
+            this.lat = lat;
+            this.lon = lon;
+            this.fixAt = now;
+            this.shownLat = lat;
+            this.shownLon = lon;
+        }
+
+        private void attachPolyline(Map<String, Object> trip) {
+            if (trip == null) {
+                return;
+            }
+            polyline = TripPolyline.fromTrip(trip);
+            if (polyline != null) {
+                fixDistance = snap(lat, lon);
+                shownDistance = fixDistance;
+            }
+        }
+
+        private void fix(double nextLat, double nextLon, long now) {
+            startLat = shownLat;
+            startLon = shownLon;
+            startDistance = shownDistance;
+            if (nextLat == lat && nextLon == lon) {
+                speed = 0.0;
+                routeSpeed = 0.0;
+                fixAt = now;
+                return;
+            }
+
+            prevLat = lat;
+            prevLon = lon;
+            prevAt = fixAt;
+            lat = nextLat;
+            lon = nextLon;
+            fixAt = now;
+
+            double seconds = Math.max(1L, fixAt - prevAt) / 1000.0;
+            double meters = GeoDistance.meters(prevLat, prevLon, lat, lon);
+            speed = meters / seconds <= maxSpeedMps ? meters / seconds : 0.0;
+            heading = GeoDistance.bearing(prevLat, prevLon, lat, lon);
+
+            double previousDistance = fixDistance;
+            fixDistance = polyline != null ? snap(lat, lon) : Double.NaN;
+            if (Double.isNaN(fixDistance) || Double.isNaN(previousDistance) || fixDistance < previousDistance) {
+                routeSpeed = 0.0;
+            } else {
+                routeSpeed = Math.min(maxSpeedMps, (fixDistance - previousDistance) / seconds);
+            }
+        }
+
+        private double snap(double pointLat, double pointLon) {
+            double distance = polyline.project(pointLat, pointLon);
+            double[] snapped = polyline.pointAt(distance);
+            return GeoDistance.meters(pointLat, pointLon, snapped[0], snapped[1]) <= maxRouteOffsetMeters
+                ? distance
+                : Double.NaN;
+        }
+
+        private void advance(long now) {
+            long elapsed = Math.max(0L, now - fixAt);
+            double seconds = Math.min(elapsed, maxExtrapolationMs) / 1000.0;
+            double blend = blendMs <= 0L ? 1.0 : Math.min(1.0, elapsed / (double) blendMs);
+
+            if (!Double.isNaN(fixDistance)) {
+                double estimate = Math.min(polyline.length(), fixDistance + routeSpeed * seconds);
+                double distance = Double.isNaN(startDistance)
+                    ? estimate
+                    : startDistance + (estimate - startDistance) * blend;
+                double[] point = polyline.pointAt(distance);
+                shownLat = point[0];
+                shownLon = point[1];
+                shownDistance = distance;
+                return;
+            }
+
+            double[] estimate = speed > 0.0
+                ? GeoDistance.offset(lat, lon, heading, speed * seconds)
+                : new double[] { lat, lon };
+            shownLat = startLat + (estimate[0] - startLat) * blend;
+            shownLon = startLon + (estimate[1] - startLon) * blend;
+            shownDistance = Double.NaN;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.omar.bvgsim.service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.stereotype.Service;
+
+import com.omar.bvgsim.model.LineSummary;
+import com.omar.bvgsim.model.RadarMovement;
+import com.omar.bvgsim.model.VehicleLocation;
+import com.omar.bvgsim.model.VehicleSnapshot;
+import com.omar.bvgsim.service.LineCatalog.Line;
+
+/**
+ * Holds the one shared {@link VehicleSnapshot}. {@link RadarRefresher} publishes a new snapshot per radar poll, so
+ * every endpoint and the broadcaster read the same prebuilt indexes without reprocessing movements or ever
+ * waiting on the upstream call.
+ */
+@Service
+public class VehicleSnapshotService {
+    private static final Comparator<VehicleLocation> BY_VEHICLE_ID = Comparator.comparing(VehicleLocation::vehicleId);
+
+    private static final String INSTANCE_ID = Long.toString(System.currentTimeMillis(), 36);
+
+    private final AtomicLong versions = new AtomicLong();
+    private final AtomicLong sequences = new AtomicLong();
+    private volatile VehicleSnapshot current = VehicleSnapshot.EMPTY;
+    private volatile VehicleSnapshot previous = VehicleSnapshot.EMPTY;
+    private volatile long lastReadAt = 0L;
+
+    /**
+     * Returns the latest snapshot on behalf of a client request. Reads are recorded so the refresher can poll
+     * faster while clients are active.
+     */
+    public VehicleSnapshot current() {
+        lastReadAt = System.currentTimeMillis();
+        return current;
+    }
+
+    /**
+     * Returns the latest snapshot without counting as client demand, for internal schedulers.
+     */
+    public VehicleSnapshot latest() {
+        return current;
+    }
+
+    /**
+     * Returns the published snapshot that the latest one replaced, for consumers that publish differences.
+     */
+    public VehicleSnapshot previous() {
+        return previous;
+    }
+
+    /**
+     * Strong entity tag for a representation of {@code snapshot}. Versions restart with the process, so the tag
+     * also carries a per-process id.
+     */
+    public static String etag(VehicleSnapshot snapshot, String representation) {
+        return "\"" + INSTANCE_ID + "-" + snapshot.version() + "-" + representation + "\"";
+    }
+
+    public long lastReadAt() {
+        return lastReadAt;
+    }
+
+    public long ageMillis() {
+        VehicleSnapshot snapshot = current;
+        return snapshot == VehicleSnapshot.EMPTY
+            ? -1L
+            : System.currentTimeMillis() - snapshot.createdAt().toEpochMilli();
+    }
+
+    /**
+     * Indexes a fresh radar result and makes it the current snapshot in one atomic swap.
+     */
+    public VehicleSnapshot publish(List<RadarMovement> movements) {
+        VehicleSnapshot snapshot = build(movements, versions.incrementAndGet());
+        previous = current;
+        current = snapshot;
+        return snapshot;
+    }
+
+    /**
+     * Builds a snapshot from {@code vehicles}, which replace the vehicles of {@code base} one for one and in the
+     * same order, e.g. with interpolated positions. The version and line summaries of {@code base} are carried
+     * over; only the sequence number is fresh. The result is not published, so HTTP readers keep seeing radar
+     * positions.
+     */
+    public VehicleSnapshot derive(VehicleSnapshot base, List<VehicleLocation> vehicles) {
+        Map<String, List<VehicleLocation>> byLine = new HashMap<>();
+        Map<String, List<VehicleLocation>> byMode = new HashMap<>();
+        Map<String, VehicleLocation> byTripId = new HashMap<>();
+        for (VehicleLocation location : vehicles) {
+            byLine.computeIfAbsent(location.routeId(), key -> new ArrayList<>()).add(location);
+            byMode.computeIfAbsent(location.mode(), key -> new ArrayList<>()).add(location);
+            if (location.tripId() != null) {
+                byTripId.putIfAbsent(location.tripId(), location);
+            }
+        }
+
+        return new VehicleSnapshot(
+            base.version(),
+            sequences.incrementAndGet(),
+            Instant.now(),
+            List.copyOf(vehicles),
+            freeze(byLine),
+            freeze(byMode),
+            Map.copyOf(byTripId),
+            base.lines()
+        );
+    }
+
+    private VehicleSnapshot build(List<RadarMovement> movements, long version) {
+        Instant createdAt = Instant.now();
+        List<VehicleLocation> vehicles = new ArrayList<>(movements.size());
+        Map<String, List<VehicleLocation>> byLine = new HashMap<>();
+        Map<String, List<VehicleLocation>> byMode = new HashMap<>();
+        Map<String, VehicleLocation> byTripId = new HashMap<>();
+        List<Line> seenLines = new ArrayList<>();
+        int[] lineCounts = new int[LineCatalog.size() + 16];
+        int[] vehicleSequences = new int[lineCounts.length];
+
+        for (RadarMovement movement : movements) {
+            Line line = LineCatalog.line(movement.lineName(), movement.lineProduct(), movement.lineMode());
+            if (line == null) {
+                continue;
+            }
+            if (line.id() >= lineCounts.length) {
+                lineCounts = Arrays.copyOf(lineCounts, Math.max(line.id() + 1, lineCounts.length * 2));
+                vehicleSequences = Arrays.copyOf(vehicleSequences, lineCounts.length);
+            }
+            if (lineCounts[line.id()]++ == 0) {
+                seenLines.add(line);
+            }
+
+            VehicleLocation location = toVehicleLocation(line, movement, vehicleSequences, createdAt);
+            if (location == null) {
+                continue;
+            }
+
+            vehicles.add(location);
+            byLine.computeIfAbsent(location.routeId(), key -> new ArrayList<>()).add(location);
+            byMode.computeIfAbsent(location.mode(), key -> new ArrayList<>()).add(location);
+            if (location.tripId() != null) {
+                byTripId.putIfAbsent(location.tripId(), location);
+            }
+        }
+
+        seenLines.sort(LineCatalog.ORDER);
+        List<LineSummary> lines = new ArrayList<>(seenLines.size());
+        List<VehicleLocation> sorted = new ArrayList<>(vehicles.size());
+        Set<String> placed = new HashSet<>();
+        for (Line line : seenLines) {
+            lines.add(new LineSummary(
+                line.name(),
+                line.displayName(),
+                line.mode(),
+                lineCounts[line.id()],
+                line.color()
+            ));
+
+            // Vehicles are ordered by line, then by vehicle id; lines sharing a name across modes share a group.
+            List<VehicleLocation> group = byLine.get(line.name());
+            if (group != null && placed.add(line.name())) {
+                group.sort(BY_VEHICLE_ID);
+                sorted.addAll(group);
+            }
+        }
+
+        return new VehicleSnapshot(
+            version,
+            sequences.incrementAndGet(),
+            createdAt,
+            List.copyOf(sorted),
+            freeze(byLine),
+            freeze(byMode),
+            Map.copyOf(byTripId),
+            List.copyOf(lines)
+        );
+    }
+
+    private static Map<String, List<VehicleLocation>> freeze(Map<String, List<VehicleLocation>> index) {
+        Map<String, List<VehicleLocation>> frozen = new HashMap<>(index.size() * 2);
+        index.forEach((key, values) -> frozen.put(key, List.copyOf(values)));
+        return Collections.unmodifiableMap(frozen);
+    }
+
+    private VehicleLocation toVehicleLocation(
+        Line line,
+        RadarMovement movement,
+        int[] vehicleSequences,
+        Instant timestamp
+    ) {
+        if (!movement.hasLocation()) {
+            return null;
+        }
+
+        String lineId = line.name();
+        String originalTripId = movement.tripId();
+        String destination = movement.direction();
+        if (destination == null || destination.trim().isEmpty()) {
+            destination = "Unknown destination";
+        }
+
+        int sequenceNumber = ++vehicleSequences[line.id()];
+        String vehicleId = VehicleIdFormatter.format(line, originalTripId, sequenceNumber);
+
+        return new VehicleLocation(
+            lineId,
+            vehicleId,
+            originalTripId,
+            line.mode(),
+            movement.latitude(),
+            movement.longitude(),
+            timestamp,
+            destination
+        );
+    }
+}
@@ -0,0 +1,250 @@
+package com.omar.bvgsim.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Predicate;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.omar.bvgsim.model.NearbyVehicle;
+import com.omar.bvgsim.model.VehicleInfo;
+import com.omar.bvgsim.model.VehicleLocation;
+import com.omar.bvgsim.model.VehicleSnapshot;
+
+/**
+ * Uniform grid over the vehicles of the current snapshot, used for nearest-vehicle and viewport queries. Cells are
+ * roughly 250 m square at Berlin's latitude and laid out on a fixed global lattice, so other components can bucket
+ * coordinates into the same cells. The grid is rebuilt with one counting pass whenever the snapshot version changes.
+ * It spans the vehicles' bounding box clipped to {@link BvgRadarClient#BERLIN_AREA}; vehicles outside the area go
+ * into the nearest edge cell, so one bad coordinate cannot blow up the cell array.
+ */
+@Service
+public class VehicleSpatialIndex {
+    static final double CELL_LAT_DEGREES = 0.00225;
+    static final double CELL_LON_DEGREES = 0.0037;
+    private static final double CELL_MIN_METERS = 245.0;
+    private static final int AREA_MIN_ROW = cellRow(BvgRadarClient.BERLIN_AREA.south());
+    private static final int AREA_MAX_ROW = cellRow(BvgRadarClient.BERLIN_AREA.north());
+    private static final int AREA_MIN_COL = cellCol(BvgRadarClient.BERLIN_AREA.west());
+    private static final int AREA_MAX_COL = cellCol(BvgRadarClient.BERLIN_AREA.east());
+
+    @Autowired
+    private VehicleSnapshotService snapshots;
+
+    private volatile Grid grid = Grid.build(VehicleSnapshot.EMPTY);
+
+    static int cellRow(double lat) {
+        return (int) Math.floor(lat / CELL_LAT_DEGREES);
+    }
+
+    static int cellCol(double lon) {
+        return (int) Math.floor(lon / CELL_LON_DEGREES);
+    }
+
+    /**
+     * Returns up to {@code limit} vehicles matching {@code filter}, closest first.
+     */
+    public List<NearbyVehicle> nearest(double lat, double lon, int limit, Predicate<VehicleLocation> filter) {
+        return current().nearest(lat, lon, limit, filter);
+    }
+
+    /**
+     * Returns every vehicle matching {@code filter} inside the given box.
+     */
+    public List<VehicleLocation> within(
+        double north,
+        double west,
+        double south,
+        double east,
+        Predicate<VehicleLocation> filter
+    ) {
+        return current().within(north, west, south, east, filter);
+    }
+
+    private Grid current() {
+        VehicleSnapshot snapshot = snapshots.current();
+        Grid latest = grid;
+        if (latest.version == snapshot.version()) {
+            return latest;
+        }
+
+        synchronized (this) {
+            latest = grid;
+            if (latest.version != snapshot.version()) {
+                latest = Grid.build(snapshot);
+                grid = latest;
+            }
+            return latest;
+        }
+    }
+
+    /**
+     * Compressed-row layout: the vehicles of cell {@code i} are {@code entries[cellStart[i] .. cellStart[i + 1])}.
+     */
+    private static final class Grid {
+        private final long version;
+        private final List<VehicleLocation> vehicles;
+        private final int minRow;
+        private final int minCol;
+        private final int rows;
+        private final int cols;
+        private final int[] cellStart;
+        private final int[] entries;
+
+        private Grid(long version, List<VehicleLocation> vehicles, int minRow, int minCol, int rows, int cols) {
+            this.version = version;
+            this.vehicles = vehicles;
+            this.minRow = minRow;
+            this.minCol = minCol;
+            this.rows = rows;
+            this.cols = cols;
+            this.cellStart = new int[rows * cols + 1];
+            this.entries = new int[vehicles.size()];
+        }
+
+        static Grid build(VehicleSnapshot snapshot) {
+            List<VehicleLocation> vehicles = snapshot.vehicles();
+            if (vehicles.isEmpty()) {
+                return new Grid(snapshot.version(), vehicles, 0, 0, 1, 1);
+            }
+
+            int minRow = Integer.MAX_VALUE;
+            int maxRow = Integer.MIN_VALUE;
+            int minCol = Integer.MAX_VALUE;
+            int maxCol = Integer.MIN_VALUE;
+            for (VehicleLocation vehicle : vehicles) {
+                int row = cellRow(vehicle.lat());
+                int col = cellCol(vehicle.lon());
+                minRow = Math.min(minRow, row);
+                maxRow = Math.max(maxRow, row);
+                minCol = Math.min(minCol, col);
+                maxCol = Math.max(maxCol, col);
+            }
+            minRow = Math.max(AREA_MIN_ROW, Math.min(AREA_MAX_ROW, minRow));
+            maxRow = Math.max(AREA_MIN_ROW, Math.min(AREA_MAX_ROW, maxRow));
+            minCol = Math.max(AREA_MIN_COL, Math.min(AREA_MAX_COL, minCol));
+            maxCol = Math.max(AREA_MIN_COL, Math.min(AREA_MAX_COL, maxCol));
+
+            Grid grid = new Grid(snapshot.version(), vehicles, minRow, minCol, maxRow - minRow + 1, maxCol - minCol + 1);
+            int[] cellOf = new int[vehicles.size()];
+            for (int i = 0; i < vehicles.size(); i++) {
+                cellOf[i] = grid.cellIndex(cellRow(vehicles.get(i).lat()), cellCol(vehicles.get(i).lon()));
+                grid.cellStart[cellOf[i] + 1]++;
+            }
+            for (int cell = 0; cell < grid.rows * grid.cols; cell++) {
+                grid.cellStart[cell + 1] += grid.cellStart[cell];
+            }
+            int[] fill = grid.cellStart.clone();
+            for (int i = 0; i < vehicles.size(); i++) {
+                grid.entries[fill[cellOf[i]]++] = i;
+            }
+            return grid;
+        }
+
+        List<NearbyVehicle> nearest(double lat, double lon, int limit, Predicate<VehicleLocation> filter) {
+            if (vehicles.isEmpty() || limit <= 0) {
+                return List.of();
+            }
+
+            PriorityQueue<Candidate> best = new PriorityQueue<>(Comparator.comparingDouble(Candidate::distance).reversed());
+            int centerRow = clamp(cellRow(lat) - minRow, rows);
+            int centerCol = clamp(cellCol(lon) - minCol, cols);
+            int maxRing = Math.max(rows, cols);
+
+            for (int ring = 0; ring <= maxRing; ring++) {
+                for (int row = centerRow - ring; row <= centerRow + ring; row++) {
+                    if (row < 0 || row >= rows) {
+                        continue;
+                    }
+                    boolean edgeRow = row == centerRow - ring || row == centerRow + ring;
+                    int step = edgeRow ? 1 : Math.max(1, 2 * ring);
+                    for (int col = centerCol - ring; col <= centerCol + ring; col += step) {
+                        if (col >= 0 && col < cols) {
+                            collect(row * cols + col, lat, lon, limit, filter, best);
+                        }
+                    }
+                }
+
+                // Every cell beyond this ring is at least ring * cell size away from the query point.
+                if (best.size() == limit && best.peek().distance() <= ring * CELL_MIN_METERS) {
+                    break;
+                }
+            }
+
+            List<NearbyVehicle> result = new ArrayList<>(best.size());
+            while (!best.isEmpty()) {
+                Candidate candidate = best.poll();
+                result.add(new NearbyVehicle(VehicleInfo.from(candidate.vehicle()), candidate.distance()));
+            }
+            Collections.reverse(result);
+            return result;
+        }
+
+        List<VehicleLocation> within(double north, double west, double south, double east, Predicate<VehicleLocation> filter) {
+            if (vehicles.isEmpty()) {
+                return List.of();
+            }
+
+            // Clamped rather than clipped: a box beyond the grid still scans the edge cells holding outliers.
+            int fromRow = clamp(cellRow(Math.min(south, north)) - minRow, rows);
+            int toRow = clamp(cellRow(Math.max(south, north)) - minRow, rows);
+            int fromCol = clamp(cellCol(Math.min(west, east)) - minCol, cols);
+            int toCol = clamp(cellCol(Math.max(west, east)) - minCol, cols);
+
+            List<VehicleLocation> result = new ArrayList<>();
+            for (int row = fromRow; row <= toRow; row++) {
+                for (int col = fromCol; col <= toCol; col++) {
+                    int cell = row * cols + col;
+                    for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                        VehicleLocation vehicle = vehicles.get(entries[i]);
+                        if (vehicle.lat() >= Math.min(south, north) && vehicle.lat() <= Math.max(south, north)
+                            && vehicle.lon() >= Math.min(west, east) && vehicle.lon() <= Math.max(west, east)
+                            && filter.test(vehicle)) {
+                            result.add(vehicle);
+                        }
+                    }
+                }
+            }
+            return result;
+        }
+
+        private void collect(
+            int cell,
+            double lat,
+            double lon,
+            int limit,
+            Predicate<VehicleLocation> filter,
+            PriorityQueue<Candidate> best
+        ) {
+            for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                VehicleLocation vehicle = vehicles.get(entries[i]);
+                if (!filter.test(vehicle)) {
+                    continue;
+                }
+
+                double distance = GeoDistance.meters(lat, lon, vehicle.lat(), vehicle.lon());
+                if (best.size() < limit) {
+                    best.add(new Candidate(vehicle, distance));
+                } else if (distance < best.peek().distance()) {
+                    best.poll();
+                    best.add(new Candidate(vehicle, distance));
+                }
+            }
+        }
+
+        private int cellIndex(int row, int col) {
+            return clamp(row - minRow, rows) * cols + clamp(col - minCol, cols);
+        }
+
+        private static int clamp(int value, int size) {
+            return Math.max(0, Math.min(size - 1, value));
+        }
+    }
+
+    private record Candidate(VehicleLocation vehicle, double distance) {
+    }
+}
@@ -0,0 +1,188 @@
+package com.omar.bvgsim.service;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.omar.bvgsim.model.VehicleLocation;
+import com.omar.bvgsim.model.Viewport;
+
+/**
+ * Index of viewport-scoped stream subscriptions. Each subscription's box (plus margin) is registered in every coarse
+ * cell it overlaps, so matching a vehicle to interested subscribers is one cell lookup instead of a scan over all
+ * subscribers. Coarse cells are four by four cells of the {@link VehicleSpatialIndex} lattice (about 1 km).
+ */
+@Service
+public class ViewportIndex {
+    private static final int CELL_FACTOR = 4;
+    private static final int MAX_CELLS_PER_VIEWPORT = 4096;
+    private static final String ALL_ROUTES_ID = "all";
+
+    private final double marginFraction;
+    private final Map<String, Registration> registrations = new ConcurrentHashMap<>();
+    private final Map<Long, Set<Registration>> cells = new ConcurrentHashMap<>();
+    private final Set<Registration> oversized = ConcurrentHashMap.newKeySet();
+
+    public ViewportIndex(@Value("${bvg.stream.viewport-margin:0.2}") double marginFraction) {
+        this.marginFraction = marginFraction;
+    }
+
+    String register(StreamSubscriber subscriber, Set<String> routeIds, Viewport viewport) {
+        Registration registration = new Registration(UUID.randomUUID().toString(), subscriber, routeIds);
+        registrations.put(registration.id, registration);
+        place(registration, viewport);
+        return registration.id;
+    }
+
+    /**
+     * Moves a subscription to a new viewport. Returns false when the subscription is unknown or already closed.
+     */
+    public boolean update(String subscriptionId, Viewport viewport) {
+        Registration registration = registrations.get(subscriptionId);
+        if (registration == null) {
+            return false;
+        }
+
+        place(registration, viewport);
+        return true;
+    }
+
+    void remove(String subscriptionId) {
+        Registration registration = registrations.remove(subscriptionId);
+        if (registration != null) {
+            synchronized (registration) {
+                registration.closed = true;
+                unplace(registration);
+            }
+        }
+    }
+
+    boolean isEmpty() {
+        return registrations.isEmpty();
+    }
+
+    /**
+     * Groups the encoded vehicles by the subscribers whose viewport and lines they match. Every registered
+     * subscriber gets a batch, empty when nothing is in view, so its next frame replaces the vehicles it showed.
+     */
+    Map<StreamSubscriber, List<byte[]>> match(List<VehicleLocation> vehicles, List<byte[]> encoded) {
+        Map<StreamSubscriber, List<byte[]>> batches = new IdentityHashMap<>();
+        for (Registration registration : registrations.values()) {
+            batches.put(registration.subscriber, new ArrayList<>());
+        }
+        for (int i = 0; i < vehicles.size(); i++) {
+            VehicleLocation vehicle = vehicles.get(i);
+            Set<Registration> candidates = cells.get(cellKey(coarseRow(vehicle.lat()), coarseCol(vehicle.lon())));
+            if (candidates != null) {
+                for (Registration registration : candidates) {
+                    collect(registration, vehicle, encoded.get(i), batches);
+                }
+            }
+            for (Registration registration : oversized) {
+                collect(registration, vehicle, encoded.get(i), batches);
+            }
+        }
+        return batches;
+    }
+
+    private void collect(
+        Registration registration,
+        VehicleLocation vehicle,
+        byte[] encoded,
+        Map<StreamSubscriber, List<byte[]>> batches
+    ) {
+        List<byte[]> batch = batches.get(registration.subscriber);
+        if (batch != null && registration.accepts(vehicle)) {
+            batch.add(encoded);
+        }
+    }
+
+    private void place(Registration registration, Viewport viewport) {
+        Viewport expanded = viewport.expand(marginFraction);
+        int fromRow = coarseRow(expanded.south());
+        int toRow = coarseRow(expanded.north());
+        int fromCol = coarseCol(expanded.west());
+        int toCol = coarseCol(expanded.east());
+        long cellCount = (long) (toRow - fromRow + 1) * (toCol - fromCol + 1);
+
+        synchronized (registration) {
+            if (registration.closed) {
+                return;
+            }
+            unplace(registration);
+            registration.viewport = expanded;
+            if (cellCount > MAX_CELLS_PER_VIEWPORT) {
+                oversized.add(registration);
+                return;
+            }
+
+            List<Long> keys = new ArrayList<>((int) cellCount);
+            for (int row = fromRow; row <= toRow; row++) {
+                for (int col = fromCol; col <= toCol; col++) {
+                    long key = cellKey(row, col);
+                    cells.compute(key, (k, members) -> {
+                        Set<Registration> cell = members != null ? members : ConcurrentHashMap.newKeySet();
+                        cell.add(registration);
+                        return cell;
+                    });
+                    keys.add(key);
+                }
+            }
+            registration.cellKeys = keys;
+        }
+    }
+
+    private void unplace(Registration registration) {
+        oversized.remove(registration);
+        for (Long key : registration.cellKeys) {
+            cells.computeIfPresent(key, (k, members) -> {
+                members.remove(registration);
+                return members.isEmpty() ? null : members;
+            });
+        }
+        registration.cellKeys = List.of();
+    }
+
+    private static int coarseRow(double lat) {
+        return Math.floorDiv(VehicleSpatialIndex.cellRow(lat), CELL_FACTOR);
+    }
+
+    private static int coarseCol(double lon) {
+        return Math.floorDiv(VehicleSpatialIndex.cellCol(lon), CELL_FACTOR);
+    }
+
+    private static long cellKey(int row, int col) {
+        return ((long) row << 32) | (col & 0xFFFFFFFFL);
+    }
+
+    private static final class Registration {
+        private final String id;
+        private final StreamSubscriber subscriber;
+        private final Set<String> routeIds;
+        private final boolean allRoutes;
+        private volatile Viewport viewport;
+        private List<Long> cellKeys = List.of();
+        private boolean closed;
+
+        private Registration(String id, StreamSubscriber subscriber, Set<String> routeIds) {
+            this.id = id;
+            this.subscriber = subscriber;
+            this.routeIds = routeIds;
+            this.allRoutes = routeIds.contains(ALL_ROUTES_ID);
+        }
+
+        private boolean accepts(VehicleLocation vehicle) {
+            Viewport current = viewport;
+            return current != null
+                && current.contains(vehicle.lat(), vehicle.lon())
+                && (allRoutes || routeIds.contains(vehicle.routeId()));
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.omar.bvgsim.service;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordingStream;
+
+/**
+ * Opt-in virtual-thread execution. With {@code bvg.threads.virtual=true} on Java 21 or later, Tomcat runs every
+ * request on its own virtual thread and independent upstream calls of one request run side by side, so a blocked
+ * trip lookup costs a few hundred bytes of stack instead of a pool thread. On older runtimes, or with the flag off,
+ * nothing changes: requests stay on Tomcat's platform pool and upstream calls run one after the other.
+ *
+ * <p>The project compiles for Java 17, so the virtual-thread executor is looked up reflectively. Pinned virtual
+ * threads, which hold their carrier while blocking inside {@code synchronized} or native code, are counted from
+ * the JFR {@code jdk.VirtualThreadPinned} event.
+ */
+@Service
+public class VirtualThreads {
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+    private final ExecutorService executor;
+    private final RecordingStream pinnedEvents;
+    private final AtomicInteger active = new AtomicInteger();
+    private final LongAdder started = new LongAdder();
+
+    public VirtualThreads(
+        @Value("${bvg.threads.virtual:false}") boolean enabled,
+        @Value("${bvg.threads.pinned-threshold-ms:20}") long pinnedThresholdMs,
+        MeterRegistry meters
+    ) {
+        this.executor = enabled ? newVirtualThreadExecutor() : null;
+        if (enabled && executor == null) {
+            System.err.println("Virtual threads need Java 21 or later (running " + Runtime.version()
+                + "); requests stay on platform threads.");
+        }
+        this.pinnedEvents = executor != null ? recordPinning(pinnedThresholdMs, meters) : null;
+        bindMetrics(meters);
+    }
+
+    /**
+     * Whether requests and upstream calls run on virtual threads.
+     */
+    public boolean enabled() {
+        return executor != null;
+    }
+
+    /**
+     * The executor Tomcat hands requests to, counted in the {@code bvg.threads.*} meters; {@code null} when
+     * virtual threads are off.
+     */
+    public Executor executor() {
+        return executor != null ? this::execute : null;
+    }
+
+    /**
+     * Starts {@code task} on a virtual thread, or returns {@code null} when virtual threads are off and the caller
+     * should run it inline.
+     */
+    public <T> Future<T> fork(Callable<T> task) {
+        if (executor == null) {
+            return null;
+        }
+        FutureTask<T> future = new FutureTask<>(task);
+        execute(future);
+        return future;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (pinnedEvents != null) {
+            pinnedEvents.close();
+        }
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    private void execute(Runnable task) {
+        executor.execute(() -> {
+            active.incrementAndGet();
+            started.increment();
+            try {
+                task.run();
+            } finally {
+                active.decrementAndGet();
+            }
+        });
+    }
+
+    private void bindMetrics(MeterRegistry meters) {
+        Gauge.builder("bvg.threads.virtual", this, threads -> threads.enabled() ? 1 : 0)
+            .description("1 when requests and upstream calls run on virtual threads")
+            .register(meters);
+        Gauge.builder("bvg.threads.active", active, AtomicInteger::get)
+            .description("Requests and forked upstream calls currently running on virtual threads")
+            .register(meters);
+        FunctionCounter.builder("bvg.threads.started", started, LongAdder::sum)
+            .description("Virtual threads started for requests and forked upstream calls")
+            .register(meters);
+    }
+
+    private static RecordingStream recordPinning(long thresholdMs, MeterRegistry meters) {
+        Counter pinned = Counter.builder("bvg.threads.pinned")
+            .description("Virtual threads that blocked while pinned to their carrier for at least the threshold")
+            .register(meters);
+        Timer pinnedFor = Timer.builder("bvg.threads.pinned.duration")
+            .description("How long pinned virtual threads held their carrier")
+            .register(meters);
+        try {
+            RecordingStream stream = new RecordingStream();
+            stream.enable(PINNED_EVENT).withThreshold(Duration.ofMillis(thresholdMs));
+            stream.onEvent(PINNED_EVENT, event -> {
+                pinned.increment();
+                pinnedFor.record(event.getDuration().toNanos(), TimeUnit.NANOSECONDS);
+            });
+            stream.setMaxAge(Duration.ofMinutes(1));
+            stream.startAsync();
+            return stream;
+        } catch (RuntimeException e) {
+            System.err.println("Pinned virtual thread events unavailable: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
@@ -219,13 +219,23 @@ function syncLiveStream() {
   liveStream.onopen = () => updateStatusForSelection();
   liveStream.onerror = () => updateStatus('Live connection interrupted. Reconnecting...', true);
   liveStream.onmessage = event => {
-    const vehicle = normalizeVehicle(JSON.parse(event.data));
-    if (!vehicle) {
+    const payload = JSON.parse(event.data);
+    const batch = Array.isArray(payload) ? payload : [payload];
+    let updated = false;
+
+    batch.forEach(raw => {
+      const vehicle = normalizeVehicle(raw);
+      if (vehicle) {
+        upsertVehicle(vehicle);
+        updated = true;
+      }
+    });
+
+    if (!updated) {
       return;
     }
 
     lastLiveUpdate = Date.now();
-    upsertVehicle(vehicle);
     renderVisibleVehicles();
     updateStatusForSelection();
   };
@@ -0,0 +1,97 @@
+// Client for the binary vehicle stream at /api/sim/binary-stream. Frame layout is documented in the README
+// ("Binary Stream"). Keeps the per-connection string table and last positions the deltas are relative to.
+class BinaryVehicleStream {
+  constructor(routes, onVehicles) {
+    this.strings = [null];
+    this.lat = new Map();
+    this.lon = new Map();
+    this.meta = new Map();
+    this.onVehicles = onVehicles;
+    if (typeof WebSocket !== 'undefined') {
+      const protocol = location.protocol === 'https:' ? 'wss' : 'ws';
+      this.socket = new WebSocket(`${protocol}://${location.host}/api/sim/binary-stream?routes=${encodeURIComponent(routes)}`);
+      this.socket.binaryType = 'arraybuffer';
+      this.socket.onmessage = (event) => this.onVehicles(this.decode(event.data));
+    }
+  }
+
+  close() {
+    if (this.socket) {
+      this.socket.close();
+    }
+  }
+
+  decode(buffer) {
+    const bytes = new Uint8Array(buffer);
+    let offset = 0;
+    const varint = () => {
+      let value = 0;
+      let scale = 1;
+      let byte;
+      do {
+        byte = bytes[offset++];
+        value += (byte & 0x7f) * scale;
+        scale *= 128;
+      } while (byte & 0x80);
+      return value;
+    };
+    const zigzag = () => {
+      const value = varint();
+      return value % 2 === 0 ? value / 2 : -(value + 1) / 2;
+    };
+
+    const type = bytes[offset++];
+    const flags = bytes[offset++];
+    if (type !== 1) {
+      return null;
+    }
+    if (flags & 1) {
+      this.strings = [null];
+      this.lat.clear();
+      this.lon.clear();
+      this.meta.clear();
+    }
+
+    const version = varint();
+    const timestamp = varint();
+    const decoder = new TextDecoder();
+    for (let count = varint(); count > 0; count--) {
+      const length = varint();
+      this.strings.push(decoder.decode(bytes.subarray(offset, offset + length)));
+      offset += length;
+    }
+
+    const routes = {};
+    for (let routeCount = varint(); routeCount > 0; routeCount--) {
+      const routeId = this.strings[varint()];
+      const vehicles = [];
+      for (let count = varint(); count > 0; count--) {
+        const header = varint();
+        const id = Math.floor(header / 2);
+        if (header & 1) {
+          this.meta.set(id, [varint(), varint(), varint(), varint()]);
+        }
+        const lat = (this.lat.get(id) || 0) + zigzag();
+        const lon = (this.lon.get(id) || 0) + zigzag();
+        this.lat.set(id, lat);
+        this.lon.set(id, lon);
+        const [line, mode, trip, destination] = this.meta.get(id);
+        vehicles.push({
+          vehicleId: this.strings[id],
+          routeId: this.strings[line],
+          mode: this.strings[mode],
+          tripId: this.strings[trip],
+          destination: this.strings[destination],
+          lat: lat / 1e5,
+          lon: lon / 1e5
+        });
+      }
+      routes[routeId] = vehicles;
+    }
+    return { version, timestamp, routes };
+  }
+}
+
+if (typeof module !== 'undefined') {
+  module.exports = BinaryVehicleStream;
+}